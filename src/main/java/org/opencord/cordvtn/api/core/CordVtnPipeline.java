@@ -16,9 +16,13 @@
 package org.opencord.cordvtn.api.core;
 
 import org.onlab.packet.VlanId;
+import org.onlab.util.Identifier;
 import org.onosproject.net.flow.FlowRule;
 import org.opencord.cordvtn.api.node.CordVtnNode;
 
+import java.util.Collection;
+import java.util.Set;
+
 /**
  * Service providing cordvtn pipeline.
  */
@@ -61,4 +65,41 @@ public interface CordVtnPipeline {
      * @param rule    flow rule to process
      */
     void processFlowRule(boolean install, FlowRule rule);
+
+    /**
+     * Processes the given flow rules. The rules are coalesced with the other
+     * pending changes of the same device and applied as a batch.
+     *
+     * @param install install or remove
+     * @param rules   flow rules to process
+     */
+    void processFlowRules(boolean install, Collection<FlowRule> rules);
+
+    /**
+     * Processes the given flow rules on behalf of the supplied owner, an
+     * instance port or a service network. Installed rules are recorded in
+     * the ledger of the owner and removed rules are dropped from it.
+     *
+     * @param install install or remove
+     * @param rules   flow rules to process
+     * @param owner   identifier of the owner of the rules
+     */
+    void processFlowRules(boolean install, Collection<FlowRule> rules, Identifier<?> owner);
+
+    /**
+     * Returns the flow rules installed on behalf of the supplied owner.
+     * The ledger is kept locally, so it only has the rules installed by
+     * this instance.
+     *
+     * @param owner identifier of the owner of the rules
+     * @return set of flow rules; empty set if no rules are recorded
+     */
+    Set<FlowRule> flowRules(Identifier<?> owner);
+
+    /**
+     * Removes all flow rules installed on behalf of the supplied owner.
+     *
+     * @param owner identifier of the owner of the rules
+     */
+    void removeFlowRules(Identifier<?> owner);
 }
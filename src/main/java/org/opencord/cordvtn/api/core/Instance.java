@@ -40,14 +40,23 @@ public final class Instance {
     public static final String CREATE_TIME = "createTime";
 
     private final Host host;
+    private final NetworkId netId;
+    private final NetworkType netType;
+    private final PortId portId;
+    private final boolean additional;
 
     /**
-     * Default constructor.
+     * Default constructor. Parses the annotations of the host once so that
+     * the accessors do not have to.
      *
      * @param instance host object of this instance
      */
     private Instance(Host instance) {
         this.host = instance;
+        this.netId = NetworkId.of(instance.annotations().value(NETWORK_ID));
+        this.netType = NetworkType.valueOf(instance.annotations().value(NETWORK_TYPE));
+        this.portId = PortId.of(instance.annotations().value(PORT_ID));
+        this.additional = instance.annotations().value(ORIGINAL_HOST_ID) != null;
     }
 
     /**
@@ -81,8 +90,7 @@ public final class Instance {
      * @return network id
      */
     public NetworkId netId() {
-        String netId = host.annotations().value(NETWORK_ID);
-        return NetworkId.of(netId);
+        return netId;
     }
 
     /**
@@ -91,8 +99,7 @@ public final class Instance {
      * @return network type
      */
     public NetworkType netType() {
-        String netType = host.annotations().value(NETWORK_TYPE);
-        return NetworkType.valueOf(netType);
+        return netType;
     }
 
     /**
@@ -101,17 +108,21 @@ public final class Instance {
      * @return port id
      */
     public PortId portId() {
-        String portId = host.annotations().value(PORT_ID);
-        return PortId.of(portId);
+        return portId;
     }
 
     /**
      * Returns if the instance is original instance or additional one.
+     * The additional instances are the hosts registered for the address pairs
+     * by the previous versions, the address pairs are now available from
+     * the instance service.
      *
      * @return true if it's additional instance; false otherwise
+     * @deprecated address pairs are no longer registered as hosts
      */
+    @Deprecated
     public boolean isAdditionalInstance() {
-        return host.annotations().value(ORIGINAL_HOST_ID) != null;
+        return additional;
     }
 
     /**
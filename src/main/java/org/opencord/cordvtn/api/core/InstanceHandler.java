@@ -34,6 +34,15 @@ public interface InstanceHandler {
      */
     void instanceUpdated(Instance instance);
 
+    /**
+     * Handles the instance of which the service port has changed. Only the
+     * difference between the state previously programmed for the instance
+     * and the current state is applied.
+     *
+     * @param instance instance
+     */
+    void reprogramInstance(Instance instance);
+
     /**
      * Handles removed instance.
      *
@@ -15,16 +15,93 @@
  */
 package org.opencord.cordvtn.api.core;
 
+import org.onlab.packet.IpAddress;
+import org.onlab.packet.MacAddress;
 import org.onosproject.net.ConnectPoint;
+import org.onosproject.net.DeviceId;
 import org.onosproject.net.HostId;
 import org.onosproject.net.host.HostDescription;
+import org.opencord.cordvtn.api.net.AddressPair;
+import org.opencord.cordvtn.api.net.NetworkId;
+
+import java.util.Set;
 
 /**
- * Provides service instance addition or removal.
+ * Provides service instance query, addition and removal.
  */
 public interface InstanceService {
 
-    // TODO add get instance
+    /**
+     * Returns the instance with the given host ID.
+     *
+     * @param hostId host id
+     * @return instance; null if no instance present with the host id
+     */
+    Instance instance(HostId hostId);
+
+    /**
+     * Returns the original instance on the given connect point.
+     *
+     * @param connectPoint connect point
+     * @return instance; null if no original instance present on the connect point
+     */
+    Instance instance(ConnectPoint connectPoint);
+
+    /**
+     * Returns all instances.
+     *
+     * @return set of instances; empty set if no instance presents
+     */
+    Set<Instance> instances();
+
+    /**
+     * Returns the instances of the given service network, including the
+     * additional instances.
+     *
+     * @param netId network id
+     * @return set of instances; empty set if no instance presents
+     */
+    Set<Instance> instances(NetworkId netId);
+
+    /**
+     * Returns the instances on the given device.
+     *
+     * @param deviceId device id
+     * @return set of instances; empty set if no instance presents
+     */
+    Set<Instance> instances(DeviceId deviceId);
+
+    /**
+     * Returns the instances with the given IPv4 address.
+     *
+     * @param ipAddress ip address
+     * @return set of instances; empty set if no instance presents
+     */
+    Set<Instance> instances(IpAddress ipAddress);
+
+    /**
+     * Returns the instance owning the address pair with the given IP address.
+     *
+     * @param ipAddress ip address
+     * @return instance; null if no address pair presents
+     */
+    Instance addressPairOwner(IpAddress ipAddress);
+
+    /**
+     * Returns the address pair with the given IP address.
+     *
+     * @param ipAddress ip address
+     * @return address pair; null if no address pair presents
+     */
+    AddressPair addressPair(IpAddress ipAddress);
+
+    /**
+     * Returns the address pairs with the given MAC address.
+     *
+     * @param mac mac address
+     * @return set of address pairs; empty set if no address pair presents
+     */
+    Set<AddressPair> addressPairs(MacAddress mac);
 
     /**
      * Adds a service instance on a given connect point. Or updates if the
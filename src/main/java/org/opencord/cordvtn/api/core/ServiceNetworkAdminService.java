@@ -71,4 +71,13 @@ public interface ServiceNetworkAdminService extends ServiceNetworkService {
      * @param portId port id
      */
     void removeServicePort(PortId portId);
+
+    /**
+     * Applies the service network and port changes in the given batch
+     * atomically. None of the changes is applied if any of them is invalid.
+     *
+     * @param batch service network batch
+     * @throws IllegalStateException if the batch is invalid or fails to apply
+     */
+    void applyBatch(ServiceNetworkBatch batch);
 }
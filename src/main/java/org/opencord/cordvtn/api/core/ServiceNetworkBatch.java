@@ -0,0 +1,194 @@
+/*
+ * Copyright 2017-present Open Networking Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opencord.cordvtn.api.core;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import org.opencord.cordvtn.api.net.NetworkId;
+import org.opencord.cordvtn.api.net.PortId;
+import org.opencord.cordvtn.api.net.ServiceNetwork;
+import org.opencord.cordvtn.api.net.ServicePort;
+
+import java.util.List;
+import java.util.Set;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Set of service network and port changes applied all together.
+ * The updates of the same network or port are merged in the given order,
+ * and an update creates the network or port if it does not exist.
+ */
+public final class ServiceNetworkBatch {
+
+    private final List<ServiceNetwork> networks;
+    private final Set<NetworkId> removedNetworks;
+    private final List<ServicePort> ports;
+    private final Set<PortId> removedPorts;
+
+    private ServiceNetworkBatch(List<ServiceNetwork> networks,
+                                Set<NetworkId> removedNetworks,
+                                List<ServicePort> ports,
+                                Set<PortId> removedPorts) {
+        this.networks = networks;
+        this.removedNetworks = removedNetworks;
+        this.ports = ports;
+        this.removedPorts = removedPorts;
+    }
+
+    /**
+     * Returns the service networks to create or update.
+     *
+     * @return list of service networks
+     */
+    public List<ServiceNetwork> networks() {
+        return networks;
+    }
+
+    /**
+     * Returns the service networks to remove.
+     *
+     * @return set of network ids
+     */
+    public Set<NetworkId> removedNetworks() {
+        return removedNetworks;
+    }
+
+    /**
+     * Returns the service ports to create or update.
+     *
+     * @return list of service ports
+     */
+    public List<ServicePort> ports() {
+        return ports;
+    }
+
+    /**
+     * Returns the service ports to remove.
+     *
+     * @return set of port ids
+     */
+    public Set<PortId> removedPorts() {
+        return removedPorts;
+    }
+
+    /**
+     * Returns if the batch has no change.
+     *
+     * @return true if the batch is empty
+     */
+    public boolean isEmpty() {
+        return networks.isEmpty() && removedNetworks.isEmpty() &&
+                ports.isEmpty() && removedPorts.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(getClass())
+                .add("networks", networks.size())
+                .add("removedNetworks", removedNetworks.size())
+                .add("ports", ports.size())
+                .add("removedPorts", removedPorts.size())
+                .toString();
+    }
+
+    /**
+     * Returns new service network batch builder instance.
+     *
+     * @return service network batch builder
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Builder of the service network batch.
+     */
+    public static final class Builder {
+        private final ImmutableList.Builder<ServiceNetwork> networks = ImmutableList.builder();
+        private final ImmutableSet.Builder<NetworkId> removedNetworks = ImmutableSet.builder();
+        private final ImmutableList.Builder<ServicePort> ports = ImmutableList.builder();
+        private final ImmutableSet.Builder<PortId> removedPorts = ImmutableSet.builder();
+
+        private Builder() {
+        }
+
+        /**
+         * Builds an immutable service network batch.
+         *
+         * @return service network batch
+         */
+        public ServiceNetworkBatch build() {
+            return new ServiceNetworkBatch(networks.build(),
+                                           removedNetworks.build(),
+                                           ports.build(),
+                                           removedPorts.build());
+        }
+
+        /**
+         * Returns service network batch builder with the supplied network
+         * to create or update.
+         *
+         * @param snet service network
+         * @return service network batch builder
+         */
+        public Builder updateNetwork(ServiceNetwork snet) {
+            checkNotNull(snet);
+            checkNotNull(snet.id());
+            networks.add(snet);
+            return this;
+        }
+
+        /**
+         * Returns service network batch builder with the supplied network
+         * to remove.
+         *
+         * @param netId network id
+         * @return service network batch builder
+         */
+        public Builder removeNetwork(NetworkId netId) {
+            removedNetworks.add(checkNotNull(netId));
+            return this;
+        }
+
+        /**
+         * Returns service network batch builder with the supplied port
+         * to create or update.
+         *
+         * @param sport service port
+         * @return service network batch builder
+         */
+        public Builder updatePort(ServicePort sport) {
+            checkNotNull(sport);
+            checkNotNull(sport.id());
+            ports.add(sport);
+            return this;
+        }
+
+        /**
+         * Returns service network batch builder with the supplied port
+         * to remove.
+         *
+         * @param portId port id
+         * @return service network batch builder
+         */
+        public Builder removePort(PortId portId) {
+            removedPorts.add(checkNotNull(portId));
+            return this;
+        }
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2017-present Open Networking Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opencord.cordvtn.api.core;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.collect.ImmutableList;
+
+import java.util.List;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Service network events after a version of the change log.
+ */
+public final class ServiceNetworkChanges {
+
+    private final long version;
+    private final List<ServiceNetworkEvent> events;
+    private final boolean resyncRequired;
+
+    private ServiceNetworkChanges(long version, List<ServiceNetworkEvent> events,
+                                  boolean resyncRequired) {
+        this.version = version;
+        this.events = events;
+        this.resyncRequired = resyncRequired;
+    }
+
+    /**
+     * Returns the changes with the given events.
+     *
+     * @param version version of the last event
+     * @param events  events in the order of the versions
+     * @return service network changes
+     */
+    public static ServiceNetworkChanges of(long version, List<ServiceNetworkEvent> events) {
+        checkNotNull(events);
+        return new ServiceNetworkChanges(version, ImmutableList.copyOf(events), false);
+    }
+
+    /**
+     * Returns the changes telling the events after the requested version are
+     * no longer available, and the full states should be read again.
+     *
+     * @param version current version of the change log
+     * @return service network changes
+     */
+    public static ServiceNetworkChanges resyncRequired(long version) {
+        return new ServiceNetworkChanges(version, ImmutableList.of(), true);
+    }
+
+    /**
+     * Returns the version to request the next changes with.
+     *
+     * @return version
+     */
+    public long version() {
+        return version;
+    }
+
+    /**
+     * Returns the events in the order of the versions.
+     *
+     * @return list of service network events
+     */
+    public List<ServiceNetworkEvent> events() {
+        return events;
+    }
+
+    /**
+     * Returns if the requested version is too old to get the changes after it.
+     *
+     * @return true if the full states should be read again
+     */
+    public boolean isResyncRequired() {
+        return resyncRequired;
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(getClass())
+                .add("version", version)
+                .add("events", events.size())
+                .add("resyncRequired", resyncRequired)
+                .toString();
+    }
+}
@@ -15,12 +15,19 @@
  */
 package org.opencord.cordvtn.api.core;
 
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Sets;
 import org.joda.time.LocalDateTime;
 import org.onosproject.event.AbstractEvent;
+import org.opencord.cordvtn.api.net.AddressPair;
 import org.opencord.cordvtn.api.net.Provider;
 import org.opencord.cordvtn.api.net.ServiceNetwork;
 import org.opencord.cordvtn.api.net.ServicePort;
 
+import java.util.EnumSet;
+import java.util.Objects;
+import java.util.Set;
+
 import static com.google.common.base.MoreObjects.toStringHelper;
 
 /**
@@ -30,6 +37,9 @@ public class ServiceNetworkEvent extends AbstractEvent<ServiceNetworkEvent.Type,
 
     private final ServicePort servicePort;
     private final Provider provider;
+    private final ServiceNetwork prevServiceNetwork;
+    private final ServicePort prevServicePort;
+    private final Set<Change> changes;
 
     /**
      * Type of service network event.
@@ -76,6 +86,66 @@ public class ServiceNetworkEvent extends AbstractEvent<ServiceNetworkEvent.Type,
         SERVICE_PORT_REMOVED
     }
 
+    /**
+     * Attributes changed by the service network or port update.
+     */
+    public enum Change {
+        /**
+         * Signifies that the name of the network or port has changed.
+         */
+        NAME,
+
+        /**
+         * Signifies that the network type has changed.
+         */
+        TYPE,
+
+        /**
+         * Signifies that the segment ID of the network has changed.
+         */
+        SEGMENT_ID,
+
+        /**
+         * Signifies that the subnet of the network has changed.
+         */
+        SUBNET,
+
+        /**
+         * Signifies that the service IP of the network has changed.
+         */
+        SERVICE_IP,
+
+        /**
+         * Signifies that the providers of the network have changed.
+         */
+        PROVIDERS,
+
+        /**
+         * Signifies that the network of the port has changed.
+         */
+        NETWORK_ID,
+
+        /**
+         * Signifies that the MAC address of the port has changed.
+         */
+        MAC,
+
+        /**
+         * Signifies that the IP address of the port has changed.
+         */
+        IP,
+
+        /**
+         * Signifies that the VLAN ID of the port has changed.
+         */
+        VLAN_ID,
+
+        /**
+         * Signifies that the address pairs of the port have changed.
+         */
+        ADDRESS_PAIRS
+    }
+
     /**
      * Creates an event of a given type and for the specified service network and
      * the current time.
@@ -84,9 +154,20 @@ public class ServiceNetworkEvent extends AbstractEvent<ServiceNetworkEvent.Type,
      * @param serviceNetwork service network subject
      */
     public ServiceNetworkEvent(Type type, ServiceNetwork serviceNetwork) {
-        super(type, serviceNetwork);
-        this.servicePort = null;
-        this.provider = null;
+        this(type, serviceNetwork, null, null, null, null);
+    }
+
+    /**
+     * Creates an event of a given type and for the specified service network,
+     * the previous state of the network and the current time.
+     *
+     * @param type               service network event type
+     * @param serviceNetwork     service network subject
+     * @param prevServiceNetwork previous service network; null if not updated
+     */
+    public ServiceNetworkEvent(Type type, ServiceNetwork serviceNetwork,
+                               ServiceNetwork prevServiceNetwork) {
+        this(type, serviceNetwork, null, null, prevServiceNetwork, null);
     }
 
     /**
@@ -98,9 +179,21 @@ public class ServiceNetworkEvent extends AbstractEvent<ServiceNetworkEvent.Type,
      * @param servicePort     optional service port subject
      */
     public ServiceNetworkEvent(Type type, ServiceNetwork serviceNetwork, ServicePort servicePort) {
-        super(type, serviceNetwork);
-        this.servicePort = servicePort;
-        this.provider = null;
+        this(type, serviceNetwork, servicePort, null, null, null);
+    }
+
+    /**
+     * Creates an event of a given type and for the specified service network,
+     * port, the previous state of the port and the current time.
+     *
+     * @param type            service network event type
+     * @param serviceNetwork  service network subject
+     * @param servicePort     service port subject
+     * @param prevServicePort previous service port; null if not updated
+     */
+    public ServiceNetworkEvent(Type type, ServiceNetwork serviceNetwork,
+                               ServicePort servicePort, ServicePort prevServicePort) {
+        this(type, serviceNetwork, servicePort, null, null, prevServicePort);
     }
 
     /**
@@ -112,9 +205,25 @@ public class ServiceNetworkEvent extends AbstractEvent<ServiceNetworkEvent.Type,
      * @param provider       optional provider network
      */
     public ServiceNetworkEvent(Type type, ServiceNetwork serviceNetwork, Provider provider) {
+        this(type, serviceNetwork, null, provider, null, null);
+    }
+
+    private ServiceNetworkEvent(Type type, ServiceNetwork serviceNetwork,
+                                ServicePort servicePort, Provider provider,
+                                ServiceNetwork prevServiceNetwork,
+                                ServicePort prevServicePort) {
         super(type, serviceNetwork);
-        this.servicePort = null;
+        this.servicePort = servicePort;
         this.provider = provider;
+        this.prevServiceNetwork = prevServiceNetwork;
+        this.prevServicePort = prevServicePort;
+        if (prevServicePort != null && servicePort != null) {
+            this.changes = portChanges(prevServicePort, servicePort);
+        } else if (prevServiceNetwork != null && serviceNetwork != null) {
+            this.changes = networkChanges(prevServiceNetwork, serviceNetwork);
+        } else {
+            this.changes = ImmutableSet.of();
+        }
     }
 
     /**
@@ -136,9 +245,112 @@ public class ServiceNetworkEvent extends AbstractEvent<ServiceNetworkEvent.Type,
         return provider;
     }
 
+    /**
+     * Returns the service network before the update.
+     * It returns valid value only with the service network updated event.
+     *
+     * @return previous service network; null if the event is not an update
+     */
+    public ServiceNetwork prevSubject() {
+        return prevServiceNetwork;
+    }
+
+    /**
+     * Returns the service port before the update.
+     * It returns valid value only with the service port updated event.
+     *
+     * @return previous service port; null if the event is not an update
+     */
+    public ServicePort prevServicePort() {
+        return prevServicePort;
+    }
+
+    /**
+     * Returns the attributes changed by the update. For the service port
+     * events, the changes are of the port and not of the network.
+     *
+     * @return set of changes; empty set if the event is not an update or
+     * nothing has changed
+     */
+    public Set<Change> changes() {
+        return changes;
+    }
+
+    /**
+     * Returns the address pairs added to the service port by the update.
+     *
+     * @return set of address pairs; empty set if not a service port update
+     */
+    public Set<AddressPair> addedAddressPairs() {
+        if (!changes.contains(Change.ADDRESS_PAIRS)) {
+            return ImmutableSet.of();
+        }
+        return ImmutableSet.copyOf(Sets.difference(
+                servicePort.addressPairs(), prevServicePort.addressPairs()));
+    }
+
+    /**
+     * Returns the address pairs removed from the service port by the update.
+     *
+     * @return set of address pairs; empty set if not a service port update
+     */
+    public Set<AddressPair> removedAddressPairs() {
+        if (!changes.contains(Change.ADDRESS_PAIRS)) {
+            return ImmutableSet.of();
+        }
+        return ImmutableSet.copyOf(Sets.difference(
+                prevServicePort.addressPairs(), servicePort.addressPairs()));
+    }
+
+    private static Set<Change> networkChanges(ServiceNetwork prev, ServiceNetwork snet) {
+        Set<Change> changes = EnumSet.noneOf(Change.class);
+        if (!Objects.equals(prev.name(), snet.name())) {
+            changes.add(Change.NAME);
+        }
+        if (!Objects.equals(prev.type(), snet.type())) {
+            changes.add(Change.TYPE);
+        }
+        if (!Objects.equals(prev.segmentId(), snet.segmentId())) {
+            changes.add(Change.SEGMENT_ID);
+        }
+        if (!Objects.equals(prev.subnet(), snet.subnet())) {
+            changes.add(Change.SUBNET);
+        }
+        if (!Objects.equals(prev.serviceIp(), snet.serviceIp())) {
+            changes.add(Change.SERVICE_IP);
+        }
+        if (!Objects.equals(prev.providers(), snet.providers())) {
+            changes.add(Change.PROVIDERS);
+        }
+        return ImmutableSet.copyOf(changes);
+    }
+
+    private static Set<Change> portChanges(ServicePort prev, ServicePort sport) {
+        Set<Change> changes = EnumSet.noneOf(Change.class);
+        if (!Objects.equals(prev.name(), sport.name())) {
+            changes.add(Change.NAME);
+        }
+        if (!Objects.equals(prev.networkId(), sport.networkId())) {
+            changes.add(Change.NETWORK_ID);
+        }
+        if (!Objects.equals(prev.mac(), sport.mac())) {
+            changes.add(Change.MAC);
+        }
+        if (!Objects.equals(prev.ip(), sport.ip())) {
+            changes.add(Change.IP);
+        }
+        if (!Objects.equals(prev.vlanId(), sport.vlanId())) {
+            changes.add(Change.VLAN_ID);
+        }
+        if (!Objects.equals(prev.addressPairs(), sport.addressPairs())) {
+            changes.add(Change.ADDRESS_PAIRS);
+        }
+        return ImmutableSet.copyOf(changes);
+    }
+
     @Override
     public String toString() {
-        if (servicePort == null) {
+        if (servicePort == null && changes.isEmpty()) {
             return super.toString();
         }
         return toStringHelper(this)
@@ -147,6 +359,7 @@ public class ServiceNetworkEvent extends AbstractEvent<ServiceNetworkEvent.Type,
                 .add("serviceNetwork", subject())
                 .add("servicePort", servicePort)
                 .add("provider", provider)
+                .add("changes", changes)
                 .toString();
     }
 }
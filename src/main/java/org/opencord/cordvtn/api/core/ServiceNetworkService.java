@@ -15,12 +15,16 @@
  */
 package org.opencord.cordvtn.api.core;
 
+import org.onlab.packet.IpAddress;
+import org.onlab.packet.MacAddress;
 import org.onosproject.event.ListenerService;
 import org.opencord.cordvtn.api.net.NetworkId;
 import org.opencord.cordvtn.api.net.PortId;
 import org.opencord.cordvtn.api.net.ServiceNetwork;
+import org.opencord.cordvtn.api.net.ServiceNetwork.DependencyType;
 import org.opencord.cordvtn.api.net.ServicePort;
 
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -45,6 +49,31 @@ public interface ServiceNetworkService
      */
     Set<ServiceNetwork> serviceNetworks();
 
+    /**
+     * Returns the subscribers of the supplied provider network.
+     *
+     * @param networkId provider network id
+     * @return subscriber network ids and the dependency types
+     */
+    Map<NetworkId, DependencyType> subscribers(NetworkId networkId);
+
+    /**
+     * Returns the networks the supplied network depends on directly or indirectly.
+     *
+     * @param networkId subscriber network id
+     * @return set of provider network ids
+     */
+    Set<NetworkId> transitiveProviders(NetworkId networkId);
+
+    /**
+     * Returns whether the supplied network depends on itself directly or
+     * indirectly. A circular dependency is allowed unless configured otherwise.
+     *
+     * @param networkId network id
+     * @return true if the network is in a circular dependency
+     */
+    boolean isCyclic(NetworkId networkId);
+
     /**
      * Returns the service port with the supplied port ID.
      *
@@ -66,4 +95,41 @@ public interface ServiceNetworkService
      * @return set of service ports
      */
     Set<ServicePort> servicePorts(NetworkId networkId);
+
+    /**
+     * Returns the service port with the supplied port name.
+     *
+     * @param portName port name
+     * @return service port; null if not found
+     */
+    ServicePort servicePortByName(String portName);
+
+    /**
+     * Returns the service port with the supplied MAC address.
+     *
+     * @param mac mac address
+     * @return service port; null if not found
+     */
+    ServicePort servicePortByMac(MacAddress mac);
+
+    /**
+     * Returns the service ports with the supplied IP address.
+     *
+     * @param ip ip address
+     * @return set of service ports
+     */
+    Set<ServicePort> servicePortsByIp(IpAddress ip);
+
+    /**
+     * Returns the service network events after the supplied version of the
+     * change log, waiting up to the timeout if there is no such event yet.
+     * The change log is kept in each controller instance, so the versions
+     * are valid only with the instance that returned them.
+     *
+     * @param since         version the caller has seen
+     * @param timeoutMillis max time to wait in milliseconds
+     * @return service network changes
+     * @throws InterruptedException if interrupted while waiting
+     */
+    ServiceNetworkChanges changes(long since, long timeoutMillis) throws InterruptedException;
 }
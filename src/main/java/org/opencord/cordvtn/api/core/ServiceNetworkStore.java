@@ -15,6 +15,8 @@
  */
 package org.opencord.cordvtn.api.core;
 
+import org.onlab.packet.IpAddress;
+import org.onlab.packet.MacAddress;
 import org.onosproject.store.Store;
 import org.opencord.cordvtn.api.net.NetworkId;
 import org.opencord.cordvtn.api.net.PortId;
@@ -99,10 +101,63 @@ public interface ServiceNetworkStore extends Store<ServiceNetworkEvent, ServiceN
      */
     Set<ServicePort> servicePorts();
 
+    /**
+     * Returns the service ports of the given network.
+     *
+     * @param networkId network id
+     * @return set of service ports
+     */
+    Set<ServicePort> servicePorts(NetworkId networkId);
+
+    /**
+     * Returns the service port with the given port name.
+     *
+     * @param portName port name
+     * @return service port; null if not found
+     */
+    ServicePort servicePortByName(String portName);
+
+    /**
+     * Returns the service port with the given MAC address.
+     *
+     * @param mac mac address
+     * @return service port; null if not found
+     */
+    ServicePort servicePortByMac(MacAddress mac);
+
+    /**
+     * Returns the service ports with the given IP address.
+     *
+     * @param ip ip address
+     * @return set of service ports
+     */
+    Set<ServicePort> servicePortsByIp(IpAddress ip);
+
     /**
      * Removes service port.
      *
      * @param portId port id
      */
     ServicePort removeServicePort(PortId portId);
+
+    /**
+     * Applies the changes in the given batch in a single transaction.
+     * The networks and ports in the batch are stored as they are, without
+     * being merged with the existing ones.
+     *
+     * @param batch service network batch
+     * @throws IllegalStateException if the transaction fails
+     */
+    void applyBatch(ServiceNetworkBatch batch);
+
+    /**
+     * Returns the events after the given version of the change log, waiting
+     * up to the timeout if there is no such event yet.
+     *
+     * @param since         version the caller has seen
+     * @param timeoutMillis max time to wait in milliseconds
+     * @return service network changes
+     * @throws InterruptedException if interrupted while waiting
+     */
+    ServiceNetworkChanges changes(long since, long timeoutMillis) throws InterruptedException;
 }
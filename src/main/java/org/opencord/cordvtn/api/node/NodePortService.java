@@ -0,0 +1,44 @@
+/*
+ * Copyright 2017-present Open Networking Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opencord.cordvtn.api.node;
+
+import org.onosproject.net.DeviceId;
+import org.onosproject.net.Port;
+import org.onosproject.net.PortNumber;
+
+/**
+ * Service for resolving the ports of the cordvtn node bridges by interface name.
+ */
+public interface NodePortService {
+
+    /**
+     * Returns the port with the given interface name.
+     *
+     * @param deviceId device identifier
+     * @param portName interface name of the port
+     * @return port; null if no port present with the name
+     */
+    Port port(DeviceId deviceId, String portName);
+
+    /**
+     * Returns the number of the enabled port with the given interface name.
+     *
+     * @param deviceId device identifier
+     * @param portName interface name of the port
+     * @return port number; null if no enabled port present with the name
+     */
+    PortNumber portNumber(DeviceId deviceId, String portName);
+}
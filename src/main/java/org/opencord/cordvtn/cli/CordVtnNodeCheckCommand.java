@@ -24,12 +24,12 @@ import org.onosproject.net.DeviceId;
 import org.onosproject.net.Port;
 import org.opencord.cordvtn.api.node.CordVtnNode;
 import org.opencord.cordvtn.api.node.CordVtnNodeService;
+import org.opencord.cordvtn.api.node.NodePortService;
 import org.onosproject.net.Device;
 import org.onosproject.net.device.DeviceService;
 
 import java.util.Set;
 
-import static org.onosproject.net.AnnotationKeys.PORT_NAME;
 import static org.opencord.cordvtn.api.Constants.*;
 import static org.opencord.cordvtn.impl.RemoteIpCommandUtil.*;
 
@@ -51,6 +51,7 @@ public class CordVtnNodeCheckCommand extends AbstractShellCommand {
     protected void execute() {
         CordVtnNodeService nodeService = AbstractShellCommand.get(CordVtnNodeService.class);
         DeviceService deviceService = AbstractShellCommand.get(DeviceService.class);
+        NodePortService nodePortService = AbstractShellCommand.get(NodePortService.class);
 
         CordVtnNode node = nodeService.nodes().stream()
                 .filter(n -> n.hostname().equals(hostname))
@@ -73,7 +74,7 @@ public class CordVtnNodeCheckCommand extends AbstractShellCommand {
                   device.annotations());
 
             node.systemInterfaces().forEach(iface -> print(
-                    getPortState(deviceService, node.integrationBridgeId(), iface)));
+                    getPortState(nodePortService, node.integrationBridgeId(), iface)));
         } else {
             print("%s %s=%s is not available",
                   MSG_NO,
@@ -106,13 +107,9 @@ public class CordVtnNodeCheckCommand extends AbstractShellCommand {
         }
     }
 
-    private String getPortState(DeviceService deviceService, DeviceId deviceId,
+    private String getPortState(NodePortService nodePortService, DeviceId deviceId,
                                 String portName) {
-        Port port = deviceService.getPorts(deviceId).stream()
-                .filter(p -> p.annotations().value(PORT_NAME).equals(portName) &&
-                        p.isEnabled())
-                .findAny().orElse(null);
-
+        Port port = nodePortService.port(deviceId, portName);
         if (port != null) {
             return String.format("%s %s portNum=%s enabled=%s %s",
                     port.isEnabled() ? MSG_OK : MSG_NO,
@@ -15,6 +15,8 @@
  */
 package org.opencord.cordvtn.cli;
 
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
 import org.apache.karaf.shell.commands.Argument;
 import org.apache.karaf.shell.commands.Command;
 import org.onlab.packet.IpAddress;
@@ -22,6 +24,7 @@ import org.onlab.packet.IpPrefix;
 import org.onlab.packet.MacAddress;
 import org.onosproject.cli.AbstractShellCommand;
 import org.opencord.cordvtn.api.core.ServiceNetworkAdminService;
+import org.opencord.cordvtn.api.core.ServiceNetworkBatch;
 import org.opencord.cordvtn.api.net.NetworkId;
 import org.opencord.cordvtn.api.net.PortId;
 import org.opencord.cordvtn.api.net.SegmentId;
@@ -35,6 +38,8 @@ import org.openstack4j.model.identity.Access;
 import org.openstack4j.openstack.OSFactory;
 
 import java.util.List;
+import java.util.Objects;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 /**
@@ -86,23 +91,21 @@ public class CordVtnSyncNeutronStatesCommand extends AbstractShellCommand {
             return;
         }
 
-        print("Synchronizing service networks...");
-        print(NET_FORMAT, "ID", "Name", "Type", "VNI", "Subnet", "Service IP");
         OSClient osClient = OSFactory.clientFromAccess(osAccess);
+        ServiceNetworkBatch.Builder netBatch = ServiceNetworkBatch.builder();
+        Set<NetworkId> netIds = Sets.newHashSet();
         osClient.networking().network().list().forEach(osNet -> {
-            ServiceNetwork snet = DefaultServiceNetwork.builder()
-                    .id(NetworkId.of(osNet.getId()))
-                    .name(osNet.getName())
-                    .type(ServiceNetwork.NetworkType.PRIVATE)
-                    .segmentId(SegmentId.of(Long.valueOf(osNet.getProviderSegID())))
-                    .build();
             try {
-                if (snetService.serviceNetwork(snet.id()) != null) {
-                    snetService.updateServiceNetwork(snet);
-                } else {
-                    snetService.createServiceNetwork(snet);
-                }
-            } catch (Exception ignore) {
+                ServiceNetwork snet = DefaultServiceNetwork.builder()
+                        .id(NetworkId.of(osNet.getId()))
+                        .name(osNet.getName())
+                        .type(ServiceNetwork.NetworkType.PRIVATE)
+                        .segmentId(SegmentId.of(Long.valueOf(osNet.getProviderSegID())))
+                        .build();
+                netBatch.updateNetwork(snet);
+                netIds.add(snet.id());
+            } catch (Exception e) {
+                print("Skipped network %s: %s", osNet.getId(), e.getMessage());
             }
         });
 
@@ -113,21 +116,20 @@ public class CordVtnSyncNeutronStatesCommand extends AbstractShellCommand {
                         .subnet(IpPrefix.valueOf(osSubnet.getCidr()))
                         .serviceIp(IpAddress.valueOf(osSubnet.getGateway()))
                         .build();
-                snetService.updateServiceNetwork(snet);
-                ServiceNetwork updated = snetService.serviceNetwork(snet.id());
-                print(NET_FORMAT, updated.id(),
-                      updated.name(),
-                      updated.type(),
-                      updated.segmentId(),
-                      updated.subnet(),
-                      updated.serviceIp());
+                if (netIds.contains(snet.id()) ||
+                        snetService.serviceNetwork(snet.id()) != null) {
+                    netBatch.updateNetwork(snet);
+                }
             } catch (Exception e) {
                 print(e.getMessage());
             }
         });
 
-        print("\nSynchronizing service ports...");
-        print(PORT_FORMAT, "ID", "Name", "MAC", "IP", "VLAN", "WAN IPs");
+        // applies the networks first so that a port failure does not lose them
+        applyBatch(snetService, netBatch.build());
+
+        ServiceNetworkBatch.Builder portBatch = ServiceNetworkBatch.builder();
+        List<PortId> portIds = Lists.newArrayList();
         osClient.networking().port().list().forEach(osPort -> {
             ServicePort.Builder sportBuilder = DefaultServicePort.builder()
                     .id(PortId.of(osPort.getId()))
@@ -142,21 +144,70 @@ public class CordVtnSyncNeutronStatesCommand extends AbstractShellCommand {
                         osPort.getFixedIps().iterator().next().getIpAddress()));
             }
             ServicePort sport = sportBuilder.build();
-            if (snetService.servicePort(sport.id()) != null) {
-                snetService.updateServicePort(sport);
-            } else {
-                snetService.createServicePort(sport);
-            }
-            ServicePort updated = snetService.servicePort(sport.id());
-            List<String> floatingIps = updated.addressPairs().stream()
-                    .map(ip -> ip.ip().toString())
-                    .collect(Collectors.toList());
-            print(PORT_FORMAT, updated.id(),
-                    updated.name(),
-                    updated.mac(),
-                    updated.ip(),
-                    updated.vlanId() != null ? updated.vlanId() : "",
-                    floatingIps.isEmpty() ? "" : floatingIps);
+            portBatch.updatePort(sport);
+            portIds.add(sport.id());
         });
+        applyBatch(snetService, portBatch.build());
+
+        print("Synchronizing service networks...");
+        print(NET_FORMAT, "ID", "Name", "Type", "VNI", "Subnet", "Service IP");
+        netIds.stream()
+                .map(snetService::serviceNetwork)
+                .filter(Objects::nonNull)
+                .forEach(updated -> print(NET_FORMAT, updated.id(),
+                                          updated.name(),
+                                          updated.type(),
+                                          updated.segmentId(),
+                                          updated.subnet(),
+                                          updated.serviceIp()));
+
+        print("\nSynchronizing service ports...");
+        print(PORT_FORMAT, "ID", "Name", "MAC", "IP", "VLAN", "WAN IPs");
+        portIds.stream()
+                .map(snetService::servicePort)
+                .filter(Objects::nonNull)
+                .forEach(updated -> {
+                    List<String> floatingIps = updated.addressPairs().stream()
+                            .map(ip -> ip.ip().toString())
+                            .collect(Collectors.toList());
+                    print(PORT_FORMAT, updated.id(),
+                          updated.name(),
+                          updated.mac(),
+                          updated.ip(),
+                          updated.vlanId() != null ? updated.vlanId() : "",
+                          floatingIps.isEmpty() ? "" : floatingIps);
+                });
+    }
+
+    /**
+     * Applies the given batch, or each network and port in it one by one if
+     * the batch fails, printing the ones failed to apply.
+     *
+     * @param snetService service network admin service
+     * @param batch       service network batch
+     */
+    private void applyBatch(ServiceNetworkAdminService snetService,
+                            ServiceNetworkBatch batch) {
+        try {
+            snetService.applyBatch(batch);
+            return;
+        } catch (RuntimeException e) {
+            print("Failed to apply all together, applying one by one: %s", e.getMessage());
+        }
+        batch.networks().forEach(snet -> applyOne(
+                snetService, snet.id().id(),
+                ServiceNetworkBatch.builder().updateNetwork(snet).build()));
+        batch.ports().forEach(sport -> applyOne(
+                snetService, sport.id().id(),
+                ServiceNetworkBatch.builder().updatePort(sport).build()));
+    }
+
+    private void applyOne(ServiceNetworkAdminService snetService, String id,
+                          ServiceNetworkBatch batch) {
+        try {
+            snetService.applyBatch(batch);
+        } catch (RuntimeException e) {
+            print("Rejected %s: %s", id, e.getMessage());
+        }
     }
 }
@@ -19,11 +19,13 @@ import org.apache.karaf.shell.commands.Argument;
 import org.apache.karaf.shell.commands.Command;
 import org.onosproject.cli.AbstractShellCommand;
 import org.opencord.cordvtn.api.core.ServiceNetworkAdminService;
+import org.opencord.cordvtn.api.core.ServiceNetworkBatch;
 import org.opencord.cordvtn.api.net.ServiceNetwork;
 import org.opencord.cordvtn.api.net.ServicePort;
 import org.opencord.cordvtn.rest.XosVtnNetworkingClient;
 
 import java.util.List;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 /**
@@ -61,15 +63,30 @@ public class CordVtnSyncXosStatesCommand extends AbstractShellCommand {
                 .password(password)
                 .build();
 
+        Set<ServiceNetwork> snets = client.serviceNetworks();
+        Set<ServicePort> sports = client.servicePorts();
+
+        // applies the networks first so that a port failure does not lose them
+        ServiceNetworkBatch.Builder netBatch = ServiceNetworkBatch.builder();
+        snets.forEach(netBatch::updateNetwork);
+        applyBatch(snetService, netBatch.build());
+
+        // FIXME creating a port fails until XOS service API provides network ID
+        ServiceNetworkBatch.Builder portBatch = ServiceNetworkBatch.builder();
+        sports.stream()
+                .filter(sport -> sport.networkId() != null ||
+                        snetService.servicePort(sport.id()) != null)
+                .forEach(portBatch::updatePort);
+        applyBatch(snetService, portBatch.build());
+
         print("Synchronizing service networks...");
         print(NET_FORMAT, "ID", "Name", "Type", "VNI", "Subnet", "Service IP");
-        client.serviceNetworks().forEach(snet -> {
-            if (snetService.serviceNetwork(snet.id()) != null) {
-                snetService.updateServiceNetwork(snet);
-            } else {
-                snetService.createServiceNetwork(snet);
-            }
+        snets.forEach(snet -> {
             ServiceNetwork updated = snetService.serviceNetwork(snet.id());
+            if (updated == null) {
+                print("%s not synchronized", snet.id());
+                return;
+            }
             print(NET_FORMAT, updated.id(),
                   updated.name(),
                   updated.type(),
@@ -78,16 +95,14 @@ public class CordVtnSyncXosStatesCommand extends AbstractShellCommand {
                   updated.serviceIp());
         });
 
-        // FIXME creating a port fails until XOS service API provides network ID
         print("\nSynchronizing service ports...");
         print(PORT_FORMAT, "ID", "Name", "MAC", "IP", "VLAN", "WAN IPs");
-        client.servicePorts().forEach(sport -> {
-            if (snetService.servicePort(sport.id()) != null) {
-                snetService.updateServicePort(sport);
-            } else {
-                snetService.createServicePort(sport);
-            }
+        sports.forEach(sport -> {
             ServicePort updated = snetService.servicePort(sport.id());
+            if (updated == null) {
+                print("%s not synchronized", sport.id());
+                return;
+            }
             List<String> floatingIps = updated.addressPairs().stream()
                     .map(ip -> ip.ip().toString())
                     .collect(Collectors.toList());
@@ -99,4 +114,13 @@ public class CordVtnSyncXosStatesCommand extends AbstractShellCommand {
                     floatingIps.isEmpty() ? "" : floatingIps);
         });
     }
+
+    private void applyBatch(ServiceNetworkAdminService snetService,
+                            ServiceNetworkBatch batch) {
+        try {
+            snetService.applyBatch(batch);
+        } catch (IllegalStateException e) {
+            print(e.getMessage());
+        }
+    }
 }
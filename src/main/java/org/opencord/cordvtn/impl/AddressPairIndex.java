@@ -0,0 +1,119 @@
+/*
+ * Copyright 2017-present Open Networking Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opencord.cordvtn.impl;
+
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
+import com.google.common.collect.SetMultimap;
+import org.onlab.packet.IpAddress;
+import org.onlab.packet.MacAddress;
+import org.onosproject.net.HostId;
+import org.opencord.cordvtn.api.net.AddressPair;
+
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Address pairs of the instances, indexed by IP and MAC address.
+ * The address pairs belong to the instance owning the service port.
+ */
+final class AddressPairIndex {
+
+    private final SetMultimap<HostId, AddressPair> ownerPairs = HashMultimap.create();
+    private final Map<IpAddress, HostId> ipOwners = Maps.newHashMap();
+    private final Map<IpAddress, AddressPair> ipPairs = Maps.newHashMap();
+    private final SetMultimap<MacAddress, AddressPair> macPairs = HashMultimap.create();
+
+    /**
+     * Replaces the address pairs of the given instance.
+     *
+     * @param owner host id of the owner instance
+     * @param pairs address pairs
+     */
+    synchronized void put(HostId owner, Set<AddressPair> pairs) {
+        remove(owner);
+        pairs.forEach(pair -> {
+            ownerPairs.put(owner, pair);
+            ipOwners.put(pair.ip(), owner);
+            ipPairs.put(pair.ip(), pair);
+            macPairs.put(pair.mac(), pair);
+        });
+    }
+
+    /**
+     * Removes the address pairs of the given instance.
+     *
+     * @param owner host id of the owner instance
+     */
+    synchronized void remove(HostId owner) {
+        ownerPairs.removeAll(owner).forEach(pair -> {
+            ipOwners.remove(pair.ip(), owner);
+            ipPairs.remove(pair.ip(), pair);
+            macPairs.remove(pair.mac(), pair);
+        });
+    }
+
+    /**
+     * Removes all address pairs.
+     */
+    synchronized void clear() {
+        ownerPairs.clear();
+        ipOwners.clear();
+        ipPairs.clear();
+        macPairs.clear();
+    }
+
+    /**
+     * Returns the owner of the address pair with the given IP address.
+     *
+     * @param ip ip address
+     * @return host id of the owner instance; null if no address pair presents
+     */
+    synchronized HostId owner(IpAddress ip) {
+        return ipOwners.get(ip);
+    }
+
+    /**
+     * Returns the address pair with the given IP address.
+     *
+     * @param ip ip address
+     * @return address pair; null if no address pair presents
+     */
+    synchronized AddressPair byIp(IpAddress ip) {
+        return ipPairs.get(ip);
+    }
+
+    /**
+     * Returns the address pairs with the given MAC address.
+     *
+     * @param mac mac address
+     * @return set of address pairs; empty set if no address pair presents
+     */
+    synchronized Set<AddressPair> byMac(MacAddress mac) {
+        return ImmutableSet.copyOf(macPairs.get(mac));
+    }
+
+    /**
+     * Returns the address pairs of the given instance.
+     *
+     * @param owner host id of the owner instance
+     * @return set of address pairs; empty set if no address pair presents
+     */
+    synchronized Set<AddressPair> byOwner(HostId owner) {
+        return ImmutableSet.copyOf(ownerPairs.get(owner));
+    }
+}
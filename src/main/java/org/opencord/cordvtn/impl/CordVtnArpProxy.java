@@ -37,12 +37,10 @@ import org.onosproject.core.CoreService;
 import org.onosproject.net.DeviceId;
 import org.onosproject.net.Host;
 import org.onosproject.net.HostId;
-import org.onosproject.net.Port;
 import org.onosproject.net.PortNumber;
 import org.onosproject.net.config.NetworkConfigEvent;
 import org.onosproject.net.config.NetworkConfigListener;
 import org.onosproject.net.config.NetworkConfigService;
-import org.onosproject.net.device.DeviceService;
 import org.onosproject.net.flow.DefaultTrafficSelector;
 import org.onosproject.net.flow.DefaultTrafficTreatment;
 import org.onosproject.net.flow.TrafficSelector;
@@ -56,25 +54,30 @@ import org.onosproject.net.packet.PacketService;
 import org.opencord.cordvtn.api.Constants;
 import org.opencord.cordvtn.api.CordVtnConfig;
 import org.opencord.cordvtn.api.core.Instance;
+import org.opencord.cordvtn.api.core.InstanceService;
 import org.opencord.cordvtn.api.core.ServiceNetworkEvent;
 import org.opencord.cordvtn.api.core.ServiceNetworkListener;
 import org.opencord.cordvtn.api.core.ServiceNetworkService;
+import org.opencord.cordvtn.api.net.AddressPair;
 import org.opencord.cordvtn.api.net.ServiceNetwork;
+import org.opencord.cordvtn.api.net.ServicePort;
 import org.opencord.cordvtn.api.node.CordVtnNode;
 import org.opencord.cordvtn.api.node.CordVtnNodeService;
+import org.opencord.cordvtn.api.node.NodePortService;
 import org.osgi.service.component.ComponentContext;
 import org.slf4j.Logger;
 
 import java.nio.ByteBuffer;
 import java.util.Dictionary;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
 
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
-import static org.onosproject.net.AnnotationKeys.PORT_NAME;
 import static org.opencord.cordvtn.api.Constants.DEFAULT_GATEWAY_MAC_STR;
+import static org.opencord.cordvtn.api.core.ServiceNetworkEvent.Change.SERVICE_IP;
 import static org.opencord.cordvtn.api.net.ServiceNetwork.NetworkType.*;
 import static org.slf4j.LoggerFactory.getLogger;
 
@@ -103,7 +106,7 @@ public class CordVtnArpProxy {
     protected ComponentConfigService compConfigService;
 
     @Reference(cardinality = ReferenceCardinality.MANDATORY_UNARY)
-    protected DeviceService deviceService;
+    protected NodePortService nodePortService;
 
     @Reference(cardinality = ReferenceCardinality.MANDATORY_UNARY)
     protected CordVtnNodeService nodeService;
@@ -111,6 +114,9 @@ public class CordVtnArpProxy {
     @Reference(cardinality = ReferenceCardinality.MANDATORY_UNARY)
     protected ServiceNetworkService snetService;
 
+    @Reference(cardinality = ReferenceCardinality.MANDATORY_UNARY)
+    protected InstanceService instanceService;
+
     @Property(name = PRIVATE_GATEWAY_MAC, value = DEFAULT_GATEWAY_MAC_STR,
             label = "Fake MAC address for virtual network gateway")
     private String privateGatewayMacStr = DEFAULT_GATEWAY_MAC_STR;
@@ -245,7 +251,8 @@ public class CordVtnArpProxy {
 
     /**
      * Emits ARP reply with fake MAC address for a given ARP request.
-     * It only handles requests for the registered gateway IPs and host IPs.
+     * It only handles requests for the registered gateway IPs, host IPs and
+     * the address pair IPs of the instances.
      *
      * @param context packet context
      * @param ethPacket ethernet packet
@@ -256,7 +263,13 @@ public class CordVtnArpProxy {
 
         MacAddress gatewayMac = gateways.get(targetIp);
         MacAddress replyMac = gatewayMac != null ? gatewayMac :
-                getMacFromHostService(targetIp);
+                getMacFromServicePorts(ethPacket.getSourceMAC(), targetIp);
+        if (replyMac.equals(MacAddress.NONE)) {
+            replyMac = getMacFromHostService(targetIp);
+        }
+        if (replyMac.equals(MacAddress.NONE)) {
+            replyMac = getMacFromAddressPairs(targetIp);
+        }
 
         if (replyMac.equals(MacAddress.NONE)) {
             log.trace("Failed to find MAC for {}", targetIp);
@@ -291,7 +304,16 @@ public class CordVtnArpProxy {
                 .findFirst()
                 .orElse(null);
 
-        if (host == null) {
+        PortNumber output = host != null ? host.location().port() : null;
+        if (output == null) {
+            // the address pair IP is on the port of the owner instance
+            Instance owner = instanceService.addressPairOwner(targetIp);
+            if (owner != null && owner.deviceId().equals(deviceId)) {
+                output = owner.portNumber();
+            }
+        }
+
+        if (output == null) {
             // do nothing for the unknown ARP reply
             log.trace("No host found for {} in {}", targetIp, deviceId);
             context.block();
@@ -299,7 +321,7 @@ public class CordVtnArpProxy {
         }
 
         TrafficTreatment treatment = DefaultTrafficTreatment.builder()
-                .setOutput(host.location().port())
+                .setOutput(output)
                 .build();
 
         packetService.emit(new DefaultOutboundPacket(
@@ -339,12 +361,7 @@ public class CordVtnArpProxy {
         if (node == null || node.hostManagementInterface() == null) {
             return null;
         }
-        Optional<Port> port = deviceService.getPorts(deviceId).stream()
-                .filter(p -> p.annotations().value(PORT_NAME)
-                        .equals(node.hostManagementInterface()) &&
-                        p.isEnabled())
-                .findAny();
-        return port.isPresent() ? port.get().number() : null;
+        return nodePortService.portNumber(deviceId, node.hostManagementInterface());
     }
 
     /**
@@ -403,6 +420,41 @@ public class CordVtnArpProxy {
         return eth;
     }
 
+    /**
+     * Returns MAC address of a service port with a given target IP address.
+     * The port in the network of the requester is preferred if the IP address
+     * is used in the other networks as well.
+     *
+     * @param srcMac   mac address of the requester
+     * @param targetIp target ip
+     * @return mac address, or NONE mac address if it fails to find the mac
+     */
+    private MacAddress getMacFromServicePorts(MacAddress srcMac, IpAddress targetIp) {
+        checkNotNull(targetIp);
+
+        Set<ServicePort> sports = snetService.servicePortsByIp(targetIp);
+        if (sports.isEmpty()) {
+            return MacAddress.NONE;
+        }
+        ServicePort requester = snetService.servicePortByMac(srcMac);
+        ServicePort sport = sports.stream()
+                .filter(p -> p.mac() != null)
+                .filter(p -> requester == null ||
+                        Objects.equals(p.networkId(), requester.networkId()))
+                .findFirst()
+                .orElse(sports.stream()
+                                .filter(p -> p.mac() != null)
+                                .findFirst()
+                                .orElse(null));
+
+        if (sport != null) {
+            log.trace("Found MAC from service ports for {}", targetIp);
+            return sport.mac();
+        } else {
+            return MacAddress.NONE;
+        }
+    }
+
     /**
      * Returns MAC address of a host with a given target IP address by asking to
      * host service. It does not support overlapping IP.
@@ -426,6 +478,23 @@ public class CordVtnArpProxy {
         }
     }
 
+    /**
+     * Returns MAC address of the address pair with a given target IP address
+     * by asking to instance service.
+     *
+     * @param targetIp target ip
+     * @return mac address, or NONE mac address if it fails to find the mac
+     */
+    private MacAddress getMacFromAddressPairs(IpAddress targetIp) {
+        AddressPair pair = instanceService.addressPair(targetIp);
+        if (pair != null) {
+            log.trace("Found MAC from address pairs for {}", targetIp);
+            return pair.mac();
+        } else {
+            return MacAddress.NONE;
+        }
+    }
+
     private class InternalPacketProcessor implements PacketProcessor {
 
         @Override
@@ -464,8 +533,15 @@ public class CordVtnArpProxy {
         public void event(ServiceNetworkEvent event) {
             ServiceNetwork snet = event.subject();
             switch (event.type()) {
-                case SERVICE_NETWORK_CREATED:
                 case SERVICE_NETWORK_UPDATED:
+                    ServiceNetwork prev = event.prevSubject();
+                    if (prev != null && prev.serviceIp() != null &&
+                            event.changes().contains(SERVICE_IP)) {
+                        removeGateway(prev.serviceIp());
+                    }
+                    addGateway(snet.serviceIp(), privateGatewayMac);
+                    break;
+                case SERVICE_NETWORK_CREATED:
                     addGateway(snet.serviceIp(), privateGatewayMac);
                     break;
                 case SERVICE_NETWORK_REMOVED:
@@ -54,9 +54,12 @@ import org.onosproject.net.packet.PacketProcessor;
 import org.onosproject.net.packet.PacketService;
 import org.opencord.cordvtn.api.Constants;
 import org.opencord.cordvtn.api.core.Instance;
+import org.opencord.cordvtn.api.core.InstanceService;
 import org.opencord.cordvtn.api.core.ServiceNetworkService;
+import org.opencord.cordvtn.api.net.AddressPair;
 import org.opencord.cordvtn.api.net.NetworkId;
 import org.opencord.cordvtn.api.net.ServiceNetwork;
+import org.opencord.cordvtn.api.net.ServicePort;
 import org.osgi.service.component.ComponentContext;
 import org.slf4j.Logger;
 
@@ -112,6 +115,9 @@ public class CordVtnDhcpProxy {
     @Reference(cardinality = ReferenceCardinality.MANDATORY_UNARY)
     protected ServiceNetworkService snetService;
 
+    @Reference(cardinality = ReferenceCardinality.MANDATORY_UNARY)
+    protected InstanceService instanceService;
+
     @Property(name = DHCP_SERVER_MAC, value = DEFAULT_GATEWAY_MAC_STR,
             label = "Fake MAC address for DHCP server interface")
     private String dhcpServerMac = DEFAULT_GATEWAY_MAC_STR;
@@ -211,37 +217,59 @@ public class CordVtnDhcpProxy {
             }
 
             MacAddress clientMac = MacAddress.valueOf(dhcpPacket.getClientHardwareAddress());
-            Host reqHost = hostService.getHost(HostId.hostId(clientMac));
-            if (reqHost == null) {
+            HostId reqHostId = HostId.hostId(clientMac);
+            ServicePort reqPort = snetService.servicePortByMac(clientMac);
+            NetworkId reqNetId;
+            Ip4Address reqIp;
+            if (reqPort != null && reqPort.ip() != null && reqPort.ip().isIp4()) {
+                reqNetId = reqPort.networkId();
+                reqIp = reqPort.ip().getIp4Address();
+            } else {
+                Host reqHost = hostService.getHost(reqHostId);
+                Instance reqInstance;
+                if (reqHost != null) {
+                    reqInstance = Instance.of(reqHost);
+                    reqIp = reqInstance.ipAddress();
+                } else {
+                    // the address pair of an instance gets the IP in the network
+                    // of the instance
+                    AddressPair pair = instanceService.addressPairs(clientMac).stream()
+                            .filter(addressPair -> addressPair.ip().isIp4())
+                            .findFirst().orElse(null);
+                    reqInstance = pair == null ? null : instanceService.addressPairOwner(pair.ip());
+                    reqIp = pair == null ? null : pair.ip().getIp4Address();
+                }
+                reqNetId = reqInstance == null ? null : reqInstance.netId();
+            }
+            if (reqNetId == null) {
                 log.debug("DHCP packet from unknown host, ignore it");
                 return;
             }
 
-            Instance reqInstance = Instance.of(reqHost);
             Ethernet ethPacket = context.inPacket().parsed();
             switch (inPacketType) {
                 case DHCPDISCOVER:
-                    log.trace("DHCP DISCOVER received from {}", reqHost.id());
+                    log.trace("DHCP DISCOVER received from {}", reqHostId);
                     Ethernet discoverReply = buildReply(
                             ethPacket,
                             (byte) DHCPOFFER.getValue(),
-                            reqInstance);
+                            reqNetId,
+                            reqIp);
                     sendReply(context, discoverReply);
-                    log.trace("DHCP OFFER({}) is sent to {}",
-                              reqInstance.ipAddress(), reqHost.id());
+                    log.trace("DHCP OFFER({}) is sent to {}", reqIp, reqHostId);
                     break;
                 case DHCPREQUEST:
-                    log.trace("DHCP REQUEST received from {}", reqHost.id());
+                    log.trace("DHCP REQUEST received from {}", reqHostId);
                     Ethernet requestReply = buildReply(
                             ethPacket,
                             (byte) DHCPACK.getValue(),
-                            reqInstance);
+                            reqNetId,
+                            reqIp);
                     sendReply(context, requestReply);
-                    log.trace("DHCP ACK({}) is sent to {}",
-                              reqInstance.ipAddress(), reqHost.id());
+                    log.trace("DHCP ACK({}) is sent to {}", reqIp, reqHostId);
                     break;
                 case DHCPRELEASE:
-                    log.trace("DHCP RELEASE received from {}", reqHost.id());
+                    log.trace("DHCP RELEASE received from {}", reqHostId);
                     // do nothing
                     break;
                 default:
@@ -264,8 +292,8 @@ public class CordVtnDhcpProxy {
         }
 
         private Ethernet buildReply(Ethernet ethRequest, byte packetType,
-                                    Instance reqInstance) {
-            ServiceNetwork snet = snetService.serviceNetwork(reqInstance.netId());
+                                    NetworkId reqNetId, Ip4Address reqIp) {
+            ServiceNetwork snet = snetService.serviceNetwork(reqNetId);
             Ip4Address serverIp = snet.serviceIp().getIp4Address();
 
             Ethernet ethReply = new Ethernet();
@@ -276,7 +304,7 @@ public class CordVtnDhcpProxy {
             IPv4 ipv4Request = (IPv4) ethRequest.getPayload();
             IPv4 ipv4Reply = new IPv4();
             ipv4Reply.setSourceAddress(serverIp.toInt());
-            ipv4Reply.setDestinationAddress(reqInstance.ipAddress().toInt());
+            ipv4Reply.setDestinationAddress(reqIp.toInt());
             ipv4Reply.setTtl(DEFAULT_PACKET_TTL);
 
             UDP udpRequest = (UDP) ipv4Request.getPayload();
@@ -286,7 +314,7 @@ public class CordVtnDhcpProxy {
 
             DHCP dhcpRequest = (DHCP) udpRequest.getPayload();
             DHCP dhcpReply = buildDhcpReply(
-                    dhcpRequest, packetType, reqInstance.ipAddress(), snet);
+                    dhcpRequest, packetType, reqIp, snet);
 
             udpReply.setPayload(dhcpReply);
             ipv4Reply.setPayload(udpReply);
@@ -426,8 +454,11 @@ public class CordVtnDhcpProxy {
             });
 
             // static routes for the bidirectional subscribers
-            Set<ServiceNetwork> subscribers = snetService.serviceNetworks().stream()
-                    .filter(net -> isBidirectionalProvider(net, snet.id()))
+            Set<ServiceNetwork> subscribers = snetService.subscribers(snet.id())
+                    .entrySet().stream()
+                    .filter(subscriber -> subscriber.getValue() == BIDIRECTIONAL)
+                    .map(subscriber -> snetService.serviceNetwork(subscriber.getKey()))
+                    .filter(Objects::nonNull)
                     .collect(Collectors.toSet());
 
             subscribers.forEach(subscriber -> {
@@ -439,12 +470,6 @@ public class CordVtnDhcpProxy {
             return Bytes.toArray(result);
         }
 
-        private boolean isBidirectionalProvider(ServiceNetwork snet, NetworkId targetNetId) {
-            return snet.providers().entrySet().stream()
-                    .filter(p -> Objects.equals(p.getKey(), targetNetId))
-                    .anyMatch(p -> p.getValue() == BIDIRECTIONAL);
-        }
-
         private List<Byte> getSignificantOctets(IpPrefix ipPrefix) {
             int numOfOctets = ipPrefix.prefixLength() / 8;
             if (ipPrefix.prefixLength() % 8 != 0) {
@@ -72,12 +72,9 @@ import org.slf4j.Logger;
 import java.util.List;
 import java.util.Objects;
 import java.util.Set;
-import java.util.concurrent.ExecutorService;
 import java.util.stream.Collectors;
 
 import static java.lang.String.format;
-import static java.util.concurrent.Executors.newSingleThreadExecutor;
-import static org.onlab.util.Tools.groupedThreads;
 import static org.onosproject.net.AnnotationKeys.PORT_NAME;
 import static org.onosproject.net.Device.Type.SWITCH;
 import static org.onosproject.net.behaviour.TunnelDescription.Type.VXLAN;
@@ -86,6 +83,7 @@ import static org.opencord.cordvtn.api.Constants.DEFAULT_TUNNEL;
 import static org.opencord.cordvtn.api.Constants.INTEGRATION_BRIDGE;
 import static org.opencord.cordvtn.api.node.CordVtnNodeState.*;
 import static org.opencord.cordvtn.impl.DefaultCordVtnNode.updatedState;
+import static org.opencord.cordvtn.impl.PartitionedExecutor.newPartitionedExecutor;
 import static org.opencord.cordvtn.impl.RemoteIpCommandUtil.*;
 import static org.opencord.cordvtn.impl.RemoteIpCommandUtil.disconnect;
 import static org.opencord.cordvtn.impl.RemoteIpCommandUtil.isInterfaceUp;
@@ -143,8 +141,8 @@ public class DefaultCordVtnNodeHandler implements CordVtnNodeHandler {
     @Reference(cardinality = ReferenceCardinality.MANDATORY_UNARY)
     protected CordVtnPipeline pipelineService;
 
-    private final ExecutorService eventExecutor = newSingleThreadExecutor(
-            groupedThreads(this.getClass().getSimpleName(), "event-handler", log));
+    private final PartitionedExecutor eventExecutor = newPartitionedExecutor(
+            this.getClass().getSimpleName(), "event-handler", log);
     private final NetworkConfigListener configListener = new InternalConfigListener();
     private final DeviceListener deviceListener = new InternalDeviceListener();
     private final DeviceHandler ovsdbHandler = new OvsdbDeviceHandler();
@@ -423,7 +421,10 @@ public class DefaultCordVtnNodeHandler implements CordVtnNodeHandler {
 
         @Override
         public void event(DeviceEvent event) {
-            eventExecutor.execute(() -> {
+            // handles the events of the bridge and OVSDB of a node in order
+            CordVtnNode node = nodeService.node(event.subject().id());
+            Object key = node == null ? event.subject().id() : node.hostname();
+            eventExecutor.execute(key, () -> {
                 NodeId leader = leadershipService.getLeader(appId.name());
                 if (!Objects.equals(localNodeId, leader)) {
                     // do not allow to proceed without leadership
@@ -542,7 +543,7 @@ public class DefaultCordVtnNodeHandler implements CordVtnNodeHandler {
 
         @Override
         public void event(CordVtnNodeEvent event) {
-            eventExecutor.execute(() -> {
+            eventExecutor.execute(event.subject().hostname(), () -> {
                 NodeId leader = leadershipService.getLeader(appId.name());
                 if (!Objects.equals(localNodeId, leader)) {
                     // do not allow to proceed without leadership
@@ -15,9 +15,16 @@
  */
 package org.opencord.cordvtn.impl;
 
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 import org.apache.felix.scr.annotations.Activate;
 import org.apache.felix.scr.annotations.Component;
 import org.apache.felix.scr.annotations.Deactivate;
+import org.apache.felix.scr.annotations.Modified;
+import org.apache.felix.scr.annotations.Property;
 import org.apache.felix.scr.annotations.Reference;
 import org.apache.felix.scr.annotations.ReferenceCardinality;
 import org.apache.felix.scr.annotations.Service;
@@ -27,29 +34,45 @@ import org.onlab.packet.Ip4Address;
 import org.onlab.packet.IpAddress;
 import org.onlab.packet.TpPort;
 import org.onlab.packet.VlanId;
-import org.onosproject.net.AnnotationKeys;
-import org.onosproject.net.Port;
+import org.onlab.util.Identifier;
+import org.onlab.util.Tools;
+import org.onosproject.cfg.ComponentConfigService;
 import org.opencord.cordvtn.api.Constants;
 import org.opencord.cordvtn.api.core.CordVtnPipeline;
 import org.opencord.cordvtn.api.node.CordVtnNode;
+import org.opencord.cordvtn.api.node.NodePortService;
 import org.onosproject.core.ApplicationId;
 import org.onosproject.core.CoreService;
 import org.onosproject.net.DeviceId;
 import org.onosproject.net.PortNumber;
-import org.onosproject.net.device.DeviceService;
 import org.onosproject.net.flow.DefaultFlowRule;
 import org.onosproject.net.flow.DefaultTrafficSelector;
 import org.onosproject.net.flow.DefaultTrafficTreatment;
+import org.onosproject.net.flow.FlowEntry;
 import org.onosproject.net.flow.FlowRule;
 import org.onosproject.net.flow.FlowRuleOperations;
 import org.onosproject.net.flow.FlowRuleOperationsContext;
 import org.onosproject.net.flow.FlowRuleService;
 import org.onosproject.net.flow.TrafficSelector;
 import org.onosproject.net.flow.TrafficTreatment;
+import org.osgi.service.component.ComponentContext;
 import org.slf4j.Logger;
 
+import java.util.Collection;
+import java.util.Dictionary;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 import static com.google.common.base.Preconditions.checkArgument;
+import static java.util.concurrent.Executors.newSingleThreadScheduledExecutor;
+import static org.onlab.util.Tools.groupedThreads;
+import static org.onosproject.net.flow.FlowEntry.FlowEntryState.PENDING_REMOVE;
+import static org.onosproject.net.flow.FlowEntry.FlowEntryState.REMOVED;
 import static org.opencord.cordvtn.api.Constants.DEFAULT_TUNNEL;
 import static org.opencord.cordvtn.api.node.CordVtnNodeState.COMPLETE;
 import static org.slf4j.LoggerFactory.getLogger;
@@ -63,6 +86,10 @@ public class DefaultCordVtnPipeline implements CordVtnPipeline {
 
     protected final Logger log = getLogger(getClass());
 
+    private static final String FLOW_BATCH_WINDOW = "flowBatchWindow";
+    private static final int DEFAULT_FLOW_BATCH_WINDOW = 50;
+    private static final int MAX_FLOW_BATCH_SIZE = 1000;
+
     @Reference(cardinality = ReferenceCardinality.MANDATORY_UNARY)
     protected CoreService coreService;
 
@@ -70,26 +97,76 @@ public class DefaultCordVtnPipeline implements CordVtnPipeline {
     protected FlowRuleService flowRuleService;
 
     @Reference(cardinality = ReferenceCardinality.MANDATORY_UNARY)
-    protected DeviceService deviceService;
+    protected ComponentConfigService compConfigService;
+
+    @Reference(cardinality = ReferenceCardinality.MANDATORY_UNARY)
+    protected NodePortService nodePortService;
+
+    @Property(name = FLOW_BATCH_WINDOW, intValue = DEFAULT_FLOW_BATCH_WINDOW,
+            label = "Time window in milliseconds to coalesce flow rule changes " +
+                    "into a batch per device; 0 applies the changes immediately")
+    private int flowBatchWindow = DEFAULT_FLOW_BATCH_WINDOW;
 
     private static final int VXLAN_UDP_PORT = 4789;
 
+    private final ScheduledExecutorService batchExecutor = newSingleThreadScheduledExecutor(
+            groupedThreads(this.getClass().getSimpleName(), "flow-batch", log));
+
+    // pending flow rule operations per device, true for install and false for remove
+    private final Map<DeviceId, Map<FlowRule, Boolean>> pendingOps = Maps.newHashMap();
+    private int pendingCount = 0;
+    private ScheduledFuture<?> flushTask;
+
+    // base rules installed by the last initialization of each device
+    private final Map<DeviceId, Set<FlowRule>> baseRules = Maps.newConcurrentMap();
+
+    // flow rules installed on behalf of an instance port or a service network
+    private final Map<Identifier<?>, Set<FlowRule>> ledger = Maps.newConcurrentMap();
+
     private ApplicationId appId;
 
     @Activate
     protected void activate() {
         appId = coreService.registerApplication(Constants.CORDVTN_APP_ID);
+        compConfigService.registerProperties(getClass());
         log.info("Started");
     }
 
     @Deactivate
     protected void deactivate() {
+        compConfigService.unregisterProperties(getClass(), false);
+        // the pending changes are flushed before the executor stops
+        batchExecutor.execute(this::flushFlowRules);
+        batchExecutor.shutdown();
         log.info("Stopped");
     }
 
+    @Modified
+    protected void modified(ComponentContext context) {
+        Dictionary<?, ?> properties = context.getProperties();
+        String updatedWindow = Tools.get(properties, FLOW_BATCH_WINDOW);
+        if (!Strings.isNullOrEmpty(updatedWindow)) {
+            try {
+                int window = Integer.parseInt(updatedWindow.trim());
+                if (window < 0) {
+                    log.warn("Ignored negative {} {}, keeping {}",
+                             FLOW_BATCH_WINDOW, window, flowBatchWindow);
+                } else {
+                    flowBatchWindow = window;
+                }
+            } catch (NumberFormatException e) {
+                log.warn("Ignored invalid {} {}, keeping {}",
+                         FLOW_BATCH_WINDOW, updatedWindow, flowBatchWindow);
+            }
+        }
+        log.info("Modified");
+    }
+
     @Override
     public void cleanupPipeline() {
-        flowRuleService.getFlowRulesById(appId).forEach(flowRule -> processFlowRule(false, flowRule));
+        ledger.clear();
+        baseRules.clear();
+        processFlowRules(false, Lists.newArrayList(flowRuleService.getFlowRulesById(appId)));
     }
 
     @Override
@@ -101,37 +178,184 @@ public class DefaultCordVtnPipeline implements CordVtnPipeline {
         PortNumber hostMgmtPort = node.hostManagementInterface() == null ?
                 null : getPortNumber(node.integrationBridgeId(), node.hostManagementInterface());
 
+        List<FlowRule> rules = Lists.newArrayList();
         processTableZero(node.integrationBridgeId(),
                 dataPort,
                 node.dataIp().ip(),
-                node.localManagementIp().ip());
+                node.localManagementIp().ip(),
+                rules);
 
         processInPortTable(node.integrationBridgeId(),
                 tunnelPort,
                 dataPort,
-                hostMgmtPort);
+                hostMgmtPort,
+                rules);
 
-        processAccessTypeTable(node.integrationBridgeId(), dataPort);
-        processVlanTable(node.integrationBridgeId(), dataPort);
+        processAccessTypeTable(node.integrationBridgeId(), dataPort, rules);
+        processVlanTable(node.integrationBridgeId(), dataPort, rules);
+
+        reconcileBaseRules(node.integrationBridgeId(), rules);
+    }
+
+    /**
+     * Installs and removes only the difference between the desired base rules
+     * and the flow entries the device currently has.
+     *
+     * @param deviceId device identifier
+     * @param rules    desired base rules of the device
+     */
+    private void reconcileBaseRules(DeviceId deviceId, List<FlowRule> rules) {
+        // flow rule equality does not cover treatment, compare it separately
+        Map<FlowRule, FlowRule> desired = Maps.newHashMap();
+        rules.forEach(rule -> desired.put(rule, rule));
+
+        Set<FlowRule> previous = baseRules.put(deviceId, ImmutableSet.copyOf(rules));
+        List<FlowRule> stale = Lists.newArrayList();
+        Set<FlowRule> installed = Sets.newHashSet();
+
+        for (FlowEntry entry : flowRuleService.getFlowEntries(deviceId)) {
+            if (entry.appId() != appId.id() || entry.state() == PENDING_REMOVE ||
+                    entry.state() == REMOVED) {
+                continue;
+            }
+            FlowRule match = desired.get(entry);
+            if (match != null && match.treatment().equals(entry.treatment())) {
+                installed.add(match);
+            } else if (entry.tableId() == TABLE_ZERO ||
+                    (previous != null && previous.contains(entry))) {
+                // table zero only has base rules, the other tables have the
+                // rules of the instances too so only touch the known base rules
+                stale.add(entry);
+            }
+        }
+
+        List<FlowRule> missing = rules.stream()
+                .filter(rule -> !installed.contains(rule))
+                .collect(Collectors.toList());
+
+        log.debug("Reconciled base rules of {}, {} to add, {} to remove",
+                  deviceId, missing.size(), stale.size());
+        processFlowRules(false, stale);
+        processFlowRules(true, missing);
     }
 
     @Override
     public void processFlowRule(boolean install, FlowRule rule) {
+        processFlowRules(install, Lists.newArrayList(rule));
+    }
+
+    @Override
+    public void processFlowRules(boolean install, Collection<FlowRule> rules) {
+        if (rules.isEmpty()) {
+            return;
+        }
+        synchronized (pendingOps) {
+            rules.forEach(rule -> {
+                Map<FlowRule, Boolean> deviceOps = pendingOps.computeIfAbsent(
+                        rule.deviceId(), id -> Maps.newLinkedHashMap());
+                // flow rule equality does not cover treatment, remove the existing
+                // one first so that the latest rule replaces the pending one
+                if (deviceOps.remove(rule) == null) {
+                    pendingCount++;
+                }
+                deviceOps.put(rule, install);
+            });
+            // flushed on the batch thread only, even when the batch is full,
+            // so that the batches of a device are applied in order
+            long delay = flowBatchWindow <= 0 || pendingCount >= MAX_FLOW_BATCH_SIZE ?
+                    0 : flowBatchWindow;
+            if (flushTask != null && flushTask.getDelay(TimeUnit.MILLISECONDS) > delay) {
+                flushTask.cancel(false);
+                flushTask = null;
+            }
+            if (flushTask == null) {
+                flushTask = batchExecutor.schedule(this::flushFlowRules,
+                        delay, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    @Override
+    public void processFlowRules(boolean install, Collection<FlowRule> rules,
+                                 Identifier<?> owner) {
+        if (rules.isEmpty()) {
+            return;
+        }
+        ledger.compute(owner, (id, existing) -> {
+            Set<FlowRule> updated = existing == null ?
+                    Sets.newHashSet() : Sets.newHashSet(existing);
+            rules.forEach(rule -> {
+                // flow rule equality does not cover treatment, replace explicitly
+                updated.remove(rule);
+                if (install) {
+                    updated.add(rule);
+                }
+            });
+            return updated.isEmpty() ? null : ImmutableSet.copyOf(updated);
+        });
+        processFlowRules(install, rules);
+    }
+
+    @Override
+    public Set<FlowRule> flowRules(Identifier<?> owner) {
+        Set<FlowRule> rules = ledger.get(owner);
+        return rules == null ? ImmutableSet.of() : rules;
+    }
+
+    @Override
+    public void removeFlowRules(Identifier<?> owner) {
+        Set<FlowRule> rules = ledger.remove(owner);
+        if (rules != null) {
+            processFlowRules(false, rules);
+        }
+    }
+
+    /**
+     * Applies all pending flow rule operations, a staged batch for each device.
+     */
+    private void flushFlowRules() {
+        Map<DeviceId, Map<FlowRule, Boolean>> ops;
+        synchronized (pendingOps) {
+            if (flushTask != null) {
+                flushTask.cancel(false);
+                flushTask = null;
+            }
+            ops = Maps.newHashMap(pendingOps);
+            pendingOps.clear();
+            pendingCount = 0;
+        }
+        ops.forEach(this::applyFlowRules);
+    }
+
+    private void applyFlowRules(DeviceId deviceId, Map<FlowRule, Boolean> deviceOps) {
         FlowRuleOperations.Builder oBuilder = FlowRuleOperations.builder();
-        oBuilder = install ? oBuilder.add(rule) : oBuilder.remove(rule);
+        // removals go to the first stage so that they do not race with
+        // the rules replacing them
+        deviceOps.entrySet().stream()
+                .filter(op -> !op.getValue())
+                .forEach(op -> oBuilder.remove(op.getKey()));
+        oBuilder.newStage();
+        deviceOps.entrySet().stream()
+                .filter(Map.Entry::getValue)
+                .forEach(op -> oBuilder.add(op.getKey()));
 
         flowRuleService.apply(oBuilder.build(new FlowRuleOperationsContext() {
+            @Override
+            public void onSuccess(FlowRuleOperations ops) {
+                log.trace("Applied {} flow rule operations to {}", deviceOps.size(), deviceId);
+            }
+
             @Override
             public void onError(FlowRuleOperations ops) {
-                log.error(String.format("Failed %s, %s", ops.toString(), rule.toString()));
+                log.error(String.format("Failed %s on %s", ops.toString(), deviceId));
             }
         }));
     }
 
     private void processTableZero(DeviceId deviceId, PortNumber dataPort, IpAddress dataIp,
-                                  IpAddress localMgmtIp) {
-        vxlanShuttleRule(deviceId, dataPort, dataIp);
-        localManagementBaseRule(deviceId, localMgmtIp.getIp4Address());
+                                  IpAddress localMgmtIp, List<FlowRule> rules) {
+        vxlanShuttleRule(deviceId, dataPort, dataIp, rules);
+        localManagementBaseRule(deviceId, localMgmtIp.getIp4Address(), rules);
 
         // take all vlan tagged packet to the VLAN table
         TrafficSelector selector = DefaultTrafficSelector.builder()
@@ -152,7 +376,7 @@ public class DefaultCordVtnPipeline implements CordVtnPipeline {
                 .makePermanent()
                 .build();
 
-        processFlowRule(true, flowRule);
+        rules.add(flowRule);
 
         // take all other packets to the next table
         selector = DefaultTrafficSelector.builder()
@@ -172,10 +396,11 @@ public class DefaultCordVtnPipeline implements CordVtnPipeline {
                 .makePermanent()
                 .build();
 
-        processFlowRule(true, flowRule);
+        rules.add(flowRule);
     }
 
-    private void vxlanShuttleRule(DeviceId deviceId, PortNumber dataPort, IpAddress dataIp) {
+    private void vxlanShuttleRule(DeviceId deviceId, PortNumber dataPort, IpAddress dataIp,
+                                  List<FlowRule> rules) {
         // take vxlan packet out onto the physical port
         TrafficSelector selector = DefaultTrafficSelector.builder()
                 .matchInPort(PortNumber.LOCAL)
@@ -195,7 +420,7 @@ public class DefaultCordVtnPipeline implements CordVtnPipeline {
                 .makePermanent()
                 .build();
 
-        processFlowRule(true, flowRule);
+        rules.add(flowRule);
 
         // take a vxlan encap'd packet through the Linux stack
         selector = DefaultTrafficSelector.builder()
@@ -219,7 +444,7 @@ public class DefaultCordVtnPipeline implements CordVtnPipeline {
                 .makePermanent()
                 .build();
 
-        processFlowRule(true, flowRule);
+        rules.add(flowRule);
 
         // take a packet to the data plane ip through Linux stack
         selector = DefaultTrafficSelector.builder()
@@ -242,7 +467,7 @@ public class DefaultCordVtnPipeline implements CordVtnPipeline {
                 .makePermanent()
                 .build();
 
-        processFlowRule(true, flowRule);
+        rules.add(flowRule);
 
         // take an arp packet from physical through Linux stack
         selector = DefaultTrafficSelector.builder()
@@ -265,10 +490,11 @@ public class DefaultCordVtnPipeline implements CordVtnPipeline {
                 .makePermanent()
                 .build();
 
-        processFlowRule(true, flowRule);
+        rules.add(flowRule);
     }
 
-    private void localManagementBaseRule(DeviceId deviceId, Ip4Address localMgmtIp) {
+    private void localManagementBaseRule(DeviceId deviceId, Ip4Address localMgmtIp,
+                                        List<FlowRule> rules) {
         TrafficSelector selector = DefaultTrafficSelector.builder()
                 .matchEthType(Ethernet.TYPE_ARP)
                 .matchArpTpa(localMgmtIp)
@@ -288,7 +514,7 @@ public class DefaultCordVtnPipeline implements CordVtnPipeline {
                 .makePermanent()
                 .build();
 
-        processFlowRule(true, flowRule);
+        rules.add(flowRule);
 
         selector = DefaultTrafficSelector.builder()
                 .matchInPort(PortNumber.LOCAL)
@@ -310,7 +536,7 @@ public class DefaultCordVtnPipeline implements CordVtnPipeline {
                 .makePermanent()
                 .build();
 
-        processFlowRule(true, flowRule);
+        rules.add(flowRule);
 
         selector = DefaultTrafficSelector.builder()
                 .matchEthType(Ethernet.TYPE_IPV4)
@@ -331,7 +557,7 @@ public class DefaultCordVtnPipeline implements CordVtnPipeline {
                 .makePermanent()
                 .build();
 
-        processFlowRule(true, flowRule);
+        rules.add(flowRule);
 
         selector = DefaultTrafficSelector.builder()
                 .matchInPort(PortNumber.LOCAL)
@@ -353,11 +579,11 @@ public class DefaultCordVtnPipeline implements CordVtnPipeline {
                 .makePermanent()
                 .build();
 
-        processFlowRule(true, flowRule);
+        rules.add(flowRule);
     }
 
     private void processInPortTable(DeviceId deviceId, PortNumber tunnelPort, PortNumber dataPort,
-                                    PortNumber hostMgmtPort) {
+                                    PortNumber hostMgmtPort, List<FlowRule> rules) {
         TrafficSelector selector = DefaultTrafficSelector.builder()
                 .matchInPort(tunnelPort)
                 .build();
@@ -376,7 +602,7 @@ public class DefaultCordVtnPipeline implements CordVtnPipeline {
                 .makePermanent()
                 .build();
 
-        processFlowRule(true, flowRule);
+        rules.add(flowRule);
 
         selector = DefaultTrafficSelector.builder()
                 .matchInPort(dataPort)
@@ -396,7 +622,7 @@ public class DefaultCordVtnPipeline implements CordVtnPipeline {
                 .makePermanent()
                 .build();
 
-        processFlowRule(true, flowRule);
+        rules.add(flowRule);
 
         if (hostMgmtPort != null) {
             selector = DefaultTrafficSelector.builder()
@@ -417,11 +643,12 @@ public class DefaultCordVtnPipeline implements CordVtnPipeline {
                     .makePermanent()
                     .build();
 
-            processFlowRule(true, flowRule);
+            rules.add(flowRule);
         }
     }
 
-    private void processAccessTypeTable(DeviceId deviceId, PortNumber dataPort) {
+    private void processAccessTypeTable(DeviceId deviceId, PortNumber dataPort,
+                                        List<FlowRule> rules) {
         TrafficSelector selector = DefaultTrafficSelector.builder()
                 .build();
 
@@ -439,10 +666,11 @@ public class DefaultCordVtnPipeline implements CordVtnPipeline {
                 .makePermanent()
                 .build();
 
-        processFlowRule(true, flowRule);
+        rules.add(flowRule);
     }
 
-    private void processVlanTable(DeviceId deviceId, PortNumber dataPort) {
+    private void processVlanTable(DeviceId deviceId, PortNumber dataPort,
+                                  List<FlowRule> rules) {
         // for traffic going out to WAN, strip vid 500 and take through data plane interface
         TrafficSelector selector = DefaultTrafficSelector.builder()
                 .matchVlanId(VLAN_WAN)
@@ -463,7 +691,7 @@ public class DefaultCordVtnPipeline implements CordVtnPipeline {
                 .makePermanent()
                 .build();
 
-        processFlowRule(true, flowRule);
+        rules.add(flowRule);
 
         selector = DefaultTrafficSelector.builder()
                 .matchVlanId(VLAN_WAN)
@@ -484,14 +712,10 @@ public class DefaultCordVtnPipeline implements CordVtnPipeline {
                 .makePermanent()
                 .build();
 
-        processFlowRule(true, flowRule);
+        rules.add(flowRule);
     }
 
     private PortNumber getPortNumber(DeviceId deviceId, String portName) {
-        return deviceService.getPorts(deviceId).stream()
-                .filter(p -> p.annotations().value(AnnotationKeys.PORT_NAME).equals(portName) &&
-                        p.isEnabled())
-                .map(Port::number)
-                .findAny().orElse(null);
+        return nodePortService.portNumber(deviceId, portName);
     }
 }
@@ -44,14 +44,12 @@ import org.opencord.cordvtn.api.node.SshAccessInfo;
 import org.slf4j.Logger;
 
 import java.util.Set;
-import java.util.concurrent.ExecutorService;
 import java.util.stream.Collectors;
 
 import static com.google.common.base.Preconditions.checkArgument;
-import static java.util.concurrent.Executors.newSingleThreadExecutor;
-import static org.onlab.util.Tools.groupedThreads;
 import static org.opencord.cordvtn.api.Constants.CORDVTN_APP_ID;
 import static org.opencord.cordvtn.api.node.CordVtnNodeState.COMPLETE;
+import static org.opencord.cordvtn.impl.PartitionedExecutor.newPartitionedExecutor;
 import static org.slf4j.LoggerFactory.getLogger;
 
 /**
@@ -84,8 +82,8 @@ public class DistributedCordVtnNodeStore extends AbstractStore<CordVtnNodeEvent,
     @Reference(cardinality = ReferenceCardinality.MANDATORY_UNARY)
     protected StorageService storageService;
 
-    private final ExecutorService eventExecutor = newSingleThreadExecutor(
-            groupedThreads(this.getClass().getSimpleName(), "event-handler", log));
+    private final PartitionedExecutor eventExecutor = newPartitionedExecutor(
+            this.getClass().getSimpleName(), "event-handler", log);
     private final MapEventListener<String, CordVtnNode> nodeStoreListener = new InternalMapListener();
     private ConsistentMap<String, CordVtnNode> nodeStore;
 
@@ -104,6 +102,7 @@ public class DistributedCordVtnNodeStore extends AbstractStore<CordVtnNodeEvent,
     @Deactivate
     protected void deactivate() {
         nodeStore.removeListener(nodeStoreListener);
+        eventExecutor.shutdown();
         log.info("Stopped");
     }
 
@@ -152,7 +151,7 @@ public class DistributedCordVtnNodeStore extends AbstractStore<CordVtnNodeEvent,
             switch (event.type()) {
                 case INSERT:
                     log.debug("CordVtn node is created {}", event.newValue().value());
-                    eventExecutor.execute(() -> {
+                    eventExecutor.execute(event.key(), () -> {
                         notifyDelegate(new CordVtnNodeEvent(
                                 CordVtnNodeEvent.Type.NODE_CREATED,
                                 event.newValue().value()
@@ -167,7 +166,7 @@ public class DistributedCordVtnNodeStore extends AbstractStore<CordVtnNodeEvent,
                     break;
                 case UPDATE:
                     log.debug("CordVtn node is updated {}", event.newValue().value());
-                    eventExecutor.execute(() -> {
+                    eventExecutor.execute(event.key(), () -> {
                         notifyDelegate(new CordVtnNodeEvent(
                                 CordVtnNodeEvent.Type.NODE_UPDATED,
                                 event.newValue().value()
@@ -177,7 +176,7 @@ public class DistributedCordVtnNodeStore extends AbstractStore<CordVtnNodeEvent,
                     break;
                 case REMOVE:
                     log.debug("CordVtn node is removed {}", event.oldValue().value());
-                    eventExecutor.execute(() -> {
+                    eventExecutor.execute(event.key(), () -> {
                         notifyDelegate(new CordVtnNodeEvent(
                                 CordVtnNodeEvent.Type.NODE_REMOVED,
                                 event.oldValue().value()
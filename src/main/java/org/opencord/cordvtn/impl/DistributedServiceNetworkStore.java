@@ -15,25 +15,37 @@
  */
 package org.opencord.cordvtn.impl;
 
+import com.google.common.base.Strings;
 import com.google.common.collect.ImmutableMap;
-import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
 import org.apache.felix.scr.annotations.Activate;
 import org.apache.felix.scr.annotations.Component;
 import org.apache.felix.scr.annotations.Deactivate;
+import org.apache.felix.scr.annotations.Modified;
+import org.apache.felix.scr.annotations.Property;
 import org.apache.felix.scr.annotations.Reference;
 import org.apache.felix.scr.annotations.ReferenceCardinality;
 import org.apache.felix.scr.annotations.Service;
+import org.onlab.packet.IpAddress;
+import org.onlab.packet.MacAddress;
 import org.onlab.util.KryoNamespace;
+import org.onlab.util.Tools;
+import org.onosproject.cfg.ComponentConfigService;
 import org.onosproject.core.ApplicationId;
 import org.onosproject.core.CoreService;
 import org.onosproject.store.AbstractStore;
 import org.onosproject.store.serializers.KryoNamespaces;
+import org.onosproject.store.service.CommitStatus;
 import org.onosproject.store.service.ConsistentMap;
 import org.onosproject.store.service.MapEvent;
 import org.onosproject.store.service.MapEventListener;
 import org.onosproject.store.service.Serializer;
 import org.onosproject.store.service.StorageService;
+import org.onosproject.store.service.TransactionContext;
+import org.onosproject.store.service.TransactionalMap;
 import org.onosproject.store.service.Versioned;
+import org.opencord.cordvtn.api.core.ServiceNetworkBatch;
+import org.opencord.cordvtn.api.core.ServiceNetworkChanges;
 import org.opencord.cordvtn.api.core.ServiceNetworkEvent;
 import org.opencord.cordvtn.api.core.ServiceNetworkStore;
 import org.opencord.cordvtn.api.core.ServiceNetworkStoreDelegate;
@@ -45,19 +57,25 @@ import org.opencord.cordvtn.api.net.SegmentId;
 import org.opencord.cordvtn.api.net.ServiceNetwork;
 import org.opencord.cordvtn.api.net.ServiceNetwork.DependencyType;
 import org.opencord.cordvtn.api.net.ServicePort;
+import org.osgi.service.component.ComponentContext;
 import org.slf4j.Logger;
 
 import java.util.Collections;
+import java.util.Dictionary;
+import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
 import java.util.stream.Collectors;
 
 import static com.google.common.base.Preconditions.checkArgument;
-import static java.util.concurrent.Executors.newSingleThreadExecutor;
+import static java.util.concurrent.Executors.newSingleThreadScheduledExecutor;
 import static org.onlab.util.Tools.groupedThreads;
 import static org.opencord.cordvtn.api.Constants.CORDVTN_APP_ID;
 import static org.opencord.cordvtn.api.core.ServiceNetworkEvent.Type.*;
+import static org.opencord.cordvtn.impl.PartitionedExecutor.newPartitionedExecutor;
 import static org.slf4j.LoggerFactory.getLogger;
 
 /**
@@ -72,6 +90,14 @@ public class DistributedServiceNetworkStore extends AbstractStore<ServiceNetwork
 
     private static final String ERR_NOT_FOUND = " does not exist";
     private static final String ERR_DUPLICATE = " already exists";
+    private static final String ERR_TRANSACTION = "Failed to apply batch %s: %s";
+
+    private static final String SERVICE_NETWORK_STORE = "cordvtn-servicenetstore";
+    private static final String SERVICE_PORT_STORE = "cordvtn-serviceportstore";
+    private static final int MAX_CHANGES = 4096;
+    private static final int MAX_CHANGE_WAITERS = 4;
+    private static final String EVENT_COALESCE_WINDOW = "eventCoalesceWindow";
+    private static final int DEFAULT_EVENT_COALESCE_WINDOW = 0;
 
     private static final KryoNamespace SERIALIZER_SERVICE = KryoNamespace.newBuilder()
             .register(KryoNamespaces.API)
@@ -95,8 +121,18 @@ public class DistributedServiceNetworkStore extends AbstractStore<ServiceNetwork
     @Reference(cardinality = ReferenceCardinality.MANDATORY_UNARY)
     protected StorageService storageService;
 
-    private final ExecutorService eventExecutor = newSingleThreadExecutor(
-            groupedThreads(this.getClass().getSimpleName(), "event-handler", log));
+    @Reference(cardinality = ReferenceCardinality.MANDATORY_UNARY)
+    protected ComponentConfigService compConfigService;
+
+    @Property(name = EVENT_COALESCE_WINDOW, intValue = DEFAULT_EVENT_COALESCE_WINDOW,
+            label = "Time window in milliseconds to merge the consecutive updates of " +
+                    "the same service network or port into one event; 0 notifies each update")
+    private int eventCoalesceWindow = DEFAULT_EVENT_COALESCE_WINDOW;
+
+    private final PartitionedExecutor eventExecutor = newPartitionedExecutor(
+            this.getClass().getSimpleName(), "event-handler", log);
+    private final ScheduledExecutorService coalesceExecutor = newSingleThreadScheduledExecutor(
+            groupedThreads(this.getClass().getSimpleName(), "event-coalesce", log));
     private final MapEventListener<PortId, ServicePort> servicePortListener =
             new ServicePortMapListener();
     private final MapEventListener<NetworkId, ServiceNetwork> serviceNetworkListener =
@@ -105,118 +141,391 @@ public class DistributedServiceNetworkStore extends AbstractStore<ServiceNetwork
     private ConsistentMap<NetworkId, ServiceNetwork> serviceNetworkStore;
     private ConsistentMap<PortId, ServicePort> servicePortStore;
 
+    // local copies for the read paths, kept by the writes and the map events
+    private final VersionedMirror<NetworkId, ServiceNetwork> serviceNetworks =
+            new VersionedMirror<>();
+    private final VersionedMirror<PortId, ServicePort> servicePorts =
+            new VersionedMirror<>();
+
+    // local secondary indexes of the service ports, kept with the port mirror
+    // under the lock of the index by the writes and the map events
+    private final ServicePortIndex servicePortIndex = new ServicePortIndex();
+
+    // recent events in the order notified, for the incremental readers
+    private final ServiceNetworkChangeLog changeLog =
+            new ServiceNetworkChangeLog(MAX_CHANGES, MAX_CHANGE_WAITERS);
+
+    // updates waiting for the following ones of the same network or port id,
+    // in the order received
+    private final Map<Object, PendingUpdate<?>> pendingUpdates = Maps.newLinkedHashMap();
+
     @Activate
     protected void activate() {
         ApplicationId appId = coreService.registerApplication(CORDVTN_APP_ID);
+        compConfigService.registerProperties(getClass());
         serviceNetworkStore = storageService.<NetworkId, ServiceNetwork>consistentMapBuilder()
                 .withSerializer(Serializer.using(SERIALIZER_SERVICE))
-                .withName("cordvtn-servicenetstore")
+                .withName(SERVICE_NETWORK_STORE)
                 .withApplicationId(appId)
                 .build();
         serviceNetworkStore.addListener(serviceNetworkListener);
+        serviceNetworks.reset(serviceNetworkStore.entrySet().stream()
+                .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue)));
 
         servicePortStore = storageService.<PortId, ServicePort>consistentMapBuilder()
                 .withSerializer(Serializer.using(SERIALIZER_SERVICE))
-                .withName("cordvtn-serviceportstore")
+                .withName(SERVICE_PORT_STORE)
                 .withApplicationId(appId)
                 .build();
         servicePortStore.addListener(servicePortListener);
+        synchronized (servicePortIndex) {
+            servicePorts.reset(servicePortStore.entrySet().stream()
+                    .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue)));
+            servicePorts.values().forEach(servicePortIndex::put);
+        }
 
         log.info("Started");
     }
 
     @Deactivate
     protected void deactivate() {
+        compConfigService.unregisterProperties(getClass(), false);
         serviceNetworkStore.removeListener(serviceNetworkListener);
         servicePortStore.removeListener(servicePortListener);
+        serviceNetworks.reset(ImmutableMap.of());
+        synchronized (servicePortIndex) {
+            servicePorts.reset(ImmutableMap.of());
+            servicePortIndex.clear();
+        }
+        synchronized (pendingUpdates) {
+            flushUpdates(null);
+        }
+        coalesceExecutor.shutdown();
+        eventExecutor.shutdown();
 
         log.info("Stopped");
     }
 
+    @Modified
+    protected void modified(ComponentContext context) {
+        Dictionary<?, ?> properties = context.getProperties();
+        String updatedWindow = Tools.get(properties, EVENT_COALESCE_WINDOW);
+        if (!Strings.isNullOrEmpty(updatedWindow)) {
+            eventCoalesceWindow = Integer.parseInt(updatedWindow.trim());
+        }
+        log.info("Modified");
+    }
+
     @Override
     public void clear() {
-        synchronized (this) {
-            serviceNetworkStore.clear();
-            servicePortStore.clear();
+        serviceNetworkStore.clear();
+        servicePortStore.clear();
+        serviceNetworks.reset(ImmutableMap.of());
+        synchronized (servicePortIndex) {
+            servicePorts.reset(ImmutableMap.of());
+            servicePortIndex.clear();
         }
     }
 
     @Override
     public void createServiceNetwork(ServiceNetwork snet) {
-        serviceNetworkStore.compute(snet.id(), (id, existing) -> {
+        Versioned<ServiceNetwork> created = serviceNetworkStore.compute(snet.id(), (id, existing) -> {
             final String error = snet.name() + ERR_DUPLICATE;
             checkArgument(existing == null || existing.equals(snet), error);
             return snet;
         });
+        serviceNetworks.put(snet.id(), created);
     }
 
     @Override
     public void updateServiceNetwork(ServiceNetwork snet) {
-        serviceNetworkStore.compute(snet.id(), (id, existing) -> {
+        Versioned<ServiceNetwork> updated = serviceNetworkStore.compute(snet.id(), (id, existing) -> {
             final String error = snet.name() + ERR_NOT_FOUND;
             checkArgument(existing != null, error);
             return snet;
         });
+        serviceNetworks.put(snet.id(), updated);
     }
 
     @Override
     public ServiceNetwork removeServiceNetwork(NetworkId netId) {
-        synchronized (this) {
-            Versioned<ServiceNetwork> snet = serviceNetworkStore.remove(netId);
-            return snet == null ? null : snet.value();
+        Versioned<ServiceNetwork> snet = serviceNetworkStore.remove(netId);
+        if (snet == null) {
+            return null;
         }
+        serviceNetworks.remove(netId, snet);
+        return snet.value();
     }
 
     @Override
     public ServiceNetwork serviceNetwork(NetworkId netId) {
-        Versioned<ServiceNetwork> versioned = serviceNetworkStore.get(netId);
-        return versioned == null ? null : versioned.value();
+        return serviceNetworks.get(netId);
     }
 
     @Override
     public Set<ServiceNetwork> serviceNetworks() {
-        Set<ServiceNetwork> snets = serviceNetworkStore.values().stream()
-                .map(Versioned::value)
-                .collect(Collectors.toSet());
-        return ImmutableSet.copyOf(snets);
+        return serviceNetworks.values();
     }
 
     @Override
     public void createServicePort(ServicePort sport) {
-        servicePortStore.compute(sport.id(), (id, existing) -> {
+        Versioned<ServicePort> created = servicePortStore.compute(sport.id(), (id, existing) -> {
             final String error = sport.id().id() + ERR_DUPLICATE;
             checkArgument(existing == null || existing.equals(sport), error);
             return sport;
         });
+        putServicePort(sport.id(), created);
     }
 
     @Override
     public void updateServicePort(ServicePort sport) {
-        servicePortStore.compute(sport.id(), (id, existing) -> {
+        Versioned<ServicePort> updated = servicePortStore.compute(sport.id(), (id, existing) -> {
             final String error = sport.id().id() + ERR_NOT_FOUND;
             checkArgument(existing != null, error);
             return sport;
         });
+        putServicePort(sport.id(), updated);
     }
 
     @Override
     public ServicePort removeServicePort(PortId portId) {
         Versioned<ServicePort> sport = servicePortStore.remove(portId);
+        if (sport == null) {
+            return null;
+        }
+        removeServicePort(portId, sport);
         return sport.value();
     }
 
     @Override
     public ServicePort servicePort(PortId portId) {
-        Versioned<ServicePort> versioned = servicePortStore.get(portId);
-        return versioned == null ? null : versioned.value();
+        return servicePorts.get(portId);
     }
 
     @Override
     public Set<ServicePort> servicePorts() {
-        Set<ServicePort> sports = servicePortStore.values().stream()
-                .map(Versioned::value)
-                .collect(Collectors.toSet());
-        return ImmutableSet.copyOf(sports);
+        return servicePorts.values();
+    }
+
+    @Override
+    public Set<ServicePort> servicePorts(NetworkId netId) {
+        return servicePortIndex.byNetwork(netId);
+    }
+
+    @Override
+    public ServicePort servicePortByName(String portName) {
+        return servicePortIndex.byName(portName);
+    }
+
+    @Override
+    public ServicePort servicePortByMac(MacAddress mac) {
+        return servicePortIndex.byMac(mac);
+    }
+
+    @Override
+    public Set<ServicePort> servicePortsByIp(IpAddress ip) {
+        return servicePortIndex.byIp(ip);
+    }
+
+    @Override
+    public void applyBatch(ServiceNetworkBatch batch) {
+        // versions of the removed values for the local mirrors
+        Map<NetworkId, Versioned<ServiceNetwork>> removedNets = Maps.newHashMap();
+        batch.removedNetworks().forEach(netId -> {
+            Versioned<ServiceNetwork> snet = serviceNetworkStore.get(netId);
+            if (snet != null) {
+                removedNets.put(netId, snet);
+            }
+        });
+        Map<PortId, Versioned<ServicePort>> removedPorts = Maps.newHashMap();
+        batch.removedPorts().forEach(portId -> {
+            Versioned<ServicePort> sport = servicePortStore.get(portId);
+            if (sport != null) {
+                removedPorts.put(portId, sport);
+            }
+        });
+
+        TransactionContext tx = storageService.transactionContextBuilder().build();
+        CommitStatus status;
+        tx.begin();
+        try {
+            TransactionalMap<NetworkId, ServiceNetwork> snets = tx.getTransactionalMap(
+                    SERVICE_NETWORK_STORE, Serializer.using(SERIALIZER_SERVICE));
+            TransactionalMap<PortId, ServicePort> sports = tx.getTransactionalMap(
+                    SERVICE_PORT_STORE, Serializer.using(SERIALIZER_SERVICE));
+
+            // remove the ports before the networks they belong to
+            batch.removedPorts().forEach(sports::remove);
+            batch.networks().forEach(snet -> snets.put(snet.id(), snet));
+            batch.ports().forEach(sport -> sports.put(sport.id(), sport));
+            batch.removedNetworks().forEach(snets::remove);
+            status = tx.commit().join();
+        } catch (Exception e) {
+            tx.abort();
+            final String error = String.format(ERR_TRANSACTION, batch, e.getMessage());
+            throw new IllegalStateException(error);
+        }
+        if (status != CommitStatus.SUCCESS) {
+            final String error = String.format(ERR_TRANSACTION, batch, status);
+            throw new IllegalStateException(error);
+        }
+
+        // applies the committed values as the single object writes do
+        removedPorts.forEach(this::removeServicePort);
+        batch.networks().forEach(snet -> {
+            Versioned<ServiceNetwork> committed = serviceNetworkStore.get(snet.id());
+            if (committed != null) {
+                serviceNetworks.put(snet.id(), committed);
+            }
+        });
+        batch.ports().forEach(sport -> {
+            Versioned<ServicePort> committed = servicePortStore.get(sport.id());
+            if (committed != null) {
+                putServicePort(sport.id(), committed);
+            }
+        });
+        removedNets.forEach(serviceNetworks::remove);
+    }
+
+    /**
+     * Applies the given service port to the local mirror and the indexes
+     * together, so that the reads right after a write see the same port.
+     *
+     * @param portId    port id
+     * @param versioned versioned service port
+     */
+    private void putServicePort(PortId portId, Versioned<ServicePort> versioned) {
+        synchronized (servicePortIndex) {
+            if (servicePorts.put(portId, versioned)) {
+                servicePortIndex.put(versioned.value());
+            }
+        }
+    }
+
+    /**
+     * Removes the given service port from the local mirror and the indexes
+     * together.
+     *
+     * @param portId    port id
+     * @param versioned removed versioned service port
+     */
+    private void removeServicePort(PortId portId, Versioned<ServicePort> versioned) {
+        synchronized (servicePortIndex) {
+            if (servicePorts.remove(portId, versioned)) {
+                servicePortIndex.remove(portId);
+            }
+        }
+    }
+
+    @Override
+    public ServiceNetworkChanges changes(long since, long timeoutMillis)
+            throws InterruptedException {
+        return changeLog.changes(since, timeoutMillis);
+    }
+
+    @Override
+    protected void notifyDelegate(ServiceNetworkEvent event) {
+        changeLog.append(event);
+        super.notifyDelegate(event);
+    }
+
+    /**
+     * Dispatches the notification of a creation or removal after the pending
+     * updates of the same network, so that they are never reordered.
+     *
+     * @param netId network id
+     * @param task  notification task
+     */
+    private void dispatch(NetworkId netId, Runnable task) {
+        synchronized (pendingUpdates) {
+            flushUpdates(netId);
+            eventExecutor.execute(netId, task);
+        }
+    }
+
+    /**
+     * Dispatches the notification of an update, or merges it with the pending
+     * update of the same key if any. The merged update is notified once with
+     * the old value of the first and the new value of the last, after the
+     * coalesce window from the first one. The pending update is notified
+     * right away instead if the network id changes, a port moving to the
+     * other network, so that each update is notified in the order of the
+     * network it was made on.
+     *
+     * @param key      network or port id
+     * @param netId    network id
+     * @param oldValue old value
+     * @param newValue new value
+     * @param notifier notification task of the old and new values
+     * @param <V>      value type
+     */
+    @SuppressWarnings("unchecked")
+    private <V> void dispatchUpdate(Object key, NetworkId netId, V oldValue, V newValue,
+                                    BiFunction<V, V, Runnable> notifier) {
+        synchronized (pendingUpdates) {
+            PendingUpdate<V> pending = (PendingUpdate<V>) pendingUpdates.get(key);
+            if (pending != null && pending.netId.equals(netId)) {
+                pending.newValue = newValue;
+                return;
+            }
+            if (pending != null) {
+                pendingUpdates.remove(key);
+                pending.dispatch();
+            }
+            if (eventCoalesceWindow <= 0) {
+                eventExecutor.execute(netId, notifier.apply(oldValue, newValue));
+                return;
+            }
+            PendingUpdate<V> update = new PendingUpdate<>(netId, oldValue, newValue, notifier);
+            pendingUpdates.put(key, update);
+            coalesceExecutor.schedule(() -> {
+                synchronized (pendingUpdates) {
+                    if (pendingUpdates.remove(key, update)) {
+                        update.dispatch();
+                    }
+                }
+            }, eventCoalesceWindow, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Dispatches the pending updates of the given network in the order
+     * received. Should be called with the pending updates lock held.
+     *
+     * @param netId network id; null for all networks
+     */
+    private void flushUpdates(NetworkId netId) {
+        Iterator<PendingUpdate<?>> iterator = pendingUpdates.values().iterator();
+        while (iterator.hasNext()) {
+            PendingUpdate<?> pending = iterator.next();
+            if (netId == null || netId.equals(pending.netId)) {
+                iterator.remove();
+                pending.dispatch();
+            }
+        }
+    }
+
+    private final class PendingUpdate<V> {
+        private final NetworkId netId;
+        private final V oldValue;
+        private final BiFunction<V, V, Runnable> notifier;
+        private V newValue;
+
+        private PendingUpdate(NetworkId netId, V oldValue, V newValue,
+                              BiFunction<V, V, Runnable> notifier) {
+            this.netId = netId;
+            this.oldValue = oldValue;
+            this.newValue = newValue;
+            this.notifier = notifier;
+        }
+
+        private void dispatch() {
+            if (oldValue.equals(newValue)) {
+                // changed back to the old value
+                return;
+            }
+            eventExecutor.execute(netId, notifier.apply(oldValue, newValue));
+        }
     }
 
     private class ServiceNetworkMapListener implements MapEventListener<NetworkId, ServiceNetwork> {
@@ -226,18 +535,22 @@ public class DistributedServiceNetworkStore extends AbstractStore<ServiceNetwork
             switch (event.type()) {
                 case UPDATE:
                     log.debug("Service network updated {}", event.newValue());
-                    eventExecutor.execute(() -> {
-                        notifyDelegate(new ServiceNetworkEvent(
-                                SERVICE_NETWORK_UPDATED,
-                                event.newValue().value()));
-                        notifyProviderUpdate(
-                                event.oldValue().value(),
-                                event.newValue().value());
-                    });
+                    serviceNetworks.put(event.key(), event.newValue());
+                    dispatchUpdate(event.key(), event.key(),
+                            event.oldValue().value(),
+                            event.newValue().value(),
+                            (oldValue, newValue) -> () -> {
+                                notifyDelegate(new ServiceNetworkEvent(
+                                        SERVICE_NETWORK_UPDATED,
+                                        newValue,
+                                        oldValue));
+                                notifyProviderUpdate(oldValue, newValue);
+                            });
                     break;
                 case INSERT:
                     log.debug("Service network created {}", event.newValue());
-                    eventExecutor.execute(() -> {
+                    serviceNetworks.put(event.key(), event.newValue());
+                    dispatch(event.key(), () -> {
                         notifyDelegate(new ServiceNetworkEvent(
                                 SERVICE_NETWORK_CREATED,
                                 event.newValue().value()));
@@ -246,7 +559,8 @@ public class DistributedServiceNetworkStore extends AbstractStore<ServiceNetwork
                     break;
                 case REMOVE:
                     log.debug("Service network removed {}", event.oldValue());
-                    eventExecutor.execute(() -> {
+                    serviceNetworks.removed(event.key(), event.oldValue());
+                    dispatch(event.key(), () -> {
                         notifyProviderUpdate(event.oldValue().value(), null);
                         notifyDelegate(new ServiceNetworkEvent(
                                 SERVICE_NETWORK_REMOVED,
@@ -299,16 +613,22 @@ public class DistributedServiceNetworkStore extends AbstractStore<ServiceNetwork
             switch (event.type()) {
                 case UPDATE:
                     log.debug("Service port updated {}", event.newValue());
-                    eventExecutor.execute(() -> {
-                        notifyDelegate(new ServiceNetworkEvent(
-                                SERVICE_PORT_UPDATED,
-                                serviceNetwork(event.newValue().value().networkId()),
-                                event.newValue().value()));
-                    });
+                    putServicePort(event.key(), event.newValue());
+                    dispatchUpdate(event.key(), event.newValue().value().networkId(),
+                            event.oldValue().value(),
+                            event.newValue().value(),
+                            (oldValue, newValue) -> () -> {
+                                notifyDelegate(new ServiceNetworkEvent(
+                                        SERVICE_PORT_UPDATED,
+                                        serviceNetwork(newValue.networkId()),
+                                        newValue,
+                                        oldValue));
+                            });
                     break;
                 case INSERT:
                     log.debug("Service port created {}", event.newValue());
-                    eventExecutor.execute(() -> {
+                    putServicePort(event.key(), event.newValue());
+                    dispatch(event.newValue().value().networkId(), () -> {
                         notifyDelegate(new ServiceNetworkEvent(
                                 SERVICE_PORT_CREATED,
                                 serviceNetwork(event.newValue().value().networkId()),
@@ -317,7 +637,12 @@ public class DistributedServiceNetworkStore extends AbstractStore<ServiceNetwork
                     break;
                 case REMOVE:
                     log.debug("Service port removed {}", event.oldValue());
-                    eventExecutor.execute(() -> {
+                    synchronized (servicePortIndex) {
+                        if (servicePorts.removed(event.key(), event.oldValue())) {
+                            servicePortIndex.remove(event.key());
+                        }
+                    }
+                    dispatch(event.oldValue().value().networkId(), () -> {
                         notifyDelegate(new ServiceNetworkEvent(
                                 SERVICE_PORT_REMOVED,
                                 serviceNetwork(event.oldValue().value().networkId()),
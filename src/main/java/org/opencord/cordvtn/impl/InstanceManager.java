@@ -15,6 +15,10 @@
  */
 package org.opencord.cordvtn.impl;
 
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
+import com.google.common.collect.SetMultimap;
 import com.google.common.collect.Sets;
 import org.apache.felix.scr.annotations.Activate;
 import org.apache.felix.scr.annotations.Component;
@@ -22,7 +26,10 @@ import org.apache.felix.scr.annotations.Deactivate;
 import org.apache.felix.scr.annotations.Reference;
 import org.apache.felix.scr.annotations.ReferenceCardinality;
 import org.apache.felix.scr.annotations.Service;
+import org.onlab.packet.IpAddress;
+import org.onlab.packet.MacAddress;
 import org.onlab.packet.VlanId;
+import org.onlab.util.Tools;
 import org.onosproject.cluster.ClusterService;
 import org.onosproject.cluster.LeadershipService;
 import org.onosproject.cluster.NodeId;
@@ -30,6 +37,7 @@ import org.onosproject.core.ApplicationId;
 import org.onosproject.core.CoreService;
 import org.onosproject.net.ConnectPoint;
 import org.onosproject.net.DefaultAnnotations;
+import org.onosproject.net.DeviceId;
 import org.onosproject.net.Host;
 import org.onosproject.net.HostId;
 import org.onosproject.net.HostLocation;
@@ -37,6 +45,8 @@ import org.onosproject.net.Port;
 import org.onosproject.net.device.DeviceService;
 import org.onosproject.net.host.DefaultHostDescription;
 import org.onosproject.net.host.HostDescription;
+import org.onosproject.net.host.HostEvent;
+import org.onosproject.net.host.HostListener;
 import org.onosproject.net.host.HostProvider;
 import org.onosproject.net.host.HostProviderRegistry;
 import org.onosproject.net.host.HostProviderService;
@@ -48,23 +58,29 @@ import org.opencord.cordconfig.access.AccessAgentData;
 import org.opencord.cordvtn.api.core.Instance;
 import org.opencord.cordvtn.api.core.InstanceService;
 import org.opencord.cordvtn.api.core.ServiceNetworkEvent;
+import org.opencord.cordvtn.api.core.ServiceNetworkEvent.Change;
 import org.opencord.cordvtn.api.core.ServiceNetworkListener;
 import org.opencord.cordvtn.api.core.ServiceNetworkService;
+import org.opencord.cordvtn.api.net.AddressPair;
+import org.opencord.cordvtn.api.net.NetworkId;
 import org.opencord.cordvtn.api.net.PortId;
 import org.opencord.cordvtn.api.net.ServiceNetwork;
 import org.opencord.cordvtn.api.net.ServicePort;
 import org.slf4j.Logger;
 
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
-import java.util.concurrent.ExecutorService;
+import java.util.Set;
+import java.util.stream.Collectors;
 
-import static java.util.concurrent.Executors.newSingleThreadExecutor;
-import static org.onlab.util.Tools.groupedThreads;
 import static org.onosproject.net.AnnotationKeys.PORT_NAME;
 import static org.opencord.cordvtn.api.Constants.CORDVTN_APP_ID;
 import static org.opencord.cordvtn.api.Constants.NOT_APPLICABLE;
 import static org.opencord.cordvtn.api.net.ServiceNetwork.NetworkType.ACCESS_AGENT;
+import static org.opencord.cordvtn.impl.PartitionedExecutor.newPartitionedExecutor;
 import static org.slf4j.LoggerFactory.getLogger;
 
 /**
@@ -79,6 +95,11 @@ public class InstanceManager extends AbstractProvider implements HostProvider,
     private static final String ERR_SERVICE_NETWORK = "Failed to get service network for %s";
     private static final String ERR_SERVICE_PORT = "Failed to get service port for %s";
 
+    // port changes affecting the instance host, the instance handlers
+    // reprogram the instances for the other changes
+    private static final Set<Change> HOST_CHANGES = ImmutableSet.of(
+            Change.NAME, Change.NETWORK_ID, Change.MAC, Change.IP);
+
     @Reference(cardinality = ReferenceCardinality.MANDATORY_UNARY)
     protected CoreService coreService;
 
@@ -104,9 +125,20 @@ public class InstanceManager extends AbstractProvider implements HostProvider,
     @Reference(cardinality = ReferenceCardinality.MANDATORY_UNARY)
     protected ServiceNetworkService snetService;
 
-    private final ExecutorService eventExecutor =
-            newSingleThreadExecutor(groupedThreads(this.getClass().getSimpleName(), "event-handler"));
+    private final PartitionedExecutor eventExecutor = newPartitionedExecutor(
+            this.getClass().getSimpleName(), "event-handler", log);
     private final ServiceNetworkListener snetListener = new InternalServiceNetworkListener();
+    private final HostListener hostListener = new InternalHostListener();
+
+    // parsed instances and their indexes, guarded by the instance map
+    private final Map<HostId, Instance> instances = Maps.newHashMap();
+    private final SetMultimap<NetworkId, HostId> netInstances = HashMultimap.create();
+    private final SetMultimap<DeviceId, HostId> deviceInstances = HashMultimap.create();
+    private final SetMultimap<ConnectPoint, HostId> cpInstances = HashMultimap.create();
+    private final SetMultimap<Integer, HostId> ipInstances = HashMultimap.create();
+
+    // address pairs of the instances, updated regardless of the leadership
+    private final AddressPairIndex addressPairs = new AddressPairIndex();
 
     private ApplicationId appId;
     private NodeId localNodeId;
@@ -126,7 +158,10 @@ public class InstanceManager extends AbstractProvider implements HostProvider,
         leadershipService.runForLeadership(appId.name());
 
         hostProvider = hostProviderRegistry.register(this);
+        hostService.addListener(hostListener);
         snetService.addListener(snetListener);
+        Tools.stream(hostService.getHosts()).forEach(this::indexInstance);
+        eventExecutor.execute(this::removeAdditionalInstances);
 
         log.info("Started");
     }
@@ -134,7 +169,9 @@ public class InstanceManager extends AbstractProvider implements HostProvider,
     @Deactivate
     protected void deactivate() {
         snetService.removeListener(snetListener);
+        hostService.removeListener(hostListener);
         hostProviderRegistry.unregister(this);
+        addressPairs.clear();
         eventExecutor.shutdown();
         leadershipService.withdraw(appId.name());
 
@@ -149,6 +186,71 @@ public class InstanceManager extends AbstractProvider implements HostProvider,
          */
     }
 
+    @Override
+    public Instance instance(HostId hostId) {
+        synchronized (instances) {
+            return instances.get(hostId);
+        }
+    }
+
+    @Override
+    public Instance instance(ConnectPoint connectPoint) {
+        synchronized (instances) {
+            ConnectPoint cp = new ConnectPoint(connectPoint.elementId(), connectPoint.port());
+            return cpInstances.get(cp).stream()
+                    .map(instances::get)
+                    .findFirst()
+                    .orElse(null);
+        }
+    }
+
+    @Override
+    public Set<Instance> instances() {
+        synchronized (instances) {
+            return ImmutableSet.copyOf(instances.values());
+        }
+    }
+
+    @Override
+    public Set<Instance> instances(NetworkId netId) {
+        synchronized (instances) {
+            return getInstances(netInstances.get(netId));
+        }
+    }
+
+    @Override
+    public Set<Instance> instances(DeviceId deviceId) {
+        synchronized (instances) {
+            return getInstances(deviceInstances.get(deviceId));
+        }
+    }
+
+    @Override
+    public Set<Instance> instances(IpAddress ipAddress) {
+        if (ipAddress == null || !ipAddress.isIp4()) {
+            return ImmutableSet.of();
+        }
+        synchronized (instances) {
+            return getInstances(ipInstances.get(ipAddress.getIp4Address().toInt()));
+        }
+    }
+
+    @Override
+    public Instance addressPairOwner(IpAddress ipAddress) {
+        HostId owner = addressPairs.owner(ipAddress);
+        return owner == null ? null : instance(owner);
+    }
+
+    @Override
+    public AddressPair addressPair(IpAddress ipAddress) {
+        return addressPairs.byIp(ipAddress);
+    }
+
+    @Override
+    public Set<AddressPair> addressPairs(MacAddress mac) {
+        return addressPairs.byMac(mac);
+    }
+
     @Override
     public void addInstance(ConnectPoint connectPoint) {
         Port port = deviceService.getPort(connectPoint.deviceId(), connectPoint.port());
@@ -176,23 +278,25 @@ public class InstanceManager extends AbstractProvider implements HostProvider,
             throw new IllegalStateException(error);
         }
 
-        // Added CREATE_TIME intentionally to trigger HOST_UPDATED event for the
-        // existing instances. Fix this after adding a method to update/reinstall
-        // flow rules for the existing service instances.
+        // keeps the location and the creation time of the existing instance
+        // so that detecting it again updates the host only if it has changed
+        HostId hostId = HostId.hostId(sport.mac());
+        Host existing = existingHost(hostId, connectPoint);
+        HostLocation location = existing != null ? existing.location() :
+                new HostLocation(connectPoint, System.currentTimeMillis());
         DefaultAnnotations.Builder annotations = DefaultAnnotations.builder()
                 .set(Instance.NETWORK_TYPE, snet.type().name())
                 .set(Instance.NETWORK_ID, snet.id().id())
                 .set(Instance.PORT_ID, sport.id().id())
-                .set(Instance.CREATE_TIME, String.valueOf(System.currentTimeMillis()));
+                .set(Instance.CREATE_TIME, createTime(existing, location));
 
         HostDescription hostDesc = new DefaultHostDescription(
                 sport.mac(),
                 VlanId.NONE,
-                new HostLocation(connectPoint, System.currentTimeMillis()),
+                location,
                 Sets.newHashSet(sport.ip()),
                 annotations.build());
 
-        HostId hostId = HostId.hostId(sport.mac());
         hostProvider.hostDetected(hostId, hostDesc, false);
     }
 
@@ -213,12 +317,112 @@ public class InstanceManager extends AbstractProvider implements HostProvider,
         hostProvider.hostVanished(hostId);
     }
 
+    private Set<Instance> getInstances(Collection<HostId> hostIds) {
+        return hostIds.stream()
+                .map(instances::get)
+                .collect(Collectors.collectingAndThen(
+                        Collectors.toSet(), ImmutableSet::copyOf));
+    }
+
+    private void indexInstance(Host host) {
+        Instance instance = null;
+        // skips the address pair hosts registered by the previous versions
+        if (host.annotations().value(Instance.NETWORK_ID) != null &&
+                host.annotations().value(Instance.ORIGINAL_HOST_ID) == null) {
+            try {
+                instance = Instance.of(host);
+            } catch (IllegalArgumentException e) {
+                log.debug("Ignore host {} with invalid instance annotations", host.id());
+            }
+        }
+        synchronized (instances) {
+            unindexInstance(host);
+            if (instance == null) {
+                return;
+            }
+            instances.put(host.id(), instance);
+            netInstances.put(instance.netId(), host.id());
+            deviceInstances.put(instance.deviceId(), host.id());
+            cpInstances.put(connectPoint(host), host.id());
+            host.ipAddresses().stream()
+                    .filter(IpAddress::isIp4)
+                    .forEach(ip -> ipInstances.put(ip.getIp4Address().toInt(), host.id()));
+            ServicePort sport = snetService.servicePort(instance.portId());
+            if (sport != null) {
+                addressPairs.put(host.id(), sport.addressPairs());
+            }
+        }
+    }
+
+    private void unindexInstance(Host host) {
+        synchronized (instances) {
+            Instance existing = instances.remove(host.id());
+            if (existing == null) {
+                return;
+            }
+            addressPairs.remove(host.id());
+            Host old = existing.host();
+            netInstances.remove(existing.netId(), old.id());
+            deviceInstances.remove(existing.deviceId(), old.id());
+            cpInstances.remove(connectPoint(old), old.id());
+            old.ipAddresses().stream()
+                    .filter(IpAddress::isIp4)
+                    .forEach(ip -> ipInstances.remove(ip.getIp4Address().toInt(), old.id()));
+        }
+    }
+
+    private Host existingHost(HostId hostId, ConnectPoint connectPoint) {
+        Host host = hostService.getHost(hostId);
+        return host != null && connectPoint(host).equals(connectPoint) ? host : null;
+    }
+
+    private String createTime(Host existing, HostLocation location) {
+        String createTime = existing == null ? null :
+                existing.annotations().value(Instance.CREATE_TIME);
+        return createTime != null ? createTime : String.valueOf(location.time());
+    }
+
+    /**
+     * Updates the address pairs of the instance owning the given service port.
+     *
+     * @param sport   service port
+     * @param removed true if the service port has been removed
+     */
+    private void updateAddressPairs(ServicePort sport, boolean removed) {
+        HostId owner = HostId.hostId(sport.mac());
+        synchronized (instances) {
+            Instance instance = instances.get(owner);
+            if (instance == null || !instance.portId().equals(sport.id())) {
+                // not detected yet, indexed with the instance later
+                return;
+            }
+            if (removed) {
+                addressPairs.remove(owner);
+            } else {
+                addressPairs.put(owner, sport.addressPairs());
+            }
+        }
+    }
+
+    // TODO remove this after all controllers are upgraded
+    private void removeAdditionalInstances() {
+        NodeId leader = leadershipService.getLeader(appId.name());
+        if (!Objects.equals(localNodeId, leader)) {
+            return;
+        }
+        // hosts for the address pairs registered by the previous versions
+        Tools.stream(hostService.getHosts())
+                .filter(host -> host.annotations().value(Instance.ORIGINAL_HOST_ID) != null)
+                .forEach(host -> hostProvider.hostVanished(host.id()));
+    }
+
+    private ConnectPoint connectPoint(Host host) {
+        // index by plain connect point, host location carries the time as well
+        return new ConnectPoint(host.location().elementId(), host.location().port());
+    }
+
     private ServicePort getServicePortByPortName(String portName) {
-        Optional<ServicePort> sport = snetService.servicePorts()
-                .stream()
-                .filter(p -> Objects.equals(p.name(), portName))
-                .findFirst();
-        return sport.isPresent() ? sport.get() : null;
+        return portName == null ? null : snetService.servicePortByName(portName);
     }
 
     // TODO remove this when XOS provides access agent information
@@ -233,20 +437,23 @@ public class InstanceManager extends AbstractProvider implements HostProvider,
     // TODO remove this when XOS provides access agent information
     private void addAccessAgentInstance(ConnectPoint connectPoint) {
         AccessAgentData agent = cordConfig.getAccessAgent(connectPoint.deviceId()).get();
+        HostId hostId = HostId.hostId(agent.getAgentMac());
+        Host existing = existingHost(hostId, connectPoint);
+        HostLocation location = existing != null ? existing.location() :
+                new HostLocation(connectPoint, System.currentTimeMillis());
         DefaultAnnotations.Builder annotations = DefaultAnnotations.builder()
                 .set(Instance.NETWORK_TYPE, ACCESS_AGENT.name())
                 .set(Instance.NETWORK_ID, NOT_APPLICABLE)
                 .set(Instance.PORT_ID, NOT_APPLICABLE)
-                .set(Instance.CREATE_TIME, String.valueOf(System.currentTimeMillis()));
+                .set(Instance.CREATE_TIME, createTime(existing, location));
 
         HostDescription hostDesc = new DefaultHostDescription(
                 agent.getAgentMac(),
                 VlanId.NONE,
-                new HostLocation(connectPoint, System.currentTimeMillis()),
+                location,
                 Sets.newHashSet(),
                 annotations.build());
 
-        HostId hostId = HostId.hostId(agent.getAgentMac());
         hostProvider.hostDetected(hostId, hostDesc, false);
     }
 
@@ -268,7 +475,21 @@ public class InstanceManager extends AbstractProvider implements HostProvider,
 
         @Override
         public void event(ServiceNetworkEvent event) {
-            eventExecutor.execute(() -> {
+            switch (event.type()) {
+                case SERVICE_PORT_UPDATED:
+                    if (event.changes().contains(Change.ADDRESS_PAIRS)) {
+                        updateAddressPairs(event.servicePort(), false);
+                    }
+                    break;
+                case SERVICE_PORT_REMOVED:
+                    updateAddressPairs(event.servicePort(), true);
+                    break;
+                default:
+                    break;
+            }
+            Object key = event.servicePort() != null ?
+                    event.servicePort().networkId() : event.subject().id();
+            eventExecutor.execute(key, () -> {
                 NodeId leader = leadershipService.getLeader(appId.name());
                 if (!Objects.equals(localNodeId, leader)) {
                     // do not allow to proceed without leadership
@@ -278,16 +499,25 @@ public class InstanceManager extends AbstractProvider implements HostProvider,
             });
         }
 
+        private void updateInstance(ServicePort sport) {
+            log.debug("Processing service port {}", sport);
+            Instance instance = getInstance(sport.id());
+            if (instance != null) {
+                addInstance(instance.host().location());
+            }
+        }
+
         private void handle(ServiceNetworkEvent event) {
             switch (event.type()) {
-                case SERVICE_PORT_CREATED:
                 case SERVICE_PORT_UPDATED:
-                    log.debug("Processing service port {}", event.servicePort());
-                    PortId portId = event.servicePort().id();
-                    Instance instance = getInstance(portId);
-                    if (instance != null) {
-                        addInstance(instance.host().location());
+                    if (Collections.disjoint(HOST_CHANGES, event.changes())) {
+                        log.debug("Skip service port update {}", event.changes());
+                        break;
                     }
+                    updateInstance(event.servicePort());
+                    break;
+                case SERVICE_PORT_CREATED:
+                    updateInstance(event.servicePort());
                     break;
                 case SERVICE_PORT_REMOVED:
                 case SERVICE_NETWORK_CREATED:
@@ -299,4 +529,23 @@ public class InstanceManager extends AbstractProvider implements HostProvider,
             }
         }
     }
+
+    private class InternalHostListener implements HostListener {
+
+        @Override
+        public void event(HostEvent event) {
+            switch (event.type()) {
+                case HOST_ADDED:
+                case HOST_UPDATED:
+                case HOST_MOVED:
+                    indexInstance(event.subject());
+                    break;
+                case HOST_REMOVED:
+                    unindexInstance(event.subject());
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
 }
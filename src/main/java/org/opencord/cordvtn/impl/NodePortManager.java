@@ -0,0 +1,151 @@
+/*
+ * Copyright 2017-present Open Networking Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opencord.cordvtn.impl;
+
+import com.google.common.base.Strings;
+import org.apache.felix.scr.annotations.Activate;
+import org.apache.felix.scr.annotations.Component;
+import org.apache.felix.scr.annotations.Deactivate;
+import org.apache.felix.scr.annotations.Reference;
+import org.apache.felix.scr.annotations.ReferenceCardinality;
+import org.apache.felix.scr.annotations.Service;
+import org.onosproject.net.DeviceId;
+import org.onosproject.net.Port;
+import org.onosproject.net.PortNumber;
+import org.onosproject.net.device.DeviceEvent;
+import org.onosproject.net.device.DeviceListener;
+import org.onosproject.net.device.DeviceService;
+import org.opencord.cordvtn.api.node.NodePortService;
+import org.slf4j.Logger;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static org.onosproject.net.AnnotationKeys.PORT_NAME;
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Keeps an index of the device ports by interface name, updated by the
+ * device port events.
+ */
+@Component(immediate = true)
+@Service
+public class NodePortManager implements NodePortService {
+
+    protected final Logger log = getLogger(getClass());
+
+    private static final String ERR_NULL_DEVICE_ID = "Device ID cannot be null";
+
+    @Reference(cardinality = ReferenceCardinality.MANDATORY_UNARY)
+    protected DeviceService deviceService;
+
+    private final DeviceListener deviceListener = new InternalDeviceListener();
+    private final Map<DeviceId, Map<String, Port>> portIndex = new ConcurrentHashMap<>();
+
+    @Activate
+    protected void activate() {
+        deviceService.addListener(deviceListener);
+        log.info("Started");
+    }
+
+    @Deactivate
+    protected void deactivate() {
+        deviceService.removeListener(deviceListener);
+        portIndex.clear();
+        log.info("Stopped");
+    }
+
+    @Override
+    public Port port(DeviceId deviceId, String portName) {
+        checkNotNull(deviceId, ERR_NULL_DEVICE_ID);
+        if (Strings.isNullOrEmpty(portName)) {
+            return null;
+        }
+        Map<String, Port> ports = portIndex.computeIfAbsent(deviceId, this::readPorts);
+        Port port = ports.get(portName);
+        if (port == null) {
+            // the port event might not have been processed yet
+            port = deviceService.getPorts(deviceId).stream()
+                    .filter(p -> portName.equals(p.annotations().value(PORT_NAME)))
+                    .findAny().orElse(null);
+            if (port != null) {
+                ports.put(portName, port);
+            }
+        }
+        return port;
+    }
+
+    @Override
+    public PortNumber portNumber(DeviceId deviceId, String portName) {
+        Port port = port(deviceId, portName);
+        return port != null && port.isEnabled() ? port.number() : null;
+    }
+
+    private Map<String, Port> readPorts(DeviceId deviceId) {
+        Map<String, Port> ports = new ConcurrentHashMap<>();
+        deviceService.getPorts(deviceId).stream()
+                .filter(p -> !Strings.isNullOrEmpty(p.annotations().value(PORT_NAME)))
+                .forEach(p -> ports.put(p.annotations().value(PORT_NAME), p));
+        return ports;
+    }
+
+    private void updatePort(Port port) {
+        String portName = port.annotations().value(PORT_NAME);
+        Map<String, Port> ports = portIndex.get((DeviceId) port.element().id());
+        if (ports == null || Strings.isNullOrEmpty(portName)) {
+            // not indexed yet, read all ports at the first lookup
+            return;
+        }
+        ports.put(portName, port);
+    }
+
+    private void removePort(Port port) {
+        String portName = port.annotations().value(PORT_NAME);
+        Map<String, Port> ports = portIndex.get((DeviceId) port.element().id());
+        if (ports == null || Strings.isNullOrEmpty(portName)) {
+            return;
+        }
+        Port existing = ports.get(portName);
+        if (existing != null && existing.number().equals(port.number())) {
+            ports.remove(portName, existing);
+        }
+    }
+
+    private class InternalDeviceListener implements DeviceListener {
+
+        @Override
+        public void event(DeviceEvent event) {
+            switch (event.type()) {
+                case PORT_ADDED:
+                case PORT_UPDATED:
+                    updatePort(event.port());
+                    break;
+                case PORT_REMOVED:
+                    removePort(event.port());
+                    break;
+                case DEVICE_ADDED:
+                case DEVICE_REMOVED:
+                case DEVICE_AVAILABILITY_CHANGED:
+                    // read the ports again at the next lookup
+                    portIndex.remove(event.subject().id());
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+}
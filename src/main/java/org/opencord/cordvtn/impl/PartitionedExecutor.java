@@ -0,0 +1,141 @@
+/*
+ * Copyright 2017-present Open Networking Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opencord.cordvtn.impl;
+
+import com.google.common.collect.ImmutableList;
+import org.slf4j.Logger;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static java.util.concurrent.Executors.newSingleThreadExecutor;
+import static org.onlab.util.Tools.groupedThreads;
+
+/**
+ * Executor running the tasks on a fixed number of ordered lanes. The tasks
+ * with the same key always run on the same lane in the submitted order, and
+ * the tasks with the different keys may run in parallel.
+ */
+public final class PartitionedExecutor {
+
+    /**
+     * Default number of the lanes.
+     */
+    public static final int DEFAULT_LANES =
+            Math.min(8, Math.max(2, Runtime.getRuntime().availableProcessors()));
+
+    private final List<ExecutorService> lanes;
+
+    private PartitionedExecutor(List<ExecutorService> lanes) {
+        checkArgument(!lanes.isEmpty());
+        this.lanes = lanes;
+    }
+
+    /**
+     * Returns a partitioned executor with the default number of lanes, each
+     * running on a single thread of the given group.
+     *
+     * @param groupName thread group name
+     * @param pattern   thread name pattern
+     * @param log       logger for the uncaught exceptions
+     * @return partitioned executor
+     */
+    public static PartitionedExecutor newPartitionedExecutor(String groupName,
+                                                             String pattern,
+                                                             Logger log) {
+        return newPartitionedExecutor(DEFAULT_LANES, groupName, pattern, log);
+    }
+
+    /**
+     * Returns a partitioned executor with the given number of lanes, each
+     * running on a single thread of the given group.
+     *
+     * @param numLanes  number of lanes
+     * @param groupName thread group name
+     * @param pattern   thread name pattern
+     * @param log       logger for the uncaught exceptions
+     * @return partitioned executor
+     */
+    public static PartitionedExecutor newPartitionedExecutor(int numLanes,
+                                                             String groupName,
+                                                             String pattern,
+                                                             Logger log) {
+        checkArgument(numLanes > 0);
+        ImmutableList.Builder<ExecutorService> lanes = ImmutableList.builder();
+        for (int i = 0; i < numLanes; i++) {
+            lanes.add(newSingleThreadExecutor(
+                    groupedThreads(groupName, pattern + "-" + i, log)));
+        }
+        return new PartitionedExecutor(lanes.build());
+    }
+
+    /**
+     * Returns a partitioned executor running on the given executors. Each
+     * executor should run the tasks in the submitted order.
+     *
+     * @param lanes executors of the lanes
+     * @return partitioned executor
+     */
+    public static PartitionedExecutor of(ExecutorService... lanes) {
+        return new PartitionedExecutor(ImmutableList.copyOf(lanes));
+    }
+
+    /**
+     * Executes the given task on the lane of the supplied key, after the
+     * tasks submitted earlier with the same key. The tasks with null key
+     * run on the same lane with the tasks submitted without key.
+     *
+     * @param key  partition key
+     * @param task task
+     */
+    public void execute(Object key, Runnable task) {
+        checkNotNull(task);
+        if (key == null) {
+            execute(task);
+            return;
+        }
+        lanes.get(Math.floorMod(key.hashCode(), lanes.size())).execute(task);
+    }
+
+    /**
+     * Executes the given task not related to a specific key. The tasks
+     * without key are ordered with each other, not with the keyed tasks.
+     *
+     * @param task task
+     */
+    public void execute(Runnable task) {
+        checkNotNull(task);
+        lanes.get(0).execute(task);
+    }
+
+    /**
+     * Returns the number of the lanes.
+     *
+     * @return number of lanes
+     */
+    public int lanes() {
+        return lanes.size();
+    }
+
+    /**
+     * Shuts down all lanes, the submitted tasks are still executed.
+     */
+    public void shutdown() {
+        lanes.forEach(ExecutorService::shutdown);
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright 2017-present Open Networking Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opencord.cordvtn.impl;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import org.opencord.cordvtn.api.net.NetworkId;
+import org.opencord.cordvtn.api.net.ServiceNetwork.DependencyType;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Maintains the dependencies among the service networks, indexed both from
+ * the subscriber and from the provider side.
+ */
+final class ServiceDependencyGraph {
+
+    // subscriber -> providers and provider -> subscribers
+    private final Map<NetworkId, Map<NetworkId, DependencyType>> providers = Maps.newHashMap();
+    private final Map<NetworkId, Map<NetworkId, DependencyType>> subscribers = Maps.newHashMap();
+
+    // transitive providers, cleared whenever any dependency is changed
+    private final Map<NetworkId, Set<NetworkId>> closures = Maps.newHashMap();
+
+    /**
+     * Replaces the providers of the given subscriber network.
+     *
+     * @param subscriber subscriber network identifier
+     * @param newProviders providers and the dependency types
+     */
+    synchronized void setProviders(NetworkId subscriber,
+                                   Map<NetworkId, DependencyType> newProviders) {
+        Map<NetworkId, DependencyType> oldProviders = providers.remove(subscriber);
+        if (oldProviders != null) {
+            oldProviders.keySet().forEach(provider -> removeSubscriber(provider, subscriber));
+        }
+        if (!newProviders.isEmpty()) {
+            providers.put(subscriber, Maps.newHashMap(newProviders));
+            newProviders.forEach((provider, type) -> subscribers
+                    .computeIfAbsent(provider, id -> Maps.newHashMap())
+                    .put(subscriber, type));
+        }
+        closures.clear();
+    }
+
+    /**
+     * Removes the given network and all dependencies from or to the network.
+     *
+     * @param netId network identifier
+     */
+    synchronized void remove(NetworkId netId) {
+        setProviders(netId, ImmutableMap.of());
+        Map<NetworkId, DependencyType> oldSubscribers = subscribers.remove(netId);
+        if (oldSubscribers != null) {
+            oldSubscribers.keySet().forEach(subscriber -> {
+                Map<NetworkId, DependencyType> edges = providers.get(subscriber);
+                edges.remove(netId);
+                if (edges.isEmpty()) {
+                    providers.remove(subscriber);
+                }
+            });
+        }
+        closures.clear();
+    }
+
+    /**
+     * Removes all dependencies.
+     */
+    synchronized void clear() {
+        providers.clear();
+        subscribers.clear();
+        closures.clear();
+    }
+
+    /**
+     * Returns the providers of the given network.
+     *
+     * @param subscriber subscriber network identifier
+     * @return providers and the dependency types; empty map if no provider
+     */
+    synchronized Map<NetworkId, DependencyType> providers(NetworkId subscriber) {
+        Map<NetworkId, DependencyType> edges = providers.get(subscriber);
+        return edges == null ? ImmutableMap.of() : ImmutableMap.copyOf(edges);
+    }
+
+    /**
+     * Returns the subscribers of the given network.
+     *
+     * @param provider provider network identifier
+     * @return subscribers and the dependency types; empty map if no subscriber
+     */
+    synchronized Map<NetworkId, DependencyType> subscribers(NetworkId provider) {
+        Map<NetworkId, DependencyType> edges = subscribers.get(provider);
+        return edges == null ? ImmutableMap.of() : ImmutableMap.copyOf(edges);
+    }
+
+    /**
+     * Returns the networks the given network depends on directly or indirectly.
+     *
+     * @param subscriber subscriber network identifier
+     * @return set of network identifiers; empty set if no provider
+     */
+    synchronized Set<NetworkId> transitiveProviders(NetworkId subscriber) {
+        Set<NetworkId> closure = closures.get(subscriber);
+        if (closure == null) {
+            closure = ImmutableSet.copyOf(reachable(subscriber));
+            closures.put(subscriber, closure);
+        }
+        return closure;
+    }
+
+    /**
+     * Returns if setting the given providers to the subscriber network creates
+     * a circular dependency.
+     *
+     * @param subscriber   subscriber network identifier
+     * @param newProviders provider network identifiers
+     * @return true if there would be a cycle
+     */
+    synchronized boolean isCyclic(NetworkId subscriber, Set<NetworkId> newProviders) {
+        return newProviders.stream().anyMatch(provider ->
+                Objects.equals(provider, subscriber) ||
+                        transitiveProviders(provider).contains(subscriber));
+    }
+
+    private Set<NetworkId> reachable(NetworkId source) {
+        Set<NetworkId> visited = Sets.newHashSet();
+        Deque<NetworkId> queue = new ArrayDeque<>(providers(source).keySet());
+        while (!queue.isEmpty()) {
+            NetworkId netId = queue.poll();
+            if (visited.add(netId)) {
+                queue.addAll(providers(netId).keySet());
+            }
+        }
+        return visited;
+    }
+
+    private void removeSubscriber(NetworkId provider, NetworkId subscriber) {
+        Map<NetworkId, DependencyType> edges = subscribers.get(provider);
+        if (edges == null) {
+            return;
+        }
+        edges.remove(subscriber);
+        if (edges.isEmpty()) {
+            subscribers.remove(provider);
+        }
+    }
+}
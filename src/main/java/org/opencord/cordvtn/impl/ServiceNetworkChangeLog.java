@@ -0,0 +1,142 @@
+/*
+ * Copyright 2017-present Open Networking Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opencord.cordvtn.impl;
+
+import org.opencord.cordvtn.api.core.ServiceNetworkChanges;
+import org.opencord.cordvtn.api.core.ServiceNetworkEvent;
+
+import java.security.SecureRandom;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Bounded log of the service network events with the versions increasing
+ * by one for each event. The upper half of a version is the epoch chosen
+ * randomly when the log is created, so that a version from the previous run
+ * or the other controller is never taken as a valid one.
+ */
+final class ServiceNetworkChangeLog {
+
+    private static final int COUNTER_BITS = 32;
+    private static final long COUNTER_MASK = (1L << COUNTER_BITS) - 1;
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private final int capacity;
+    private final int maxWaiters;
+    private final long epoch;
+    private final Deque<Change> changes = new ArrayDeque<>();
+    private long version;
+    private int waiters = 0;
+
+    /**
+     * Creates a change log keeping the given number of the latest events.
+     *
+     * @param capacity   max number of events
+     * @param maxWaiters max number of readers waiting for an event at once;
+     *                   the others return without waiting
+     */
+    ServiceNetworkChangeLog(int capacity, int maxWaiters) {
+        checkArgument(capacity > 0);
+        checkArgument(maxWaiters >= 0);
+        this.capacity = capacity;
+        this.maxWaiters = maxWaiters;
+        this.epoch = (long) (RANDOM.nextInt(Integer.MAX_VALUE - 1) + 1) << COUNTER_BITS;
+        this.version = epoch;
+    }
+
+    /**
+     * Appends the given event and wakes up the waiting readers.
+     *
+     * @param event service network event
+     */
+    synchronized void append(ServiceNetworkEvent event) {
+        changes.addLast(new Change(++version, event));
+        if (changes.size() > capacity) {
+            changes.removeFirst();
+        }
+        notifyAll();
+    }
+
+    /**
+     * Returns the version of the latest event.
+     *
+     * @return version
+     */
+    synchronized long version() {
+        return version;
+    }
+
+    /**
+     * Returns the events after the given version, waiting up to the timeout
+     * if there is no such event yet. It does not wait if too many readers
+     * are already waiting, so that the waiting readers do not hold up all
+     * the threads of the caller.
+     *
+     * @param since         version the caller has seen
+     * @param timeoutMillis max time to wait in milliseconds
+     * @return service network changes; resync is required if some events
+     * after the version are no longer in the log or the version is from
+     * another epoch or unknown
+     * @throws InterruptedException if interrupted while waiting
+     */
+    synchronized ServiceNetworkChanges changes(long since, long timeoutMillis)
+            throws InterruptedException {
+        if ((since & ~COUNTER_MASK) != epoch ||
+                since > version || since < oldestVersion() - 1) {
+            return ServiceNetworkChanges.resyncRequired(version);
+        }
+        if (since == version && timeoutMillis > 0 && waiters < maxWaiters) {
+            waiters++;
+            try {
+                long deadline = System.currentTimeMillis() + timeoutMillis;
+                long remaining = timeoutMillis;
+                while (since == version && remaining > 0) {
+                    wait(remaining);
+                    remaining = deadline - System.currentTimeMillis();
+                }
+            } finally {
+                waiters--;
+            }
+        }
+        if (since < oldestVersion() - 1) {
+            // fell behind while waiting
+            return ServiceNetworkChanges.resyncRequired(version);
+        }
+        List<ServiceNetworkEvent> events = changes.stream()
+                .filter(change -> change.version > since)
+                .map(change -> change.event)
+                .collect(Collectors.toList());
+        return ServiceNetworkChanges.of(version, events);
+    }
+
+    private long oldestVersion() {
+        return changes.isEmpty() ? version + 1 : changes.peekFirst().version;
+    }
+
+    private static final class Change {
+        private final long version;
+        private final ServiceNetworkEvent event;
+
+        private Change(long version, ServiceNetworkEvent event) {
+            this.version = version;
+            this.event = event;
+        }
+    }
+}
@@ -16,13 +16,22 @@
 package org.opencord.cordvtn.impl;
 
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.Striped;
 import org.apache.felix.scr.annotations.Activate;
 import org.apache.felix.scr.annotations.Component;
 import org.apache.felix.scr.annotations.Deactivate;
+import org.apache.felix.scr.annotations.Modified;
+import org.apache.felix.scr.annotations.Property;
 import org.apache.felix.scr.annotations.Reference;
 import org.apache.felix.scr.annotations.ReferenceCardinality;
 import org.apache.felix.scr.annotations.Service;
+import org.onlab.packet.IpAddress;
+import org.onlab.packet.MacAddress;
+import org.onlab.util.Tools;
+import org.onosproject.cfg.ComponentConfigService;
 import org.onosproject.core.ApplicationId;
 import org.onosproject.core.CoreService;
 import org.onosproject.event.ListenerRegistry;
@@ -35,6 +44,8 @@ import org.onosproject.net.host.HostService;
 import org.opencord.cordvtn.api.Constants;
 import org.opencord.cordvtn.api.CordVtnConfig;
 import org.opencord.cordvtn.api.core.ServiceNetworkAdminService;
+import org.opencord.cordvtn.api.core.ServiceNetworkBatch;
+import org.opencord.cordvtn.api.core.ServiceNetworkChanges;
 import org.opencord.cordvtn.api.core.ServiceNetworkEvent;
 import org.opencord.cordvtn.api.core.ServiceNetworkListener;
 import org.opencord.cordvtn.api.core.ServiceNetworkService;
@@ -45,13 +56,22 @@ import org.opencord.cordvtn.api.net.PortId;
 import org.opencord.cordvtn.api.net.ServiceNetwork;
 import org.opencord.cordvtn.api.net.ServiceNetwork.DependencyType;
 import org.opencord.cordvtn.api.net.ServicePort;
+import org.osgi.service.component.ComponentContext;
 import org.slf4j.Logger;
 
+import java.util.Collection;
+import java.util.Dictionary;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 import static org.slf4j.LoggerFactory.getLogger;
 
@@ -68,10 +88,13 @@ public class ServiceNetworkManager extends ListenerRegistry<ServiceNetworkEvent,
     private static final String MSG_SERVICE_NET  = "Service network %s %s";
     private static final String MSG_SERVICE_PORT = "Service port %s %s";
     private static final String MSG_PROVIDER_NET = "Provider network %s %s";
+    private static final String MSG_BATCH = "Service network batch %s %s";
     private static final String MSG_CREATED = "created";
     private static final String MSG_UPDATED = "updated";
     private static final String MSG_REMOVED = "removed";
+    private static final String MSG_APPLIED = "applied";
 
+    private static final String ERR_NULL_BATCH = "Service network batch cannot be null";
     private static final String ERR_NULL_SERVICE_NET  = "Service network cannot be null";
     private static final String ERR_NULL_SERVICE_NET_ID  = "Service network ID cannot be null";
     private static final String ERR_NULL_SERVICE_NET_TYPE  = "Service network type cannot be null";
@@ -79,9 +102,21 @@ public class ServiceNetworkManager extends ListenerRegistry<ServiceNetworkEvent,
     private static final String ERR_NULL_SERVICE_PORT_ID = "Service port ID cannot be null";
     private static final String ERR_NULL_SERVICE_PORT_NAME = "Service port name cannot be null";
     private static final String ERR_NULL_SERVICE_PORT_NET_ID = "Service port network ID cannot be null";
+    private static final String ERR_NULL_SERVICE_PORT_MAC = "Service port MAC cannot be null";
+    private static final String ERR_NULL_SERVICE_PORT_IP = "Service port IP cannot be null";
 
     private static final String ERR_NOT_FOUND = " does not exist";
     private static final String ERR_IN_USE = " still in use";
+    private static final String ERR_CYCLE = " has a circular dependency";
+    private static final String ERR_CONFLICT = " is both updated and removed";
+    private static final String ERR_NO_TYPE = " has no network type";
+    private static final String ERR_NO_NETWORK = " has no network ID";
+    private static final String ERR_TIMEOUT = "Timeout cannot be negative";
+
+    private static final int LOCK_STRIPES = 64;
+
+    private static final String REJECT_CYCLIC_DEPENDENCIES = "rejectCyclicDependencies";
+    private static final boolean DEFAULT_REJECT_CYCLIC_DEPENDENCIES = false;
 
     @Reference(cardinality = ReferenceCardinality.MANDATORY_UNARY)
     protected NetworkConfigRegistry configRegistry;
@@ -95,6 +130,14 @@ public class ServiceNetworkManager extends ListenerRegistry<ServiceNetworkEvent,
     @Reference(cardinality = ReferenceCardinality.MANDATORY_UNARY)
     protected ServiceNetworkStore snetStore;
 
+    @Reference(cardinality = ReferenceCardinality.MANDATORY_UNARY)
+    protected ComponentConfigService compConfigService;
+
+    @Property(name = REJECT_CYCLIC_DEPENDENCIES, boolValue = DEFAULT_REJECT_CYCLIC_DEPENDENCIES,
+            label = "Reject the network changes making a circular dependency; " +
+                    "otherwise the cycle is only logged")
+    private boolean rejectCyclicDependencies = DEFAULT_REJECT_CYCLIC_DEPENDENCIES;
+
     // TODO add cordvtn config service and move this
     private static final Class<CordVtnConfig> CONFIG_CLASS = CordVtnConfig.class;
     private final ConfigFactory configFactory =
@@ -107,25 +150,53 @@ public class ServiceNetworkManager extends ListenerRegistry<ServiceNetworkEvent,
             };
 
     private final ServiceNetworkStoreDelegate delegate = new InternalServiceNetworkStoreDelegate();
+    private final ServiceDependencyGraph dependencies = new ServiceDependencyGraph();
+
+    // lock ordering: networkLock, networkPortLocks, portLocks
+    // serializes the network changes, which check the dependencies across networks
+    private final Lock networkLock = new ReentrantLock();
+    // read locked by the port changes and write locked by the network removal,
+    // so that a network is never removed while its ports are being created
+    private final Striped<ReadWriteLock> networkPortLocks =
+            Striped.lazyWeakReadWriteLock(LOCK_STRIPES);
+    // serializes the read-modify-write of the same port
+    private final Striped<Lock> portLocks = Striped.lazyWeakLock(LOCK_STRIPES);
 
     @Activate
     protected void activate() {
         coreService.registerApplication(Constants.CORDVTN_APP_ID);
         configRegistry.registerConfigFactory(configFactory);
+        compConfigService.registerProperties(getClass());
         snetStore.setDelegate(delegate);
+        snetStore.serviceNetworks().forEach(
+                snet -> dependencies.setProviders(snet.id(), snet.providers()));
         log.info("Started");
     }
 
     @Deactivate
     protected void deactivate() {
         configRegistry.unregisterConfigFactory(configFactory);
+        compConfigService.unregisterProperties(getClass(), false);
         snetStore.unsetDelegate(delegate);
+        dependencies.clear();
         log.info("Stopped");
     }
 
+    @Modified
+    protected void modified(ComponentContext context) {
+        Dictionary<?, ?> properties = context.getProperties();
+        Boolean updatedReject = Tools.isPropertyEnabled(properties, REJECT_CYCLIC_DEPENDENCIES);
+        if (updatedReject != null) {
+            // applies to the network changes made from now on
+            rejectCyclicDependencies = updatedReject;
+        }
+        log.info("Modified");
+    }
+
     @Override
     public void purgeStates() {
         snetStore.clear();
+        dependencies.clear();
     }
 
     @Override
@@ -139,12 +210,31 @@ public class ServiceNetworkManager extends ListenerRegistry<ServiceNetworkEvent,
         return snetStore.serviceNetworks();
     }
 
+    @Override
+    public Map<NetworkId, DependencyType> subscribers(NetworkId netId) {
+        checkNotNull(netId, ERR_NULL_SERVICE_NET_ID);
+        return dependencies.subscribers(netId);
+    }
+
+    @Override
+    public Set<NetworkId> transitiveProviders(NetworkId netId) {
+        checkNotNull(netId, ERR_NULL_SERVICE_NET_ID);
+        return dependencies.transitiveProviders(netId);
+    }
+
+    @Override
+    public boolean isCyclic(NetworkId netId) {
+        checkNotNull(netId, ERR_NULL_SERVICE_NET_ID);
+        return dependencies.transitiveProviders(netId).contains(netId);
+    }
+
     @Override
     public void createServiceNetwork(ServiceNetwork snet) {
         checkNotNull(snet, ERR_NULL_SERVICE_NET);
         checkNotNull(snet.id(), ERR_NULL_SERVICE_NET_ID);
         checkNotNull(snet.type(), ERR_NULL_SERVICE_NET_TYPE);
-        synchronized (this) {
+        networkLock.lock();
+        try {
             snet.providers().keySet().forEach(provider -> {
                 if (snetStore.serviceNetwork(provider) == null) {
                     final String error = String.format(
@@ -152,8 +242,12 @@ public class ServiceNetworkManager extends ListenerRegistry<ServiceNetworkEvent,
                     throw new IllegalStateException(error);
                 }
             });
+            checkDependencies(snet);
             snetStore.createServiceNetwork(snet);
+            dependencies.setProviders(snet.id(), snet.providers());
             log.info(String.format(MSG_SERVICE_NET, snet.name(), MSG_CREATED));
+        } finally {
+            networkLock.unlock();
         }
     }
 
@@ -161,7 +255,8 @@ public class ServiceNetworkManager extends ListenerRegistry<ServiceNetworkEvent,
     public void updateServiceNetwork(ServiceNetwork snet) {
         checkNotNull(snet, ERR_NULL_SERVICE_NET);
         checkNotNull(snet.id(), ERR_NULL_SERVICE_NET_ID);
-        synchronized (this) {
+        networkLock.lock();
+        try {
             ServiceNetwork existing = snetStore.serviceNetwork(snet.id());
             if (existing == null) {
                 final String error = String.format(
@@ -169,30 +264,45 @@ public class ServiceNetworkManager extends ListenerRegistry<ServiceNetworkEvent,
                 throw new IllegalStateException(error);
             }
             // TODO do not allow service type update if the network in use
-            snetStore.updateServiceNetwork(DefaultServiceNetwork.builder(existing, snet).build());
+            ServiceNetwork updated = DefaultServiceNetwork.builder(existing, snet).build();
+            checkDependencies(updated);
+            snetStore.updateServiceNetwork(updated);
+            dependencies.setProviders(updated.id(), updated.providers());
             log.info(String.format(MSG_SERVICE_NET, existing.name(), MSG_UPDATED));
+        } finally {
+            networkLock.unlock();
         }
     }
 
     @Override
     public void removeServiceNetwork(NetworkId netId) {
         checkNotNull(netId, ERR_NULL_SERVICE_NET_ID);
-        synchronized (this) {
+        Lock netLock = networkPortLocks.get(netId).writeLock();
+        networkLock.lock();
+        netLock.lock();
+        try {
             if (isNetworkInUse(netId)) {
                 final String error = String.format(MSG_SERVICE_NET, netId, ERR_IN_USE);
                 throw new IllegalStateException(error);
             }
             // remove dependencies on this network first
-            serviceNetworks().stream().filter(n -> isProvider(n, netId)).forEach(n -> {
-                Map<NetworkId, DependencyType> newProviders = Maps.newHashMap(n.providers());
-                newProviders.remove(netId);
-                ServiceNetwork updated = DefaultServiceNetwork.builder(n)
-                        .providers(newProviders)
-                        .build();
-                snetStore.updateServiceNetwork(updated);
-            });
+            dependencies.subscribers(netId).keySet().stream()
+                    .map(snetStore::serviceNetwork)
+                    .filter(Objects::nonNull)
+                    .forEach(n -> {
+                        Map<NetworkId, DependencyType> newProviders = Maps.newHashMap(n.providers());
+                        newProviders.remove(netId);
+                        ServiceNetwork updated = DefaultServiceNetwork.builder(n)
+                                .providers(newProviders)
+                                .build();
+                        snetStore.updateServiceNetwork(updated);
+                    });
             ServiceNetwork snet = snetStore.removeServiceNetwork(netId);
+            dependencies.remove(netId);
             log.info(String.format(MSG_SERVICE_NET, snet.name(), MSG_REMOVED));
+        } finally {
+            netLock.unlock();
+            networkLock.unlock();
         }
     }
 
@@ -209,10 +319,26 @@ public class ServiceNetworkManager extends ListenerRegistry<ServiceNetworkEvent,
 
     @Override
     public Set<ServicePort> servicePorts(NetworkId netId) {
-        Set<ServicePort> sports = snetStore.servicePorts().stream()
-                .filter(p -> Objects.equals(p.networkId(), netId))
-                .collect(Collectors.toSet());
-        return ImmutableSet.copyOf(sports);
+        checkNotNull(netId, ERR_NULL_SERVICE_NET_ID);
+        return snetStore.servicePorts(netId);
+    }
+
+    @Override
+    public ServicePort servicePortByName(String portName) {
+        checkNotNull(portName, ERR_NULL_SERVICE_PORT_NAME);
+        return snetStore.servicePortByName(portName);
+    }
+
+    @Override
+    public ServicePort servicePortByMac(MacAddress mac) {
+        checkNotNull(mac, ERR_NULL_SERVICE_PORT_MAC);
+        return snetStore.servicePortByMac(mac);
+    }
+
+    @Override
+    public Set<ServicePort> servicePortsByIp(IpAddress ip) {
+        checkNotNull(ip, ERR_NULL_SERVICE_PORT_IP);
+        return snetStore.servicePortsByIp(ip);
     }
 
     @Override
@@ -221,15 +347,20 @@ public class ServiceNetworkManager extends ListenerRegistry<ServiceNetworkEvent,
         checkNotNull(sport.id(), ERR_NULL_SERVICE_PORT_ID);
         checkNotNull(sport.id(), ERR_NULL_SERVICE_PORT_NAME);
         checkNotNull(sport.networkId(), ERR_NULL_SERVICE_PORT_NET_ID);
-        synchronized (this) {
+        Lock netLock = networkPortLocks.get(sport.networkId()).readLock();
+        netLock.lock();
+        try {
             ServiceNetwork existing = snetStore.serviceNetwork(sport.networkId());
             if (existing == null) {
                 final String error = String.format(
                         MSG_SERVICE_NET, sport.networkId(), ERR_NOT_FOUND);
                 throw new IllegalStateException(error);
             }
+            // the store rejects the duplicate port atomically
             snetStore.createServicePort(sport);
             log.info(String.format(MSG_SERVICE_PORT, sport.id(), MSG_CREATED));
+        } finally {
+            netLock.unlock();
         }
     }
 
@@ -237,7 +368,14 @@ public class ServiceNetworkManager extends ListenerRegistry<ServiceNetworkEvent,
     public void updateServicePort(ServicePort sport) {
         checkNotNull(sport, ERR_NULL_SERVICE_PORT);
         checkNotNull(sport.id(), ERR_NULL_SERVICE_PORT_ID);
-        synchronized (this) {
+        List<Lock> locks = Lists.newArrayList();
+        if (sport.networkId() != null) {
+            // the port may move to the network
+            locks.add(networkPortLocks.get(sport.networkId()).readLock());
+        }
+        locks.add(portLocks.get(sport.id()));
+        locks.forEach(Lock::lock);
+        try {
             ServicePort existing = snetStore.servicePort(sport.id());
             if (existing == null) {
                 final String error = String.format(
@@ -246,32 +384,229 @@ public class ServiceNetworkManager extends ListenerRegistry<ServiceNetworkEvent,
             }
             snetStore.updateServicePort(DefaultServicePort.builder(existing, sport).build());
             log.info(String.format(MSG_SERVICE_PORT, sport.id(), MSG_UPDATED));
+        } finally {
+            Lists.reverse(locks).forEach(Lock::unlock);
         }
     }
 
     @Override
     public void removeServicePort(PortId portId) {
         checkNotNull(portId, ERR_NULL_SERVICE_PORT_ID);
-        synchronized (this) {
+        Lock portLock = portLocks.get(portId);
+        portLock.lock();
+        try {
             if (isPortInUse(portId)) {
                 final String error = String.format(MSG_SERVICE_PORT, portId, ERR_IN_USE);
                 throw new IllegalStateException(error);
             }
             snetStore.removeServicePort(portId);
             log.info(String.format(MSG_SERVICE_PORT, portId, MSG_REMOVED));
+        } finally {
+            portLock.unlock();
+        }
+    }
+
+    @Override
+    public ServiceNetworkChanges changes(long since, long timeoutMillis)
+            throws InterruptedException {
+        checkArgument(timeoutMillis >= 0, ERR_TIMEOUT);
+        return snetStore.changes(since, timeoutMillis);
+    }
+
+    @Override
+    public void applyBatch(ServiceNetworkBatch batch) {
+        checkNotNull(batch, ERR_NULL_BATCH);
+        if (batch.isEmpty()) {
+            return;
+        }
+        // the batches of the ports only run in parallel with each other
+        boolean networkChanged = !batch.networks().isEmpty() ||
+                !batch.removedNetworks().isEmpty();
+        if (networkChanged) {
+            networkLock.lock();
+        }
+        List<Lock> locks = batchLocks(batch);
+        locks.forEach(Lock::lock);
+        try {
+            ServiceNetworkBatch resolved = resolveBatch(batch);
+            snetStore.applyBatch(resolved);
+            resolved.networks().forEach(
+                    snet -> dependencies.setProviders(snet.id(), snet.providers()));
+            resolved.removedNetworks().forEach(dependencies::remove);
+            log.info(String.format(MSG_BATCH, resolved, MSG_APPLIED));
+        } finally {
+            Lists.reverse(locks).forEach(Lock::unlock);
+            if (networkChanged) {
+                networkLock.unlock();
+            }
         }
     }
 
     /**
-     * Returns if the given target network is a provider of the given network.
+     * Returns the network and port locks of the given batch in the order to
+     * acquire. The networks removed by the batch are write locked, and the
+     * networks of the ports are read locked.
      *
-     * @param snet     service network
-     * @param targetId target network
-     * @return true if the service network is a provider of the target network
+     * @param batch service network batch
+     * @return list of locks
      */
-    private boolean isProvider(ServiceNetwork snet, NetworkId targetId) {
-        checkNotNull(snet);
-        return snet.providers().keySet().contains(targetId);
+    private List<Lock> batchLocks(ServiceNetworkBatch batch) {
+        Set<NetworkId> netIds = Sets.newHashSet(batch.removedNetworks());
+        batch.ports().stream()
+                .map(ServicePort::networkId)
+                .filter(Objects::nonNull)
+                .forEach(netIds::add);
+        Set<ReadWriteLock> removing = batch.removedNetworks().stream()
+                .map(networkPortLocks::get)
+                .collect(Collectors.toSet());
+
+        Set<PortId> portIds = Sets.newHashSet(batch.removedPorts());
+        batch.ports().forEach(sport -> portIds.add(sport.id()));
+
+        // the stripes are in a fixed order, and the same one may appear
+        // several times for the colliding keys
+        List<Lock> locks = Lists.newArrayList();
+        ImmutableSet.copyOf(networkPortLocks.bulkGet(netIds)).forEach(lock -> locks.add(
+                removing.contains(lock) ? lock.writeLock() : lock.readLock()));
+        locks.addAll(ImmutableSet.copyOf(portLocks.bulkGet(portIds)));
+        return locks;
+    }
+
+    /**
+     * Merges the updates in the given batch with the existing networks and
+     * ports, and validates the result as a whole.
+     *
+     * @param batch service network batch
+     * @return batch with the merged networks and ports
+     */
+    private ServiceNetworkBatch resolveBatch(ServiceNetworkBatch batch) {
+        Set<NetworkId> removedNets = batch.removedNetworks();
+        Set<PortId> removedPorts = batch.removedPorts();
+
+        Map<NetworkId, ServiceNetwork> snets = Maps.newLinkedHashMap();
+        batch.networks().forEach(snet -> {
+            if (removedNets.contains(snet.id())) {
+                final String error = String.format(MSG_SERVICE_NET, snet.id(), ERR_CONFLICT);
+                throw new IllegalStateException(error);
+            }
+            ServiceNetwork existing = snets.containsKey(snet.id()) ?
+                    snets.get(snet.id()) : snetStore.serviceNetwork(snet.id());
+            ServiceNetwork merged = existing == null ? snet :
+                    DefaultServiceNetwork.builder(existing, snet).build();
+            if (merged.type() == null) {
+                final String error = String.format(MSG_SERVICE_NET, snet.id(), ERR_NO_TYPE);
+                throw new IllegalStateException(error);
+            }
+            snets.put(merged.id(), merged);
+        });
+
+        Map<PortId, ServicePort> sports = Maps.newLinkedHashMap();
+        batch.ports().forEach(sport -> {
+            if (removedPorts.contains(sport.id())) {
+                final String error = String.format(MSG_SERVICE_PORT, sport.id(), ERR_CONFLICT);
+                throw new IllegalStateException(error);
+            }
+            ServicePort existing = sports.containsKey(sport.id()) ?
+                    sports.get(sport.id()) : snetStore.servicePort(sport.id());
+            ServicePort merged = existing == null ? sport :
+                    DefaultServicePort.builder(existing, sport).build();
+            if (merged.networkId() == null) {
+                final String error = String.format(MSG_SERVICE_PORT, sport.id(), ERR_NO_NETWORK);
+                throw new IllegalStateException(error);
+            }
+            sports.put(merged.id(), merged);
+        });
+
+        removedPorts.forEach(portId -> {
+            if (isPortInUse(portId)) {
+                final String error = String.format(MSG_SERVICE_PORT, portId, ERR_IN_USE);
+                throw new IllegalStateException(error);
+            }
+        });
+
+        removedNets.forEach(netId -> {
+            if (snetStore.serviceNetwork(netId) == null) {
+                final String error = String.format(MSG_SERVICE_NET, netId, ERR_NOT_FOUND);
+                throw new IllegalStateException(error);
+            }
+            boolean inUse = snetStore.servicePorts(netId).stream()
+                    .filter(sport -> !removedPorts.contains(sport.id()))
+                    .anyMatch(sport -> !sports.containsKey(sport.id()) ||
+                            Objects.equals(sports.get(sport.id()).networkId(), netId)) ||
+                    sports.values().stream()
+                            .anyMatch(sport -> Objects.equals(sport.networkId(), netId));
+            if (inUse) {
+                final String error = String.format(MSG_SERVICE_NET, netId, ERR_IN_USE);
+                throw new IllegalStateException(error);
+            }
+            // remove dependencies on this network first
+            dependencies.subscribers(netId).keySet().stream()
+                    .filter(subscriber -> !removedNets.contains(subscriber))
+                    .map(subscriber -> snets.containsKey(subscriber) ?
+                            snets.get(subscriber) : snetStore.serviceNetwork(subscriber))
+                    .filter(Objects::nonNull)
+                    .forEach(n -> snets.put(n.id(), withoutProviders(n, removedNets)));
+        });
+
+        // the networks referred by the batch should exist after the batch
+        Predicate<NetworkId> exists = netId -> !removedNets.contains(netId) &&
+                (snets.containsKey(netId) || snetStore.serviceNetwork(netId) != null);
+        snets.values().forEach(snet -> snet.providers().keySet().forEach(provider -> {
+            if (!exists.test(provider)) {
+                final String error = String.format(MSG_PROVIDER_NET, provider, ERR_NOT_FOUND);
+                throw new IllegalStateException(error);
+            }
+        }));
+        sports.values().forEach(sport -> {
+            if (!exists.test(sport.networkId())) {
+                final String error = String.format(
+                        MSG_SERVICE_NET, sport.networkId(), ERR_NOT_FOUND);
+                throw new IllegalStateException(error);
+            }
+        });
+        checkDependencies(snets.values(), removedNets);
+
+        ServiceNetworkBatch.Builder resolved = ServiceNetworkBatch.builder();
+        snets.values().forEach(resolved::updateNetwork);
+        removedNets.forEach(resolved::removeNetwork);
+        sports.values().forEach(resolved::updatePort);
+        removedPorts.forEach(resolved::removePort);
+        return resolved.build();
+    }
+
+    private ServiceNetwork withoutProviders(ServiceNetwork snet, Set<NetworkId> removed) {
+        Map<NetworkId, DependencyType> newProviders = Maps.newHashMap(snet.providers());
+        newProviders.keySet().removeAll(removed);
+        return DefaultServiceNetwork.builder(snet).providers(newProviders).build();
+    }
+
+    private void checkDependencies(Collection<ServiceNetwork> updated,
+                                   Set<NetworkId> removed) {
+        // checks the dependencies after the batch all at once
+        ServiceDependencyGraph graph = new ServiceDependencyGraph();
+        snetStore.serviceNetworks().stream()
+                .filter(snet -> !removed.contains(snet.id()))
+                .forEach(snet -> graph.setProviders(snet.id(), snet.providers()));
+        updated.forEach(snet -> graph.setProviders(snet.id(), snet.providers()));
+        updated.stream()
+                .filter(snet -> graph.transitiveProviders(snet.id()).contains(snet.id()))
+                .forEach(this::cyclicDependency);
+    }
+
+    private void checkDependencies(ServiceNetwork snet) {
+        if (dependencies.isCyclic(snet.id(), snet.providers().keySet())) {
+            cyclicDependency(snet);
+        }
+    }
+
+    private void cyclicDependency(ServiceNetwork snet) {
+        final String error = String.format(MSG_SERVICE_NET, snet.id(), ERR_CYCLE);
+        if (rejectCyclicDependencies) {
+            throw new IllegalStateException(error);
+        }
+        // the cycle is allowed, the dependency rules are installed for each
+        // dependency anyway; see isCyclic
+        log.warn(error);
     }
 
     private boolean isNetworkInUse(NetworkId netId) {
@@ -285,6 +620,12 @@ public class ServiceNetworkManager extends ListenerRegistry<ServiceNetworkEvent,
             final String error = String.format(MSG_SERVICE_PORT, portId, ERR_NOT_FOUND);
             throw new IllegalStateException(error);
         }
+        // the host with the MAC is the instance of this port only while the
+        // MAC is not taken over by another port
+        ServicePort owner = sport.mac() == null ? null : snetStore.servicePortByMac(sport.mac());
+        if (owner == null || !owner.id().equals(portId)) {
+            return false;
+        }
         // TODO use instance service to see if there's running instance for the port
         Host host = hostService.getHost(HostId.hostId(sport.mac()));
         return host != null;
@@ -295,9 +636,27 @@ public class ServiceNetworkManager extends ListenerRegistry<ServiceNetworkEvent,
         @Override
         public void notify(ServiceNetworkEvent event) {
             if (event != null) {
+                updateDependencies(event);
                 log.trace("send service network event {}", event);
                 process(event);
             }
         }
+
+        private void updateDependencies(ServiceNetworkEvent event) {
+            // keeps the changes made by the other cluster members in sync
+            switch (event.type()) {
+                case SERVICE_NETWORK_CREATED:
+                case SERVICE_NETWORK_UPDATED:
+                    dependencies.setProviders(event.subject().id(),
+                                              event.subject().providers());
+                    break;
+                case SERVICE_NETWORK_REMOVED:
+                    dependencies.remove(event.subject().id());
+                    break;
+                default:
+                    // provider events follow the update of the subscriber
+                    break;
+            }
+        }
     }
 }
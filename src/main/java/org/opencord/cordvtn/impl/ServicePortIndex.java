@@ -0,0 +1,147 @@
+/*
+ * Copyright 2017-present Open Networking Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opencord.cordvtn.impl;
+
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
+import com.google.common.collect.SetMultimap;
+import org.onlab.packet.IpAddress;
+import org.onlab.packet.MacAddress;
+import org.opencord.cordvtn.api.net.NetworkId;
+import org.opencord.cordvtn.api.net.PortId;
+import org.opencord.cordvtn.api.net.ServicePort;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Secondary indexes of the service ports by network, name, MAC and IP address.
+ */
+final class ServicePortIndex {
+
+    private final Map<PortId, ServicePort> ports = Maps.newHashMap();
+    private final SetMultimap<NetworkId, PortId> netPorts = HashMultimap.create();
+    private final Map<String, PortId> namePorts = Maps.newHashMap();
+    private final Map<MacAddress, PortId> macPorts = Maps.newHashMap();
+    private final SetMultimap<IpAddress, PortId> ipPorts = HashMultimap.create();
+
+    /**
+     * Adds or replaces the given service port.
+     *
+     * @param sport service port
+     */
+    synchronized void put(ServicePort sport) {
+        remove(sport.id());
+        ports.put(sport.id(), sport);
+        if (sport.networkId() != null) {
+            netPorts.put(sport.networkId(), sport.id());
+        }
+        if (sport.name() != null) {
+            namePorts.put(sport.name(), sport.id());
+        }
+        if (sport.mac() != null) {
+            macPorts.put(sport.mac(), sport.id());
+        }
+        if (sport.ip() != null) {
+            ipPorts.put(sport.ip(), sport.id());
+        }
+    }
+
+    /**
+     * Removes the service port with the given port id.
+     *
+     * @param portId port id
+     */
+    synchronized void remove(PortId portId) {
+        ServicePort sport = ports.remove(portId);
+        if (sport == null) {
+            return;
+        }
+        if (sport.networkId() != null) {
+            netPorts.remove(sport.networkId(), portId);
+        }
+        if (sport.name() != null) {
+            namePorts.remove(sport.name(), portId);
+        }
+        if (sport.mac() != null) {
+            macPorts.remove(sport.mac(), portId);
+        }
+        if (sport.ip() != null) {
+            ipPorts.remove(sport.ip(), portId);
+        }
+    }
+
+    /**
+     * Removes all service ports.
+     */
+    synchronized void clear() {
+        ports.clear();
+        netPorts.clear();
+        namePorts.clear();
+        macPorts.clear();
+        ipPorts.clear();
+    }
+
+    /**
+     * Returns the service ports of the given network.
+     *
+     * @param netId network id
+     * @return set of service ports; empty set if no port presents
+     */
+    synchronized Set<ServicePort> byNetwork(NetworkId netId) {
+        return toPorts(netPorts.get(netId));
+    }
+
+    /**
+     * Returns the service port with the given name.
+     *
+     * @param portName port name
+     * @return service port; null if no port presents
+     */
+    synchronized ServicePort byName(String portName) {
+        PortId portId = namePorts.get(portName);
+        return portId == null ? null : ports.get(portId);
+    }
+
+    /**
+     * Returns the service port with the given MAC address.
+     *
+     * @param mac mac address
+     * @return service port; null if no port presents
+     */
+    synchronized ServicePort byMac(MacAddress mac) {
+        PortId portId = macPorts.get(mac);
+        return portId == null ? null : ports.get(portId);
+    }
+
+    /**
+     * Returns the service ports with the given IP address.
+     *
+     * @param ip ip address
+     * @return set of service ports; empty set if no port presents
+     */
+    synchronized Set<ServicePort> byIp(IpAddress ip) {
+        return toPorts(ipPorts.get(ip));
+    }
+
+    private Set<ServicePort> toPorts(Set<PortId> portIds) {
+        return ImmutableSet.copyOf(portIds.stream()
+                                           .map(ports::get)
+                                           .collect(Collectors.toSet()));
+    }
+}
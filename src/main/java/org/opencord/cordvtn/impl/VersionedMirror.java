@@ -0,0 +1,173 @@
+/*
+ * Copyright 2017-present Open Networking Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opencord.cordvtn.impl;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
+import org.onosproject.store.service.Versioned;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Local read-only copy of a distributed map. Writes are applied per key
+ * unless the mirror already has a newer version of the key, including the
+ * version removed locally, and the set of values is built lazily on read.
+ *
+ * @param <K> key type
+ * @param <V> value type
+ */
+final class VersionedMirror<K, V> {
+
+    private final Map<K, Versioned<V>> entries = Maps.newConcurrentMap();
+    // versions of the keys removed locally, until the removal event arrives
+    private final Map<K, Long> tombstones = Maps.newConcurrentMap();
+    private final AtomicLong version = new AtomicLong();
+    private volatile CachedValues<V> cachedValues;
+
+    /**
+     * Adds or replaces the value of the given key, unless the mirror already
+     * has a newer version of it or the key was removed at the same or newer
+     * version.
+     *
+     * @param key       key
+     * @param versioned versioned value
+     * @return true if the value is applied
+     */
+    synchronized boolean put(K key, Versioned<V> versioned) {
+        Versioned<V> existing = entries.get(key);
+        if (existing != null && existing.version() > versioned.version()) {
+            return false;
+        }
+        Long removed = tombstones.get(key);
+        if (removed != null) {
+            if (removed >= versioned.version()) {
+                // late update of the removed value
+                return false;
+            }
+            tombstones.remove(key);
+        }
+        entries.put(key, versioned);
+        version.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Removes the value of the given key, unless the mirror already has a
+     * newer version of it than the removed one. The removed version is kept
+     * so that a late update of it is ignored, until {@link #removed} is
+     * called for the key.
+     *
+     * @param key       key
+     * @param versioned removed versioned value
+     * @return true if the value is removed
+     */
+    synchronized boolean remove(K key, Versioned<V> versioned) {
+        Long removed = tombstones.get(key);
+        if (removed == null || removed < versioned.version()) {
+            tombstones.put(key, versioned.version());
+        }
+        Versioned<V> existing = entries.get(key);
+        if (existing == null || existing.version() > versioned.version()) {
+            return false;
+        }
+        entries.remove(key);
+        version.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Removes the value of the given key by the removal event of the
+     * distributed map. No earlier event of the key follows the removal
+     * event, so the removed version is no longer kept.
+     *
+     * @param key       key
+     * @param versioned removed versioned value
+     * @return true if the value is removed
+     */
+    synchronized boolean removed(K key, Versioned<V> versioned) {
+        boolean result = remove(key, versioned);
+        Long removed = tombstones.get(key);
+        if (removed != null && removed <= versioned.version()) {
+            tombstones.remove(key);
+        }
+        return result;
+    }
+
+    /**
+     * Replaces all values with the given entries.
+     *
+     * @param newEntries versioned values by key
+     */
+    synchronized void reset(Map<K, Versioned<V>> newEntries) {
+        entries.clear();
+        tombstones.clear();
+        entries.putAll(newEntries);
+        version.incrementAndGet();
+    }
+
+    /**
+     * Returns the value of the given key.
+     *
+     * @param key key
+     * @return value; null if not found
+     */
+    V get(K key) {
+        Versioned<V> versioned = entries.get(key);
+        return versioned == null ? null : versioned.value();
+    }
+
+    /**
+     * Returns all values. The set is built again on the first read after
+     * a change.
+     *
+     * @return immutable set of values
+     */
+    Set<V> values() {
+        // reads the version first so that a concurrent change is never
+        // cached as the latest
+        long current = version.get();
+        CachedValues<V> cached = cachedValues;
+        if (cached != null && cached.version == current) {
+            return cached.values;
+        }
+        ImmutableSet<V> values = ImmutableSet.copyOf(
+                entries.values().stream().map(Versioned::value).iterator());
+        cachedValues = new CachedValues<>(current, values);
+        return values;
+    }
+
+    /**
+     * Returns the local version of the mirror, increased on every change.
+     *
+     * @return version
+     */
+    long version() {
+        return version.get();
+    }
+
+    private static final class CachedValues<V> {
+
+        private final long version;
+        private final ImmutableSet<V> values;
+
+        private CachedValues(long version, ImmutableSet<V> values) {
+            this.version = version;
+            this.values = values;
+        }
+    }
+}
@@ -16,18 +16,18 @@
 package org.opencord.cordvtn.impl.handler;
 
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
 import org.onlab.osgi.DefaultServiceDirectory;
 import org.onlab.osgi.ServiceDirectory;
 import org.onlab.packet.Ip4Address;
 import org.onlab.packet.IpAddress;
-import org.onlab.util.Tools;
 import org.onosproject.core.ApplicationId;
 import org.onosproject.core.CoreService;
 import org.onosproject.mastership.MastershipService;
 import org.onosproject.net.Device;
 import org.onosproject.net.DeviceId;
 import org.onosproject.net.Host;
-import org.onosproject.net.Port;
+import org.onosproject.net.HostId;
 import org.onosproject.net.PortNumber;
 import org.onosproject.net.behaviour.ExtensionTreatmentResolver;
 import org.onosproject.net.device.DeviceService;
@@ -39,25 +39,31 @@ import org.onosproject.net.host.HostService;
 import org.opencord.cordvtn.api.Constants;
 import org.opencord.cordvtn.api.core.Instance;
 import org.opencord.cordvtn.api.core.InstanceHandler;
+import org.opencord.cordvtn.api.core.InstanceService;
+import org.opencord.cordvtn.api.core.ServiceNetworkEvent;
+import org.opencord.cordvtn.api.core.ServiceNetworkListener;
 import org.opencord.cordvtn.api.core.ServiceNetworkService;
 import org.opencord.cordvtn.api.net.NetworkId;
 import org.opencord.cordvtn.api.net.ServiceNetwork;
 import org.opencord.cordvtn.api.net.ServicePort;
 import org.opencord.cordvtn.api.node.CordVtnNode;
+import org.opencord.cordvtn.api.node.CordVtnNodeEvent;
+import org.opencord.cordvtn.api.node.CordVtnNodeListener;
 import org.opencord.cordvtn.api.node.CordVtnNodeService;
+import org.opencord.cordvtn.api.node.NodePortService;
+import org.opencord.cordvtn.impl.PartitionedExecutor;
 import org.slf4j.Logger;
 
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
-import java.util.concurrent.ExecutorService;
 import java.util.stream.Collectors;
 
-import static java.util.concurrent.Executors.newSingleThreadExecutor;
-import static org.onlab.util.Tools.groupedThreads;
-import static org.onosproject.net.AnnotationKeys.PORT_NAME;
 import static org.onosproject.net.flow.instructions.ExtensionTreatmentType.ExtensionTreatmentTypes.NICIRA_SET_TUNNEL_DST;
 import static org.opencord.cordvtn.api.Constants.DEFAULT_TUNNEL;
+import static org.opencord.cordvtn.api.core.ServiceNetworkEvent.Type.SERVICE_PORT_UPDATED;
+import static org.opencord.cordvtn.impl.PartitionedExecutor.newPartitionedExecutor;
 import static org.slf4j.LoggerFactory.getLogger;
 
 /**
@@ -71,19 +77,37 @@ public abstract class AbstractInstanceHandler implements InstanceHandler {
     protected static final String ERR_VTN_PORT = "Failed to get VTN port for %s";
     protected static final String PROPERTY_TUNNEL_DST = "tunnelDst";
 
+    // the group IDs of the handlers are split by the high bits so that the
+    // hashed IDs of the different kinds of groups never collide on a device
+    protected static final int GROUP_ID_MASK = 0x3fffffff;
+    protected static final int PROVIDER_GROUP_ID_BASE = 0x00000000;
+    protected static final int TUNNEL_GROUP_ID_BASE = 0x40000000;
+
     protected CoreService coreService;
     protected MastershipService mastershipService;
     protected HostService hostService;
     protected DeviceService deviceService;
     protected ServiceNetworkService snetService;
     protected CordVtnNodeService nodeService;
+    protected NodePortService nodePortService;
+    protected InstanceService instanceService;
     protected ApplicationId appId;
     protected Set<ServiceNetwork.NetworkType> netTypes = ImmutableSet.of();
 
     protected HostListener hostListener = new InternalHostListener();
+    protected CordVtnNodeListener nodeListener = new InternalNodeListener();
+    protected ServiceNetworkListener servicePortListener = new InternalServicePortListener();
+
+    // updated by the host events regardless of the mastership
+    protected final NetworkMembership membership = new NetworkMembership();
+
+    // tunnel destination extension treatments by device and remote data IP
+    private final Map<DeviceId, Map<Ip4Address, ExtensionTreatment>> tunnelDstTreatments =
+            Maps.newConcurrentMap();
 
-    protected final ExecutorService eventExecutor = newSingleThreadExecutor(
-            groupedThreads(this.getClass().getSimpleName(), "event-handler", log));
+    // the events of the same network are handled in order
+    protected final PartitionedExecutor eventExecutor = newPartitionedExecutor(
+            this.getClass().getSimpleName(), "event-handler", log);
 
     protected void activate() {
         ServiceDirectory services = new DefaultServiceDirectory();
@@ -93,34 +117,116 @@ public abstract class AbstractInstanceHandler implements InstanceHandler {
         deviceService = services.get(DeviceService.class);
         snetService = services.get(ServiceNetworkService.class);
         nodeService = services.get(CordVtnNodeService.class);
+        nodePortService = services.get(NodePortService.class);
+        instanceService = services.get(InstanceService.class);
 
         appId = coreService.registerApplication(Constants.CORDVTN_APP_ID);
+        // loaded before the listeners, the host events of the different
+        // networks are handled in parallel
+        instanceService.instances().forEach(membership::add);
         hostService.addListener(hostListener);
+        nodeService.addListener(nodeListener);
+        snetService.addListener(servicePortListener);
 
         log.info("Started");
     }
 
     protected void deactivate() {
+        snetService.removeListener(servicePortListener);
+        nodeService.removeListener(nodeListener);
         hostService.removeListener(hostListener);
         eventExecutor.shutdown();
 
         log.info("Stopped");
     }
 
+    /**
+     * Returns the key to order the event handling of the given network or
+     * device with. The events with the same key are handled in order, and the
+     * others in parallel. Override to return null to handle all events in order.
+     *
+     * @param id network or device identifier
+     * @return partition key
+     */
+    protected Object partitionKey(Object id) {
+        return id;
+    }
+
     @Override
     public void instanceUpdated(Instance instance) {
         instanceDetected(instance);
     }
 
+    @Override
+    public void reprogramInstance(Instance instance) {
+        // do nothing by default, the rules are built from the instance host
+    }
+
+    /**
+     * Returns the original instances of the given network. The instances are
+     * from the membership updated by the host events of this handler, so that
+     * they are in order with the host event being handled.
+     *
+     * @param netId network identifier
+     * @return set of instances; empty set if no instance presents
+     */
     protected Set<Instance> getInstances(NetworkId netId) {
-        return Tools.stream(hostService.getHosts())
-                .filter(host -> Objects.equals(
-                        netId.id(),
-                        host.annotations().value(Instance.NETWORK_ID)))
-                .map(Instance::of)
+        return toInstances(membership.members(netId));
+    }
+
+    /**
+     * Returns the original instances of the given network on the supplied device.
+     *
+     * @param netId    network identifier
+     * @param deviceId device identifier
+     * @return set of instances; empty set if no instance presents
+     */
+    protected Set<Instance> getInstances(NetworkId netId, DeviceId deviceId) {
+        return toInstances(membership.members(netId, deviceId));
+    }
+
+    private Set<Instance> toInstances(Set<HostId> hostIds) {
+        return hostIds.stream()
+                .map(hostId -> {
+                    Host host = hostService.getHost(hostId);
+                    return host == null ? null : Instance.of(host);
+                })
+                .filter(Objects::nonNull)
                 .collect(Collectors.toSet());
     }
 
+    /**
+     * Returns the devices hosting the instances of the given network.
+     *
+     * @param netId network identifier
+     * @return set of device identifiers; empty set if no instance presents
+     */
+    protected Set<DeviceId> getHostingDevices(NetworkId netId) {
+        return membership.devices(netId);
+    }
+
+    /**
+     * Returns whether the other original instances of the network of the given
+     * instance are on the same device.
+     *
+     * @param instance instance
+     * @return true if the device has the other instances of the network
+     */
+    protected boolean hasLocalPeers(Instance instance) {
+        return membership.members(instance.netId(), instance.deviceId()).stream()
+                .anyMatch(hostId -> !hostId.equals(instance.host().id()));
+    }
+
+    /**
+     * Processes the network of which the last instance has been removed.
+     * Called before the instance removal is handled.
+     *
+     * @param netId network identifier
+     */
+    protected void networkVacated(NetworkId netId) {
+        // do nothing by default
+    }
+
     protected ServiceNetwork getServiceNetwork(Instance instance) {
         ServiceNetwork snet = snetService.serviceNetwork(instance.netId());
         if (snet == null) {
@@ -172,6 +278,42 @@ public abstract class AbstractInstanceHandler implements InstanceHandler {
     }
 
     protected ExtensionTreatment tunnelDstTreatment(DeviceId deviceId, Ip4Address remoteIp) {
+        // the extension treatment is immutable once the tunnel destination is set,
+        // resolve it from the driver once and share it by the rules of the device
+        Map<Ip4Address, ExtensionTreatment> treatments = tunnelDstTreatments.computeIfAbsent(
+                deviceId, id -> Maps.newConcurrentMap());
+        ExtensionTreatment treatment = treatments.get(remoteIp);
+        if (treatment == null) {
+            treatment = createTunnelDstTreatment(deviceId, remoteIp);
+            if (treatment != null) {
+                treatments.put(remoteIp, treatment);
+            }
+        }
+        return treatment;
+    }
+
+    /**
+     * Drops the cached tunnel destination treatments affected by the change
+     * of the given node, the ones of its own device and the ones to the data
+     * IP no node has anymore. The treatments to the other nodes are kept.
+     *
+     * @param node    updated or removed node
+     * @param removed true if the node is removed
+     */
+    private void invalidateTunnelDstTreatments(CordVtnNode node, boolean removed) {
+        // the device might be replaced with the other driver
+        tunnelDstTreatments.remove(node.integrationBridgeId());
+
+        // the previous data IP of the updated node is not known, drop the
+        // data IPs of no node instead
+        Set<Ip4Address> dataIps = nodeService.nodes().stream()
+                .filter(other -> !removed || !other.hostname().equals(node.hostname()))
+                .map(other -> other.dataIp().ip().getIp4Address())
+                .collect(Collectors.toSet());
+        tunnelDstTreatments.values().forEach(treatments -> treatments.keySet().retainAll(dataIps));
+    }
+
+    private ExtensionTreatment createTunnelDstTreatment(DeviceId deviceId, Ip4Address remoteIp) {
         Device device = deviceService.getDevice(deviceId);
         if (device != null && !device.is(ExtensionTreatmentResolver.class)) {
             log.error("The extension treatment is not supported");
@@ -199,24 +341,62 @@ public abstract class AbstractInstanceHandler implements InstanceHandler {
     }
 
     private Optional<PortNumber> getPortNumber(DeviceId deviceId, String portName) {
-        PortNumber port = deviceService.getPorts(deviceId).stream()
-                .filter(p -> p.annotations().value(PORT_NAME).equals(portName) &&
-                        p.isEnabled())
-                .map(Port::number)
-                .findAny()
-                .orElse(null);
-        return Optional.ofNullable(port);
+        return Optional.ofNullable(nodePortService.portNumber(deviceId, portName));
+    }
+
+    private static boolean isOriginalInstance(Host host) {
+        return host.annotations().value(Instance.NETWORK_ID) != null &&
+                host.annotations().value(Instance.ORIGINAL_HOST_ID) == null;
+    }
+
+    private void removeMember(Instance instance) {
+        if (membership.remove(instance)) {
+            networkVacated(instance.netId());
+        }
+    }
+
+    private void updateMembership(HostEvent event) {
+        switch (event.type()) {
+            case HOST_ADDED:
+                if (isOriginalInstance(event.subject())) {
+                    membership.add(Instance.of(event.subject()));
+                }
+                break;
+            case HOST_UPDATED:
+            case HOST_MOVED:
+                if (event.prevSubject() != null && isOriginalInstance(event.prevSubject())) {
+                    removeMember(Instance.of(event.prevSubject()));
+                }
+                if (isOriginalInstance(event.subject())) {
+                    membership.add(Instance.of(event.subject()));
+                }
+                break;
+            case HOST_REMOVED:
+                if (isOriginalInstance(event.subject())) {
+                    removeMember(Instance.of(event.subject()));
+                }
+                break;
+            default:
+                break;
+        }
     }
 
     private class InternalHostListener implements HostListener {
 
         @Override
         public void event(HostEvent event) {
-            eventExecutor.execute(() -> handle(event));
+            String netId = event.subject().annotations().value(Instance.NETWORK_ID);
+            Object key = netId == null ? null : partitionKey(NetworkId.of(netId));
+            eventExecutor.execute(key, () -> handle(event));
         }
 
         private void handle(HostEvent event) {
             Host host = event.subject();
+            updateMembership(event);
+            if (!isOriginalInstance(host)) {
+                // not an instance or an address pair host of the previous versions
+                return;
+            }
             if (!mastershipService.isLocalMaster(host.location().deviceId())) {
                 // do not allow to proceed without mastership
                 return;
@@ -243,4 +423,91 @@ public abstract class AbstractInstanceHandler implements InstanceHandler {
             }
         }
     }
+
+    /**
+     * Installs the rules of the existing instances on the given node again,
+     * after the node has been initialized. Each instance is installed in
+     * order with the host events of its network.
+     *
+     * @param node cordvtn node
+     */
+    private void reinstallInstances(CordVtnNode node) {
+        DeviceId deviceId = node.integrationBridgeId();
+        if (!mastershipService.isLocalMaster(deviceId)) {
+            return;
+        }
+        instanceService.instances(deviceId).stream()
+                .filter(instance -> netTypes.isEmpty() ||
+                        netTypes.contains(instance.netType()))
+                .forEach(instance -> eventExecutor.execute(
+                        partitionKey(instance.netId()),
+                        () -> reinstallInstance(instance)));
+    }
+
+    private void reinstallInstance(Instance instance) {
+        HostId hostId = instance.host().id();
+        if (!membership.members(instance.netId(), instance.deviceId()).contains(hostId)) {
+            // removed or moved by the host event handled before
+            return;
+        }
+        Instance current = instanceService.instance(hostId);
+        if (current == null || !mastershipService.isLocalMaster(current.deviceId())) {
+            return;
+        }
+        instanceDetected(current);
+    }
+
+    private class InternalServicePortListener implements ServiceNetworkListener {
+
+        @Override
+        public boolean isRelevant(ServiceNetworkEvent event) {
+            return event.type() == SERVICE_PORT_UPDATED && !event.changes().isEmpty();
+        }
+
+        @Override
+        public void event(ServiceNetworkEvent event) {
+            eventExecutor.execute(partitionKey(event.servicePort().networkId()),
+                                  () -> handle(event));
+        }
+
+        private void handle(ServiceNetworkEvent event) {
+            ServicePort sport = event.servicePort();
+            Instance instance = instanceService.instance(HostId.hostId(sport.mac()));
+            if (instance == null || !instance.portId().equals(sport.id())) {
+                // not detected yet, the host update follows the port update
+                return;
+            }
+            if (!mastershipService.isLocalMaster(instance.deviceId())) {
+                // do not allow to proceed without mastership
+                return;
+            }
+            if (!netTypes.isEmpty() && !netTypes.contains(instance.netType())) {
+                // not my service network instance, do nothing
+                return;
+            }
+            reprogramInstance(instance);
+        }
+    }
+
+    private class InternalNodeListener implements CordVtnNodeListener {
+
+        @Override
+        public void event(CordVtnNodeEvent event) {
+            switch (event.type()) {
+                case NODE_COMPLETE:
+                    // the pipeline of the node is initialized again
+                    eventExecutor.execute(
+                            partitionKey(event.subject().integrationBridgeId()),
+                            () -> reinstallInstances(event.subject()));
+                    break;
+                case NODE_UPDATED:
+                case NODE_REMOVED:
+                    invalidateTunnelDstTreatments(event.subject(),
+                                                  event.type() == CordVtnNodeEvent.Type.NODE_REMOVED);
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
 }
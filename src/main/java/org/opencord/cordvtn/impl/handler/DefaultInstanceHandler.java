@@ -15,22 +15,28 @@
  */
 package org.opencord.cordvtn.impl.handler;
 
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import org.apache.felix.scr.annotations.Activate;
 import org.apache.felix.scr.annotations.Component;
 import org.apache.felix.scr.annotations.Deactivate;
+import org.apache.felix.scr.annotations.Modified;
+import org.apache.felix.scr.annotations.Property;
 import org.apache.felix.scr.annotations.Reference;
 import org.apache.felix.scr.annotations.ReferenceCardinality;
 import org.onlab.packet.Ethernet;
-import org.onlab.packet.Ip4Address;
 import org.onlab.packet.Ip4Prefix;
 import org.onlab.packet.IpAddress;
 import org.onlab.packet.IpPrefix;
-import org.onlab.packet.MacAddress;
 import org.onlab.packet.VlanId;
-import org.onosproject.net.DefaultAnnotations;
-import org.onosproject.net.HostId;
+import org.onlab.util.Tools;
+import org.onosproject.cfg.ComponentConfigService;
+import org.onosproject.core.GroupId;
+import org.onosproject.net.DeviceId;
+import org.onosproject.net.Host;
 import org.onosproject.net.PortNumber;
 import org.onosproject.net.flow.DefaultFlowRule;
 import org.onosproject.net.flow.DefaultTrafficSelector;
@@ -45,24 +51,40 @@ import org.onosproject.net.flow.instructions.ExtensionTreatment;
 import org.onosproject.net.flow.instructions.Instruction;
 import org.onosproject.net.flow.instructions.Instructions;
 import org.onosproject.net.flow.instructions.L2ModificationInstruction;
-import org.onosproject.net.host.DefaultHostDescription;
-import org.onosproject.net.host.HostDescription;
+import org.onosproject.net.group.DefaultGroupDescription;
+import org.onosproject.net.group.DefaultGroupKey;
+import org.onosproject.net.group.Group;
+import org.onosproject.net.group.GroupBuckets;
+import org.onosproject.net.group.GroupDescription;
+import org.onosproject.net.group.GroupEvent;
+import org.onosproject.net.group.GroupKey;
+import org.onosproject.net.group.GroupListener;
+import org.onosproject.net.group.GroupService;
 import org.opencord.cordvtn.api.core.CordVtnPipeline;
 import org.opencord.cordvtn.api.core.Instance;
 import org.opencord.cordvtn.api.core.InstanceHandler;
-import org.opencord.cordvtn.api.core.InstanceService;
 import org.opencord.cordvtn.api.core.ServiceNetworkService;
 import org.opencord.cordvtn.api.net.AddressPair;
+import org.opencord.cordvtn.api.net.NetworkId;
+import org.opencord.cordvtn.api.net.PortId;
 import org.opencord.cordvtn.api.net.ServiceNetwork;
 import org.opencord.cordvtn.api.net.ServicePort;
 import org.opencord.cordvtn.api.node.CordVtnNode;
+import org.opencord.cordvtn.api.node.CordVtnNodeEvent;
+import org.opencord.cordvtn.api.node.CordVtnNodeListener;
 import org.opencord.cordvtn.api.node.CordVtnNodeService;
+import org.osgi.service.component.ComponentContext;
 
+import java.util.Dictionary;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 import java.util.stream.Collectors;
 
 import static org.onosproject.net.flow.criteria.Criterion.Type.IPV4_DST;
 import static org.onosproject.net.flow.instructions.L2ModificationInstruction.L2SubType.VLAN_PUSH;
+import static org.onosproject.net.group.DefaultGroupBucket.createIndirectGroupBucket;
 import static org.opencord.cordvtn.api.net.ServiceNetwork.NetworkType.*;
 
 /**
@@ -71,6 +93,10 @@ import static org.opencord.cordvtn.api.net.ServiceNetwork.NetworkType.*;
 @Component(immediate = true)
 public class DefaultInstanceHandler extends AbstractInstanceHandler implements InstanceHandler {
 
+    private static final String TUNNEL_GROUPS = "tunnelGroups";
+    private static final boolean DEFAULT_TUNNEL_GROUPS = false;
+    private static final String TUNNEL_GROUP_PREFIX = "tunnel-";
+
     //private final Logger log = LoggerFactory.getLogger(getClass());
     @Reference(cardinality = ReferenceCardinality.MANDATORY_UNARY)
     protected FlowRuleService flowRuleService;
@@ -85,30 +111,58 @@ public class DefaultInstanceHandler extends AbstractInstanceHandler implements I
     protected CordVtnPipeline pipeline;
 
     @Reference(cardinality = ReferenceCardinality.MANDATORY_UNARY)
-    protected InstanceService instanceService;
+    protected GroupService groupService;
+
+    @Reference(cardinality = ReferenceCardinality.MANDATORY_UNARY)
+    protected ComponentConfigService compConfigService;
+
+    @Property(name = TUNNEL_GROUPS, boolValue = DEFAULT_TUNNEL_GROUPS,
+            label = "Use an indirect group per remote node for the remote destination rules")
+    private boolean tunnelGroups = DEFAULT_TUNNEL_GROUPS;
+
+    private final CordVtnNodeListener tunnelGroupListener = new InternalNodeListener();
+    private final GroupListener groupListener = new InternalGroupListener();
+
+    // networks of which the isolation rules have been installed by this instance
+    private final Set<NetworkId> isolatedNetworks = Sets.newConcurrentHashSet();
+
+    // instances and their service ports as programmed by this instance
+    private final Map<PortId, ProgrammedInstance> programmed = Maps.newConcurrentMap();
 
     @Activate
     protected void activate() {
         netTypes = ImmutableSet.of(PRIVATE, PUBLIC, VSG);
         super.activate();
+        compConfigService.registerProperties(getClass());
+        nodeService.addListener(tunnelGroupListener);
+        groupService.addListener(groupListener);
     }
 
     @Deactivate
     protected void deactivate() {
+        groupService.removeListener(groupListener);
+        nodeService.removeListener(tunnelGroupListener);
+        compConfigService.unregisterProperties(getClass(), false);
         super.deactivate();
     }
 
+    @Modified
+    protected void modified(ComponentContext context) {
+        Dictionary<?, ?> properties = context.getProperties();
+        Boolean updatedTunnelGroups = Tools.isPropertyEnabled(properties, TUNNEL_GROUPS);
+        if (updatedTunnelGroups != null) {
+            // applies to the remote destination rules installed from now on
+            tunnelGroups = updatedTunnelGroups;
+        }
+        log.info("Modified");
+    }
+
     @Override
     public void instanceDetected(Instance instance) {
         log.info("Instance is detected or updated {}", instance);
-        if (instance.isAdditionalInstance()) {
-            return;
-        }
-
         ServiceNetwork snet = getServiceNetwork(instance);
         populateDefaultRules(instance, snet, true);
 
-        // TODO handle the case that vlan id is added and then removed
         ServicePort sport = getServicePort(instance);
         if (sport.vlanId() != null) {
             populateVlanRule(
@@ -117,28 +171,38 @@ public class DefaultInstanceHandler extends AbstractInstanceHandler implements I
                     dataPort(instance.deviceId()),
                     true);
         }
-        // FIXME don't add the existing instance again
-        sport.addressPairs().forEach(pair -> {
-            // add instance for the additional address pairs
-            addAdditionalInstance(instance, pair.ip(), pair.mac());
-        });
         Set<IpAddress> ipAddrs = sport.addressPairs().stream()
                 .map(AddressPair::ip).collect(Collectors.toSet());
         populateAddressPairRule(instance, ipAddrs, true);
+        programmed.put(instance.portId(), new ProgrammedInstance(instance, sport));
     }
 
     @Override
     public void instanceRemoved(Instance instance) {
-        if (instance.isAdditionalInstance()) {
-            return;
-        }
         log.info("Instance is removed {}", instance);
+        programmed.remove(instance.portId());
 
         ServiceNetwork snet = getServiceNetwork(instance);
+        if (!pipeline.flowRules(instance.portId()).isEmpty()) {
+            // the ledger has every rule installed for the instance, including
+            // the rules for the service port that might be already removed
+            pipeline.removeFlowRules(instance.portId());
+            // the other nodes might have installed the remote destination rules
+            // when the first instance of the network came to them
+            populateDstIpRule(instance, snet.segmentId().id(), false);
+            populateNetworkRules(instance, snet, false);
+            return;
+        }
+
+        // the ledger does not know the instance, e.g. the rules were installed
+        // before the mastership change, compute the rules again
         populateDefaultRules(instance, snet, false);
 
-        // FIXME service port might be already removed
-        ServicePort sport = getServicePort(instance);
+        ServicePort sport = snetService.servicePort(instance.portId());
+        if (sport == null) {
+            log.warn(String.format(ERR_VTN_PORT, instance));
+            return;
+        }
         if (sport.vlanId() != null) {
             populateVlanRule(
                     instance,
@@ -146,63 +210,99 @@ public class DefaultInstanceHandler extends AbstractInstanceHandler implements I
                     dataPort(instance.deviceId()),
                     false);
         }
-        boolean isOriginalInstance = !instance.isAdditionalInstance();
-        Set<IpAddress> ipAddrs = sport.addressPairs().stream()
-                .map(AddressPair::ip).collect(Collectors.toSet());
-        populateAddressPairRule(
-                instance,
-                isOriginalInstance ? ImmutableSet.of() : ipAddrs,
-                false);
+        populateAddressPairRule(instance, ImmutableSet.of(), false);
     }
 
     @Override
     public void instanceUpdated(Instance instance) {
-        if (!instance.isAdditionalInstance()) {
-            ServicePort sport = getServicePort(instance);
-            Set<MacAddress> macAddrs = sport.addressPairs().stream()
-                    .map(AddressPair::mac)
-                    .collect(Collectors.toSet());
-            hostService.getConnectedHosts(instance.host().location()).stream()
-                    .filter(h -> !h.mac().equals(instance.mac()))
-                    .filter(h -> !macAddrs.contains(h.mac()))
-                    .forEach(h -> instanceService.removeInstance(h.id()));
+        ProgrammedInstance prev = programmed.get(instance.portId());
+        if (prev != null && !isSameHost(prev.instance, instance)) {
+            // the default rules are built from the host, reinstall them all
+            log.info("Instance is updated from {}", prev.instance);
+            instanceRemoved(prev.instance);
         }
-        instanceDetected(instance);
+        reprogramInstance(instance);
     }
 
-    private void addAdditionalInstance(Instance instance, IpAddress ip, MacAddress mac) {
-        HostId hostId = HostId.hostId(mac);
-        DefaultAnnotations.Builder annotations = DefaultAnnotations.builder()
-                .set(Instance.NETWORK_TYPE, instance.netType().toString())
-                .set(Instance.NETWORK_ID, instance.netId().id())
-                .set(Instance.PORT_ID, instance.portId().id())
-                .set(Instance.ORIGINAL_HOST_ID, instance.host().id().toString())
-                .set(Instance.CREATE_TIME, String.valueOf(System.currentTimeMillis()));
+    @Override
+    public void reprogramInstance(Instance instance) {
+        ProgrammedInstance prev = programmed.get(instance.portId());
+        if (prev == null) {
+            // not programmed by this instance, e.g. after the mastership change
+            instanceDetected(instance);
+            return;
+        }
+
+        ServicePort sport = getServicePort(instance);
+        ServicePort prevPort = prev.servicePort;
+        if (!Objects.equals(prevPort.vlanId(), sport.vlanId())) {
+            log.info("VLAN of {} is changed to {}", instance, sport.vlanId());
+            PortNumber dataPort = dataPort(instance.deviceId());
+            if (prevPort.vlanId() != null) {
+                populateVlanRule(instance, prevPort.vlanId(), dataPort, false);
+            }
+            if (sport.vlanId() != null) {
+                populateVlanRule(instance, sport.vlanId(), dataPort, true);
+            }
+        }
+
+        Set<AddressPair> removed = Sets.difference(prevPort.addressPairs(), sport.addressPairs());
+        Set<AddressPair> added = Sets.difference(sport.addressPairs(), prevPort.addressPairs());
+        if (!removed.isEmpty() || !added.isEmpty()) {
+            log.info("Address pairs of {} are updated, added {} removed {}",
+                     instance, added, removed);
+            populateWanIpRules(instance, removed.stream()
+                    .map(AddressPair::ip).collect(Collectors.toSet()), false);
+            populateWanIpRules(instance, added.stream()
+                    .map(AddressPair::ip).collect(Collectors.toSet()), true);
+        }
+        programmed.put(instance.portId(), new ProgrammedInstance(instance, sport));
+    }
 
-        HostDescription hostDesc = new DefaultHostDescription(
-                mac,
-                VlanId.NONE,
-                instance.host().location(),
-                Sets.newHashSet(ip),
-                annotations.build());
+    @Override
+    protected void networkVacated(NetworkId netId) {
+        // the last instance might be removed by the other controller
+        isolatedNetworks.remove(netId);
+    }
 
-        instanceService.addInstance(hostId, hostDesc);
+    private boolean isSameHost(Instance prev, Instance instance) {
+        Host prevHost = prev.host();
+        Host host = instance.host();
+        return Objects.equals(prevHost.ipAddresses(), host.ipAddresses()) &&
+                Objects.equals(prev.netId(), instance.netId()) &&
+                Objects.equals(prevHost.location().deviceId(), host.location().deviceId()) &&
+                Objects.equals(prevHost.location().port(), host.location().port());
     }
 
     private void populateDefaultRules(Instance instance, ServiceNetwork snet, boolean install) {
         long vni = snet.segmentId().id();
-        Ip4Prefix serviceIpRange = snet.subnet().getIp4Prefix();
 
         populateInPortRule(instance, install, vni);
         populateDstIpRule(instance, vni, install);
         populateTunnelInRule(instance, vni, install);
+        populateNetworkRules(instance, snet, install);
+    }
+
+    private void populateNetworkRules(Instance instance, ServiceNetwork snet, boolean install) {
+        long vni = snet.segmentId().id();
+        Ip4Prefix serviceIpRange = snet.subnet().getIp4Prefix();
+
+        if (!hasLocalPeers(instance)) {
+            // the first instance of the network comes to the node or the last one leaves
+            populateRemoteDstIpRules(snet, instance.deviceId(), install);
+            populateDirectAccessRule(snet.id(), instance.deviceId(), vni,
+                                     serviceIpRange, serviceIpRange, install);
+        }
 
+        // keep the isolation rule on every node, the instances of the other
+        // networks can be anywhere; install it once for the network
         if (install) {
-            populateDirectAccessRule(vni, serviceIpRange, serviceIpRange, true);
-            populateServiceIsolationRule(serviceIpRange, true);
-        } else if (getInstances(snet.id()).isEmpty()) {
-            populateDirectAccessRule(vni, serviceIpRange, serviceIpRange, false);
-            populateServiceIsolationRule(serviceIpRange, false);
+            if (isolatedNetworks.add(snet.id())) {
+                populateServiceIsolationRule(snet.id(), serviceIpRange, true);
+            }
+        } else if (getHostingDevices(snet.id()).isEmpty()) {
+            isolatedNetworks.remove(snet.id());
+            populateServiceIsolationRule(snet.id(), serviceIpRange, false);
         }
     }
 
@@ -229,7 +329,7 @@ public class DefaultInstanceHandler extends AbstractInstanceHandler implements I
                 .makePermanent()
                 .build();
 
-        pipeline.processFlowRule(install, flowRule);
+        pipeline.processFlowRules(install, ImmutableSet.of(flowRule), instance.portId());
 
         selector = DefaultTrafficSelector.builder()
                 .matchInPort(instance.portNumber())
@@ -250,15 +350,13 @@ public class DefaultInstanceHandler extends AbstractInstanceHandler implements I
                 .makePermanent()
                 .build();
 
-        pipeline.processFlowRule(install, flowRule);
+        pipeline.processFlowRules(install, ImmutableSet.of(flowRule), instance.portId());
 
         log.info("InPortRule of Instance: " + instance +
                          "have been installed, set metadata as the value of VNI: " + vni);
     }
 
     private void populateDstIpRule(Instance instance, long vni, boolean install) {
-        Ip4Address tunnelIp = dataIp(instance.deviceId()).getIp4Address();
-
         TrafficSelector selector = DefaultTrafficSelector.builder()
                 .matchEthType(Ethernet.TYPE_IPV4)
                 .matchIPDst(instance.ipAddress().toIpPrefix())
@@ -280,38 +378,98 @@ public class DefaultInstanceHandler extends AbstractInstanceHandler implements I
                 .makePermanent()
                 .build();
 
-        pipeline.processFlowRule(install, flowRule);
-
+        // only the nodes hosting the instances of the same network need the
+        // remote destination rule, try all nodes on removal since the rule
+        // might be installed when the node had the instances
+        Set<DeviceId> devices = install ? getHostingDevices(instance.netId()) : null;
+        List<FlowRule> rules = Lists.newArrayList(flowRule);
         for (CordVtnNode node : nodeService.completeNodes()) {
-            if (node.integrationBridgeId().equals(instance.deviceId())) {
+            DeviceId deviceId = node.integrationBridgeId();
+            if (deviceId.equals(instance.deviceId()) ||
+                    (devices != null && !devices.contains(deviceId))) {
                 continue;
             }
-
-            ExtensionTreatment tunnelDst =
-                    tunnelDstTreatment(node.integrationBridgeId(), tunnelIp);
-            if (tunnelDst == null) {
-                continue;
+            FlowRule remoteRule = remoteDstIpRule(instance, vni, deviceId, install);
+            if (remoteRule != null) {
+                rules.add(remoteRule);
             }
+        }
+        pipeline.processFlowRules(install, rules, instance.portId());
+    }
+
+    /**
+     * Installs or removes the destination rules of the instances of the given
+     * network hosted by the other nodes on the supplied device. Called when the
+     * first instance of the network comes to or the last one leaves the device.
+     *
+     * @param snet     service network
+     * @param deviceId device identifier
+     * @param install  install or remove
+     */
+    private void populateRemoteDstIpRules(ServiceNetwork snet, DeviceId deviceId,
+                                          boolean install) {
+        long vni = snet.segmentId().id();
+        getHostingDevices(snet.id()).stream()
+                .filter(remoteDeviceId -> !remoteDeviceId.equals(deviceId))
+                .flatMap(remoteDeviceId -> getInstances(snet.id(), remoteDeviceId).stream())
+                .forEach(instance -> {
+                    FlowRule remoteRule = remoteDstIpRule(instance, vni, deviceId, install);
+                    if (remoteRule != null) {
+                        pipeline.processFlowRules(install, ImmutableSet.of(remoteRule),
+                                                  instance.portId());
+                    }
+                });
+    }
 
+    private FlowRule remoteDstIpRule(Instance instance, long vni, DeviceId deviceId,
+                                     boolean install) {
+        TrafficSelector selector = DefaultTrafficSelector.builder()
+                .matchEthType(Ethernet.TYPE_IPV4)
+                .matchIPDst(instance.ipAddress().toIpPrefix())
+                .matchMetadata(vni)
+                .build();
+
+        CordVtnNode instanceNode = nodeService.node(instance.deviceId());
+        if (instanceNode == null) {
+            log.debug("Failed to get node for {}", instance.deviceId());
+            return null;
+        }
+
+        // rule equality does not cover treatment, do not create a group for removal;
+        // the rule goes to the tunnel directly until the group is added
+        GroupId groupId = tunnelGroups && install ?
+                getTunnelGroup(deviceId, instanceNode) : null;
+        TrafficTreatment treatment;
+        if (groupId != null) {
             treatment = DefaultTrafficTreatment.builder()
                     .setEthDst(instance.mac())
                     .setTunnelId(vni)
-                    .extension(tunnelDst, node.integrationBridgeId())
-                    .setOutput(tunnelPort(node.integrationBridgeId()))
+                    .group(groupId)
                     .build();
+        } else {
+            ExtensionTreatment tunnelDst = tunnelDstTreatment(
+                    deviceId, instanceNode.dataIp().ip().getIp4Address());
+            if (tunnelDst == null) {
+                return null;
+            }
 
-            flowRule = DefaultFlowRule.builder()
-                    .fromApp(appId)
-                    .withSelector(selector)
-                    .withTreatment(treatment)
-                    .withPriority(CordVtnPipeline.PRIORITY_DEFAULT)
-                    .forDevice(node.integrationBridgeId())
-                    .forTable(CordVtnPipeline.TABLE_DST)
-                    .makePermanent()
+            treatment = DefaultTrafficTreatment.builder()
+                    .setEthDst(instance.mac())
+                    .setTunnelId(vni)
+                    .extension(tunnelDst, deviceId)
+                    .setOutput(tunnelPort(deviceId))
                     .build();
-
-            pipeline.processFlowRule(install, flowRule);
         }
+
+        return DefaultFlowRule.builder()
+                .fromApp(appId)
+                .withSelector(selector)
+                .withTreatment(treatment)
+                .withPriority(CordVtnPipeline.PRIORITY_DEFAULT)
+                .forDevice(deviceId)
+                .forTable(CordVtnPipeline.TABLE_DST)
+                .makePermanent()
+                .build();
     }
 
     private void populateTunnelInRule(Instance instance, long vni, boolean install) {
@@ -334,10 +492,12 @@ public class DefaultInstanceHandler extends AbstractInstanceHandler implements I
                 .makePermanent()
                 .build();
 
-        pipeline.processFlowRule(install, flowRule);
+        pipeline.processFlowRules(install, ImmutableSet.of(flowRule), instance.portId());
     }
 
-    private void populateDirectAccessRule(long vni, Ip4Prefix srcRange, Ip4Prefix dstRange, boolean install) {
+    private void populateDirectAccessRule(NetworkId netId, DeviceId deviceId, long vni,
+                                          Ip4Prefix srcRange, Ip4Prefix dstRange,
+                                          boolean install) {
         TrafficSelector selector = DefaultTrafficSelector.builder()
                 .matchEthType(Ethernet.TYPE_IPV4)
                 .matchMetadata(vni)
@@ -349,23 +509,28 @@ public class DefaultInstanceHandler extends AbstractInstanceHandler implements I
                 .transition(CordVtnPipeline.TABLE_DST)
                 .build();
 
+        FlowRule flowRuleDirect = DefaultFlowRule.builder()
+                .fromApp(appId)
+                .withSelector(selector)
+                .withTreatment(treatment)
+                .withPriority(CordVtnPipeline.PRIORITY_DEFAULT)
+                .forDevice(deviceId)
+                .forTable(CordVtnPipeline.TABLE_ACCESS)
+                .makePermanent()
+                .build();
 
-        nodeService.completeNodes().forEach(node -> {
-            FlowRule flowRuleDirect = DefaultFlowRule.builder()
-                    .fromApp(appId)
-                    .withSelector(selector)
-                    .withTreatment(treatment)
-                    .withPriority(CordVtnPipeline.PRIORITY_DEFAULT)
-                    .forDevice(node.integrationBridgeId())
-                    .forTable(CordVtnPipeline.TABLE_ACCESS)
-                    .makePermanent()
-                    .build();
+        pipeline.processFlowRules(install, ImmutableSet.of(flowRuleDirect), netId);
+    }
 
-            pipeline.processFlowRule(install, flowRuleDirect);
-        });
+    private void populateServiceIsolationRule(NetworkId netId, Ip4Prefix dstRange,
+                                              boolean install) {
+        List<FlowRule> rules = nodeService.completeNodes().stream()
+                .map(node -> serviceIsolationRule(dstRange, node.integrationBridgeId()))
+                .collect(Collectors.toList());
+        pipeline.processFlowRules(install, rules, netId);
     }
 
-    private void populateServiceIsolationRule(Ip4Prefix dstRange, boolean install) {
+    private FlowRule serviceIsolationRule(Ip4Prefix dstRange, DeviceId deviceId) {
         TrafficSelector selector = DefaultTrafficSelector.builder()
                 .matchEthType(Ethernet.TYPE_IPV4)
                 .matchIPDst(dstRange)
@@ -375,19 +540,28 @@ public class DefaultInstanceHandler extends AbstractInstanceHandler implements I
                 .drop()
                 .build();
 
-        nodeService.completeNodes().forEach(node -> {
-            FlowRule flowRuleDirect = DefaultFlowRule.builder()
-                    .fromApp(appId)
-                    .withSelector(selector)
-                    .withTreatment(treatment)
-                    .withPriority(CordVtnPipeline.PRIORITY_LOW)
-                    .forDevice(node.integrationBridgeId())
-                    .forTable(CordVtnPipeline.TABLE_ACCESS)
-                    .makePermanent()
-                    .build();
+        return DefaultFlowRule.builder()
+                .fromApp(appId)
+                .withSelector(selector)
+                .withTreatment(treatment)
+                .withPriority(CordVtnPipeline.PRIORITY_LOW)
+                .forDevice(deviceId)
+                .forTable(CordVtnPipeline.TABLE_ACCESS)
+                .makePermanent()
+                .build();
+    }
 
-            pipeline.processFlowRule(install, flowRuleDirect);
-        });
+    private void populateIsolationRules(CordVtnNode node) {
+        // installs each in order with the instance events of the network
+        isolatedNetworks.forEach(netId -> eventExecutor.execute(partitionKey(netId), () -> {
+            ServiceNetwork snet = snetService.serviceNetwork(netId);
+            if (snet == null || !isolatedNetworks.contains(netId)) {
+                return;
+            }
+            FlowRule flowRule = serviceIsolationRule(
+                    snet.subnet().getIp4Prefix(), node.integrationBridgeId());
+            pipeline.processFlowRules(true, ImmutableSet.of(flowRule), netId);
+        }));
     }
 
     private void populateVlanRule(Instance instance, VlanId vlanId, PortNumber dataPort,
@@ -411,7 +585,7 @@ public class DefaultInstanceHandler extends AbstractInstanceHandler implements I
                 .makePermanent()
                 .build();
 
-        pipeline.processFlowRule(install, flowRule);
+        pipeline.processFlowRules(install, ImmutableSet.of(flowRule), instance.portId());
 
         selector = DefaultTrafficSelector.builder()
                 .matchInPort(instance.portNumber())
@@ -432,14 +606,45 @@ public class DefaultInstanceHandler extends AbstractInstanceHandler implements I
                 .makePermanent()
                 .build();
 
-        pipeline.processFlowRule(install, flowRule);
+        pipeline.processFlowRules(install, ImmutableSet.of(flowRule), instance.portId());
     }
 
     private void populateAddressPairRule(Instance instance, Set<IpAddress> ipAddrs,
                                          boolean install) {
+        populateWanIpRules(instance, ipAddrs, install);
+
+        // remove downstream flow rules for the vSG not shown in vsgWanIps,
+        // look up the device only when the ledger does not know the instance
+        Iterable<? extends FlowRule> candidates = pipeline.flowRules(instance.portId());
+        if (!candidates.iterator().hasNext()) {
+            candidates = flowRuleService.getFlowEntries(instance.deviceId());
+        }
+        List<FlowRule> staleRules = Lists.newArrayList();
+        for (FlowRule rule : candidates) {
+            if (!rule.deviceId().equals(instance.deviceId()) ||
+                    rule.appId() != appId.id() ||
+                    rule.tableId() != CordVtnPipeline.TABLE_DST) {
+                continue;
+            }
+            PortNumber output = getOutputFromTreatment(rule);
+            if (output == null || !output.equals(instance.portNumber()) ||
+                    !isVlanPushFromTreatment(rule)) {
+                continue;
+            }
+
+            IpPrefix dstIp = getDstIpFromSelector(rule);
+            if (dstIp != null && !ipAddrs.contains(dstIp.address())) {
+                staleRules.add(rule);
+            }
+        }
+        pipeline.processFlowRules(false, staleRules, instance.portId());
+    }
+
+    private void populateWanIpRules(Instance instance, Set<IpAddress> wanIps,
+                                    boolean install) {
         // for traffic coming from WAN, tag 500 and take through the vSG VM
         // based on destination ip
-        ipAddrs.forEach(wanIp -> {
+        wanIps.forEach(wanIp -> {
             // for traffic coming from WAN, tag 500 and take through the vSG VM
             TrafficSelector downstream = DefaultTrafficSelector.builder()
                     .matchEthType(Ethernet.TYPE_IPV4)
@@ -463,25 +668,164 @@ public class DefaultInstanceHandler extends AbstractInstanceHandler implements I
                     .makePermanent()
                     .build();
 
-            pipeline.processFlowRule(install, downstreamFlowRule);
+            pipeline.processFlowRules(install, ImmutableSet.of(downstreamFlowRule),
+                    instance.portId());
         });
+    }
 
-        // remove downstream flow rules for the vSG not shown in vsgWanIps
-        for (FlowRule rule : flowRuleService.getFlowRulesById(appId)) {
-            if (!rule.deviceId().equals(instance.deviceId())) {
-                continue;
-            }
-            PortNumber output = getOutputFromTreatment(rule);
-            if (output == null || !output.equals(instance.portNumber()) ||
-                    !isVlanPushFromTreatment(rule)) {
-                continue;
-            }
+    /**
+     * Returns the indirect group of the given device sending packets to the
+     * supplied remote node through the tunnel. Requests the group if it does
+     * not exist yet, the remote destination rules are pointed to the group
+     * once it is added to the device.
+     *
+     * @param deviceId   device identifier
+     * @param remoteNode remote cordvtn node
+     * @return group identifier; null if the group is not added yet
+     */
+    private GroupId getTunnelGroup(DeviceId deviceId, CordVtnNode remoteNode) {
+        GroupKey groupKey = getTunnelGroupKey(remoteNode);
+        Group group = groupService.getGroup(deviceId, groupKey);
+        if (group != null) {
+            return group.state() == Group.GroupState.ADDED ? group.id() : null;
+        }
 
-            IpPrefix dstIp = getDstIpFromSelector(rule);
-            if (dstIp != null && !ipAddrs.contains(dstIp.address())) {
-                pipeline.processFlowRule(false, rule);
-            }
+        GroupId groupId = getTunnelGroupId(deviceId, remoteNode);
+        boolean taken = Tools.stream(groupService.getGroups(deviceId, appId))
+                .anyMatch(existing -> existing.id().equals(groupId));
+        if (taken) {
+            log.warn("Group ID {} is in use on {}, tunnel group to {} is not used",
+                     groupId, deviceId, remoteNode.hostname());
+            return null;
+        }
+
+        GroupBuckets buckets = getTunnelGroupBuckets(deviceId, remoteNode);
+        if (buckets == null) {
+            return null;
+        }
+        GroupDescription groupDescription = new DefaultGroupDescription(
+                deviceId,
+                GroupDescription.Type.INDIRECT,
+                buckets,
+                groupKey,
+                groupId.id(),
+                appId);
+
+        groupService.addGroup(groupDescription);
+        return null;
+    }
+
+    /**
+     * Installs the remote destination rules of the instances on the given
+     * remote node to the supplied device again, so that the rules installed
+     * before the tunnel group is added are pointed to the group.
+     *
+     * @param deviceId   device identifier
+     * @param remoteNode remote cordvtn node
+     */
+    private void populateTunnelGroupRules(DeviceId deviceId, CordVtnNode remoteNode) {
+        DeviceId remoteDeviceId = remoteNode.integrationBridgeId();
+        membership.networks().stream()
+                .filter(netId -> getHostingDevices(netId).contains(deviceId))
+                .map(snetService::serviceNetwork)
+                .filter(snet -> snet != null && netTypes.contains(snet.type()))
+                .forEach(snet -> {
+                    long vni = snet.segmentId().id();
+                    getInstances(snet.id(), remoteDeviceId).forEach(instance -> {
+                        FlowRule remoteRule = remoteDstIpRule(instance, vni, deviceId, true);
+                        if (remoteRule != null) {
+                            pipeline.processFlowRules(true, ImmutableSet.of(remoteRule),
+                                                      instance.portId());
+                        }
+                    });
+                });
+    }
+
+    /**
+     * Removes the remote destination rules of the given device jumping to the
+     * supplied tunnel group. The rules are found from the ledger of the
+     * instances on the remote node.
+     *
+     * @param deviceId       device identifier
+     * @param remoteDeviceId device identifier of the remote node
+     * @param groupId        tunnel group identifier
+     */
+    private void removeTunnelGroupRules(DeviceId deviceId, DeviceId remoteDeviceId,
+                                        GroupId groupId) {
+        membership.networks().stream()
+                .flatMap(netId -> getInstances(netId, remoteDeviceId).stream())
+                .forEach(instance -> {
+                    Set<FlowRule> groupRules = pipeline.flowRules(instance.portId()).stream()
+                            .filter(rule -> rule.deviceId().equals(deviceId))
+                            .filter(rule -> isGroupFromTreatment(rule, groupId))
+                            .collect(Collectors.toSet());
+                    pipeline.processFlowRules(false, groupRules, instance.portId());
+                });
+    }
+
+    private void updateTunnelGroups(CordVtnNode remoteNode) {
+        GroupKey groupKey = getTunnelGroupKey(remoteNode);
+        nodeService.completeNodes().stream()
+                .map(CordVtnNode::integrationBridgeId)
+                .filter(deviceId -> !deviceId.equals(remoteNode.integrationBridgeId()))
+                .filter(deviceId -> mastershipService.isLocalMaster(deviceId))
+                .forEach(deviceId -> {
+                    Group group = groupService.getGroup(deviceId, groupKey);
+                    GroupBuckets buckets = getTunnelGroupBuckets(deviceId, remoteNode);
+                    if (group == null || buckets == null ||
+                            group.buckets().equals(buckets)) {
+                        return;
+                    }
+                    groupService.setBucketsForGroup(deviceId, groupKey, buckets,
+                                                    groupKey, appId);
+                    log.debug("Updated tunnel group to {} on {}",
+                              remoteNode.dataIp().ip(), deviceId);
+                });
+    }
+
+    private void removeTunnelGroups(CordVtnNode remoteNode) {
+        GroupKey groupKey = getTunnelGroupKey(remoteNode);
+        nodeService.completeNodes().stream()
+                .map(CordVtnNode::integrationBridgeId)
+                .filter(deviceId -> !deviceId.equals(remoteNode.integrationBridgeId()))
+                .filter(deviceId -> mastershipService.isLocalMaster(deviceId))
+                .forEach(deviceId -> {
+                    Group group = groupService.getGroup(deviceId, groupKey);
+                    if (group == null) {
+                        return;
+                    }
+                    // no rule should be left jumping to the group removed
+                    removeTunnelGroupRules(deviceId, remoteNode.integrationBridgeId(),
+                                           group.id());
+                    groupService.removeGroup(deviceId, groupKey, appId);
+                    log.debug("Removed tunnel group to {} on {}",
+                              remoteNode.hostname(), deviceId);
+                });
+    }
+
+    private GroupBuckets getTunnelGroupBuckets(DeviceId deviceId, CordVtnNode remoteNode) {
+        ExtensionTreatment tunnelDst = tunnelDstTreatment(
+                deviceId, remoteNode.dataIp().ip().getIp4Address());
+        PortNumber tunnelPort = tunnelPort(deviceId);
+        if (tunnelDst == null || tunnelPort == null) {
+            return null;
         }
+
+        TrafficTreatment treatment = DefaultTrafficTreatment.builder()
+                .extension(tunnelDst, deviceId)
+                .setOutput(tunnelPort)
+                .build();
+        return new GroupBuckets(ImmutableList.of(createIndirectGroupBucket(treatment)));
+    }
+
+    private GroupId getTunnelGroupId(DeviceId deviceId, CordVtnNode remoteNode) {
+        return new GroupId(TUNNEL_GROUP_ID_BASE |
+                                   (Objects.hash(remoteNode.hostname(), deviceId) & GROUP_ID_MASK));
+    }
+
+    private GroupKey getTunnelGroupKey(CordVtnNode remoteNode) {
+        // keyed by the hostname so that the group survives data IP changes
+        return new DefaultGroupKey((TUNNEL_GROUP_PREFIX + remoteNode.hostname()).getBytes());
     }
 
     private PortNumber getOutputFromTreatment(FlowRule flowRule) {
@@ -512,4 +856,68 @@ public class DefaultInstanceHandler extends AbstractInstanceHandler implements I
                 .findAny()
                 .isPresent();
     }
+
+    private boolean isGroupFromTreatment(FlowRule flowRule, GroupId groupId) {
+        return flowRule.treatment().allInstructions().stream()
+                .filter(inst -> inst instanceof Instructions.GroupInstruction)
+                .anyMatch(inst -> ((Instructions.GroupInstruction) inst).groupId().equals(groupId));
+    }
+
+    private class InternalNodeListener implements CordVtnNodeListener {
+
+        @Override
+        public void event(CordVtnNodeEvent event) {
+            switch (event.type()) {
+                case NODE_UPDATED:
+                    // data IP of the node might be changed
+                    eventExecutor.execute(partitionKey(event.subject().integrationBridgeId()),
+                                          () -> updateTunnelGroups(event.subject()));
+                    break;
+                case NODE_COMPLETE:
+                    eventExecutor.execute(partitionKey(event.subject().integrationBridgeId()), () -> {
+                        updateTunnelGroups(event.subject());
+                        populateIsolationRules(event.subject());
+                    });
+                    break;
+                case NODE_REMOVED:
+                    eventExecutor.execute(partitionKey(event.subject().integrationBridgeId()),
+                                          () -> removeTunnelGroups(event.subject()));
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
+    private class InternalGroupListener implements GroupListener {
+
+        @Override
+        public boolean isRelevant(GroupEvent event) {
+            Group group = event.subject();
+            return tunnelGroups && event.type() == GroupEvent.Type.GROUP_ADDED &&
+                    appId.equals(group.appId()) &&
+                    mastershipService.isLocalMaster(group.deviceId());
+        }
+
+        @Override
+        public void event(GroupEvent event) {
+            Group group = event.subject();
+            nodeService.completeNodes().stream()
+                    .filter(node -> getTunnelGroupKey(node).equals(group.appCookie()))
+                    .findAny()
+                    .ifPresent(remoteNode -> eventExecutor.execute(
+                            partitionKey(group.deviceId()),
+                            () -> populateTunnelGroupRules(group.deviceId(), remoteNode)));
+        }
+    }
+
+    private static final class ProgrammedInstance {
+        private final Instance instance;
+        private final ServicePort servicePort;
+
+        private ProgrammedInstance(Instance instance, ServicePort servicePort) {
+            this.instance = instance;
+            this.servicePort = servicePort;
+        }
+    }
 }
@@ -15,26 +15,38 @@
  */
 package org.opencord.cordvtn.impl.handler;
 
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.primitives.Ints;
 import org.apache.felix.scr.annotations.Activate;
 import org.apache.felix.scr.annotations.Component;
 import org.apache.felix.scr.annotations.Deactivate;
+import org.apache.felix.scr.annotations.Modified;
+import org.apache.felix.scr.annotations.Property;
 import org.apache.felix.scr.annotations.Reference;
 import org.apache.felix.scr.annotations.ReferenceCardinality;
 import org.apache.felix.scr.annotations.Service;
 import org.onlab.packet.Ethernet;
-import org.onlab.packet.Ip4Address;
 import org.onlab.packet.IpAddress;
 import org.onlab.packet.IpPrefix;
+import org.onlab.packet.MacAddress;
+import org.onlab.util.Tools;
+import org.onosproject.cfg.ComponentConfigService;
 import org.onosproject.cluster.ClusterService;
 import org.onosproject.cluster.LeadershipService;
 import org.onosproject.cluster.NodeId;
 import org.onosproject.core.GroupId;
+import org.onosproject.net.ConnectPoint;
 import org.onosproject.net.DeviceId;
+import org.onosproject.net.Port;
 import org.onosproject.net.PortNumber;
+import org.onosproject.net.device.DeviceEvent;
+import org.onosproject.net.device.DeviceListener;
 import org.onosproject.net.flow.DefaultFlowRule;
 import org.onosproject.net.flow.DefaultTrafficSelector;
 import org.onosproject.net.flow.DefaultTrafficTreatment;
@@ -42,6 +54,7 @@ import org.onosproject.net.flow.FlowRule;
 import org.onosproject.net.flow.TrafficSelector;
 import org.onosproject.net.flow.TrafficTreatment;
 import org.onosproject.net.flow.instructions.ExtensionTreatment;
+import org.onosproject.net.flow.instructions.L2ModificationInstruction.ModEtherInstruction;
 import org.onosproject.net.group.DefaultGroupDescription;
 import org.onosproject.net.group.DefaultGroupKey;
 import org.onosproject.net.group.Group;
@@ -60,14 +73,24 @@ import org.opencord.cordvtn.api.net.ServiceNetwork;
 import org.opencord.cordvtn.api.net.ServiceNetwork.DependencyType;
 import org.opencord.cordvtn.api.node.CordVtnNode;
 import org.opencord.cordvtn.api.node.CordVtnNodeService;
+import org.osgi.service.component.ComponentContext;
 import org.slf4j.Logger;
 
+import java.util.Comparator;
+import java.util.Dictionary;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
 import java.util.stream.Collectors;
 
+import static java.util.concurrent.Executors.newFixedThreadPool;
+import static org.onlab.util.Tools.groupedThreads;
+import static org.onosproject.net.device.DeviceEvent.Type.PORT_REMOVED;
+import static org.onosproject.net.device.DeviceEvent.Type.PORT_UPDATED;
+import static org.onosproject.net.flow.instructions.L2ModificationInstruction.L2SubType.ETH_DST;
 import static org.onosproject.net.group.DefaultGroupBucket.createSelectGroupBucket;
 import static org.opencord.cordvtn.api.core.CordVtnPipeline.*;
 import static org.opencord.cordvtn.api.net.ServiceNetwork.DependencyType.BIDIRECTIONAL;
@@ -84,6 +107,12 @@ public class DependencyHandler extends AbstractInstanceHandler {
     protected final Logger log = getLogger(getClass());
 
     private static final String ERR_NET_FAIL = "Failed to get VTN network ";
+    private static final int BUCKET_THREADS = 4;
+    private static final String LOCAL_PROVIDER_WEIGHT = "localProviderWeight";
+    private static final int DEFAULT_LOCAL_PROVIDER_WEIGHT = 1;
+    private static final int REMOTE_PROVIDER_WEIGHT = 1;
+    private static final String AGGREGATE_ACCESS_RULES = "aggregateAccessRules";
+    private static final boolean DEFAULT_AGGREGATE_ACCESS_RULES = false;
     private static final String ADDED = "Added ";
     private static final String REMOVED = "Removed ";
 
@@ -105,7 +134,26 @@ public class DependencyHandler extends AbstractInstanceHandler {
     @Reference(cardinality = ReferenceCardinality.MANDATORY_UNARY)
     protected CordVtnPipeline pipeline;
 
+    @Reference(cardinality = ReferenceCardinality.MANDATORY_UNARY)
+    protected ComponentConfigService compConfigService;
+
+    @Property(name = LOCAL_PROVIDER_WEIGHT, intValue = DEFAULT_LOCAL_PROVIDER_WEIGHT,
+            label = "Weight of the provider group buckets for the provider instances " +
+                    "on the same node, relative to the weight 1 of the remote ones")
+    // one weight for all the local provider instances, the buckets are picked
+    // by the switch hash; the weights per instance and the bucket selection
+    // stable over the bucket changes are not supported
+    private int localProviderWeight = DEFAULT_LOCAL_PROVIDER_WEIGHT;
+
+    @Property(name = AGGREGATE_ACCESS_RULES, boolValue = DEFAULT_AGGREGATE_ACCESS_RULES,
+            label = "Install the direct access rules of each network for the aggregated " +
+                    "prefixes of its peer subnets instead of one rule per dependency")
+    private boolean aggregateAccessRules = DEFAULT_AGGREGATE_ACCESS_RULES;
+
     private final ServiceNetworkListener snetListener = new InternalServiceNetworkListener();
+    private final DeviceListener deviceListener = new InternalDeviceListener();
+    private final ExecutorService bucketExecutor = newFixedThreadPool(
+            BUCKET_THREADS, groupedThreads(getClass().getSimpleName(), "bucket-%d", log));
     private NodeId localNodeId;
 
     @Activate
@@ -115,15 +163,51 @@ public class DependencyHandler extends AbstractInstanceHandler {
         localNodeId = clusterService.getLocalNode().id();
         leadershipService.runForLeadership(appId.name());
         snetService.addListener(snetListener);
+        deviceService.addListener(deviceListener);
+        compConfigService.registerProperties(getClass());
     }
 
     @Deactivate
     protected void deactivate() {
+        compConfigService.unregisterProperties(getClass(), false);
+        deviceService.removeListener(deviceListener);
         super.deactivate();
         snetService.removeListener(snetListener);
+        bucketExecutor.shutdown();
         leadershipService.withdraw(appId.name());
     }
 
+    @Modified
+    protected void modified(ComponentContext context) {
+        Dictionary<?, ?> properties = context.getProperties();
+        String updatedWeight = Tools.get(properties, LOCAL_PROVIDER_WEIGHT);
+        if (!Strings.isNullOrEmpty(updatedWeight)) {
+            // an invalid weight keeps the previous one, the other properties
+            // are still applied
+            Integer weight = Ints.tryParse(updatedWeight.trim());
+            if (weight == null || weight <= 0 || weight > Short.MAX_VALUE) {
+                log.warn("Ignored invalid {} {}, keeping {}",
+                         LOCAL_PROVIDER_WEIGHT, updatedWeight, localProviderWeight);
+            } else if (weight != localProviderWeight) {
+                localProviderWeight = weight;
+                eventExecutor.execute(this::refreshProviderGroups);
+            }
+        }
+        Boolean updatedAggregate = Tools.isPropertyEnabled(properties, AGGREGATE_ACCESS_RULES);
+        if (updatedAggregate != null && updatedAggregate != aggregateAccessRules) {
+            boolean wasAggregated = aggregateAccessRules;
+            aggregateAccessRules = updatedAggregate;
+            eventExecutor.execute(() -> refreshAccessRules(wasAggregated));
+        }
+        log.info("Modified");
+    }
+
+    @Override
+    protected Object partitionKey(Object id) {
+        // provider groups and access rules are shared by the networks
+        return null;
+    }
+
     @Override
     public void instanceDetected(Instance instance) {
         ServiceNetwork snet = snetService.serviceNetwork(instance.netId());
@@ -135,7 +219,10 @@ public class DependencyHandler extends AbstractInstanceHandler {
             updateSubscriberInstances(snet, instance, true);
         }
         // TODO check if subscribers on this network
-        updateProviderInstances(snet);
+        updateProviderInstance(snet, instance, true);
+        if (!hasLocalPeers(instance)) {
+            populateLocalAccessRules(snet, instance.deviceId(), true);
+        }
     }
 
     @Override
@@ -149,7 +236,10 @@ public class DependencyHandler extends AbstractInstanceHandler {
             updateSubscriberInstances(snet, instance, false);
         }
         // TODO check if subscribers on this network and remove group if unused
-        updateProviderInstances(snet);
+        updateProviderInstance(snet, instance, false);
+        if (!hasLocalPeers(instance)) {
+            populateLocalAccessRules(snet, instance.deviceId(), false);
+        }
     }
 
     private void dependencyAdded(ServiceNetwork subscriber, ServiceNetwork provider,
@@ -171,70 +261,147 @@ public class DependencyHandler extends AbstractInstanceHandler {
                  provider.name(), type.name());
     }
 
-    private void updateProviderInstances(ServiceNetwork provider) {
-        Set<DeviceId> devices = nodeService.completeNodes().stream()
-                .map(CordVtnNode::integrationBridgeId)
-                .collect(Collectors.toSet());
-
+    /**
+     * Adds or removes the bucket of the given instance to or from the group of
+     * the provider network on each device having the group, in parallel.
+     *
+     * @param provider   provider network
+     * @param instance   provider instance
+     * @param isDetected true if the instance is detected or updated
+     */
+    private void updateProviderInstance(ServiceNetwork provider, Instance instance,
+                                        boolean isDetected) {
         GroupKey groupKey = getGroupKey(provider.id());
-        for (DeviceId deviceId : devices) {
-            Group group = groupService.getGroup(deviceId, groupKey);
-            if (group == null) {
-                continue;
-            }
-            List<GroupBucket> oldBuckets = group.buckets().buckets();
-            List<GroupBucket> newBuckets = getProviderGroupBuckets(
-                    deviceId,
-                    provider.segmentId().id(),
-                    getInstances(provider.id())).buckets();
-            if (oldBuckets.equals(newBuckets)) {
-                continue;
-            }
+        long vni = provider.segmentId().id();
+        CompletableFuture<?>[] updates = nodeService.completeNodes().stream()
+                .map(node -> CompletableFuture.runAsync(() -> updateProviderBucket(
+                        node.integrationBridgeId(), groupKey, vni, instance, isDetected),
+                        bucketExecutor))
+                .toArray(CompletableFuture[]::new);
+        CompletableFuture.allOf(updates).join();
+    }
 
-            List<GroupBucket> bucketsToRemove = Lists.newArrayList(oldBuckets);
-            bucketsToRemove.removeAll(newBuckets);
-            if (!bucketsToRemove.isEmpty()) {
-                groupService.removeBucketsFromGroup(
-                        deviceId,
-                        groupKey,
-                        new GroupBuckets(bucketsToRemove),
-                        groupKey, appId);
-                log.debug("Removed buckets from provider({}) group on {}: {}",
-                          provider.id(), deviceId, bucketsToRemove);
-            }
+    private void updateProviderBucket(DeviceId deviceId, GroupKey groupKey, long vni,
+                                      Instance instance, boolean isDetected) {
+        Group group = groupService.getGroup(deviceId, groupKey);
+        if (group == null) {
+            return;
+        }
 
-            List<GroupBucket> bucketsToAdd = Lists.newArrayList(newBuckets);
-            bucketsToAdd.removeAll(oldBuckets);
-            if (!bucketsToAdd.isEmpty()) {
-                groupService.addBucketsToGroup(
-                        deviceId,
-                        groupKey,
-                        new GroupBuckets(bucketsToAdd),
-                        groupKey, appId);
-                log.debug("Added buckets to provider({}) group on {}: {}",
-                          provider.id(), deviceId, bucketsToAdd);
-            }
+        // the existing bucket of the instance might be stale if it's updated or moved
+        GroupBucket newBucket = isDetected ?
+                getProviderGroupBucket(deviceId, vni, instance) : null;
+        List<GroupBucket> bucketsToRemove = group.buckets().buckets().stream()
+                .filter(bucket -> Objects.equals(instance.mac(), getEthDst(bucket)))
+                .filter(bucket -> !bucket.equals(newBucket))
+                .collect(Collectors.toList());
+        if (!bucketsToRemove.isEmpty()) {
+            groupService.removeBucketsFromGroup(
+                    deviceId,
+                    groupKey,
+                    new GroupBuckets(bucketsToRemove),
+                    groupKey, appId);
+            log.debug("Removed buckets from provider({}) group on {}: {}",
+                      instance.netId(), deviceId, bucketsToRemove);
         }
+
+        if (newBucket != null && !group.buckets().buckets().contains(newBucket)) {
+            groupService.addBucketsToGroup(
+                    deviceId,
+                    groupKey,
+                    new GroupBuckets(ImmutableList.of(newBucket)),
+                    groupKey, appId);
+            log.debug("Added buckets to provider({}) group on {}: {}",
+                      instance.netId(), deviceId, newBucket);
+        }
+    }
+
+    private MacAddress getEthDst(GroupBucket bucket) {
+        return bucket.treatment().allInstructions().stream()
+                .filter(inst -> inst instanceof ModEtherInstruction)
+                .map(inst -> (ModEtherInstruction) inst)
+                .filter(inst -> inst.subtype() == ETH_DST)
+                .map(ModEtherInstruction::mac)
+                .findFirst()
+                .orElse(null);
     }
 
     private void updateSubscriberInstances(ServiceNetwork subscriber, Instance instance,
                                            boolean isDetected) {
         DeviceId deviceId = instance.deviceId();
         final String isAdded = isDetected ? ADDED : REMOVED;
+        boolean hasLocalPeers = hasLocalPeers(instance);
         subscriber.providers().keySet().forEach(providerId -> {
+            ServiceNetwork provider = snetService.serviceNetwork(providerId);
+            if (provider == null) {
+                log.warn(ERR_NET_FAIL + providerId);
+                return;
+            }
+            // the node might not have had the subscriber instances before
+            GroupId groupId = isDetected ? getProviderGroup(provider, deviceId) :
+                    getGroupId(providerId, deviceId);
             populateInPortRule(
                     ImmutableMap.of(deviceId, ImmutableSet.of(instance.portNumber())),
-                    ImmutableMap.of(deviceId, getGroupId(providerId, deviceId)),
+                    ImmutableMap.of(deviceId, groupId),
                     isDetected);
+            if (!hasLocalPeers) {
+                // the first subscriber instance comes to the node or the last one leaves
+                populateSubscriberRules(subscriber, provider,
+                                        ImmutableSet.of(deviceId), isDetected);
+            }
             log.info(isAdded + "subscriber instance({}) for provider({})",
                      instance.host().id(), providerId.id());
         });
     }
 
+    /**
+     * Installs or removes the access rules of the given network that are not
+     * bound to a single dependency, on the supplied device. Called when the
+     * first instance of the network comes to or the last one leaves the device.
+     *
+     * @param snet     service network
+     * @param deviceId device identifier
+     * @param install  install or remove
+     */
+    private void populateLocalAccessRules(ServiceNetwork snet, DeviceId deviceId,
+                                          boolean install) {
+        if (!aggregateAccessRules) {
+            // the rules to the providers come with the subscriber rules
+            populateReverseAccessRules(snet, deviceId, install);
+            return;
+        }
+        Set<IpPrefix> prefixes = aggregate(getAccessPrefixes(snet));
+        populateAccessRules(snet,
+                            install ? ImmutableSet.of() : prefixes,
+                            install ? prefixes : ImmutableSet.of(),
+                            ImmutableSet.of(deviceId));
+    }
+
+    /**
+     * Installs or removes the access rules from the given provider network to
+     * its bidirectional subscribers on the supplied device. Called when the
+     * first instance of the provider comes to or the last one leaves the device.
+     *
+     * @param provider provider network
+     * @param deviceId device identifier
+     * @param install  install or remove
+     */
+    private void populateReverseAccessRules(ServiceNetwork provider, DeviceId deviceId,
+                                            boolean install) {
+        snetService.subscribers(provider.id()).entrySet().stream()
+                .filter(subscriber -> subscriber.getValue() == BIDIRECTIONAL)
+                .map(subscriber -> snetService.serviceNetwork(subscriber.getKey()))
+                .filter(Objects::nonNull)
+                .forEach(subscriber -> populateDirectAccessRule(
+                        provider.segmentId().id(),
+                        provider.subnet().getIp4Prefix(),
+                        subscriber.subnet().getIp4Prefix(),
+                        ImmutableSet.of(deviceId),
+                        install));
+    }
+
     private boolean isProviderInUse(NetworkId providerId) {
-        return snetService.serviceNetworks().stream()
-                .flatMap(net -> net.providers().keySet().stream())
-                .anyMatch(provider -> Objects.equals(provider, providerId));
+        return !snetService.subscribers(providerId).isEmpty();
     }
 
     private void removeGroup(NetworkId netId) {
@@ -250,7 +417,8 @@ public class DependencyHandler extends AbstractInstanceHandler {
     }
 
     private GroupId getGroupId(NetworkId netId, DeviceId deviceId) {
-        return new GroupId(Objects.hash(netId, deviceId));
+        return new GroupId(PROVIDER_GROUP_ID_BASE |
+                                   (Objects.hash(netId, deviceId) & GROUP_ID_MASK));
     }
 
     private GroupKey getGroupKey(NetworkId netId) {
@@ -260,12 +428,13 @@ public class DependencyHandler extends AbstractInstanceHandler {
     private GroupId getProviderGroup(ServiceNetwork provider, DeviceId deviceId) {
         GroupKey groupKey = getGroupKey(provider.id());
         Group group = groupService.getGroup(deviceId, groupKey);
-        GroupId groupId = getGroupId(provider.id(), deviceId);
-
         if (group != null) {
-            return groupId;
+            // the existing group might be added with the other ID
+            return group.id();
         }
 
+        GroupId groupId = getGroupId(provider.id(), deviceId);
+
         GroupBuckets buckets = getProviderGroupBuckets(
                 deviceId, provider.segmentId().id(), getInstances(provider.id()));
         GroupDescription groupDescription = new DefaultGroupDescription(
@@ -282,17 +451,46 @@ public class DependencyHandler extends AbstractInstanceHandler {
 
     private void populateDependencyRules(ServiceNetwork subscriber, ServiceNetwork provider,
                                          DependencyType type, boolean install) {
+        Set<DeviceId> devices = nodeService.completeNodes().stream()
+                .map(CordVtnNode::integrationBridgeId)
+                .collect(Collectors.toSet());
+
+        // only the nodes hosting the subscriber instances, or the provider instances
+        // for the reverse direction, need the rules; try all nodes on removal since
+        // the rules might be installed when the node had the instances
+        Set<DeviceId> subscriberDevices = install ?
+                Sets.intersection(devices, getHostingDevices(subscriber.id())) : devices;
+        Set<DeviceId> providerDevices = install ?
+                Sets.intersection(devices, getHostingDevices(provider.id())) : devices;
+
+        populateSubscriberRules(subscriber, provider, subscriberDevices, install);
+        if (aggregateAccessRules) {
+            updateAccessRules(subscriber, provider.subnet(), subscriberDevices, install);
+            if (type == BIDIRECTIONAL) {
+                updateAccessRules(provider, subscriber.subnet(), providerDevices, install);
+            }
+        } else if (type == BIDIRECTIONAL) {
+            populateDirectAccessRule(
+                    provider.segmentId().id(),
+                    provider.subnet().getIp4Prefix(),
+                    subscriber.subnet().getIp4Prefix(),
+                    providerDevices,
+                    install);
+        }
+    }
+
+    private void populateSubscriberRules(ServiceNetwork subscriber, ServiceNetwork provider,
+                                         Set<DeviceId> devices, boolean install) {
         Map<DeviceId, GroupId> providerGroups = Maps.newHashMap();
         Map<DeviceId, Set<PortNumber>> subscriberPorts = Maps.newHashMap();
 
-        nodeService.completeNodes().forEach(node -> {
-            DeviceId deviceId = node.integrationBridgeId();
-            GroupId groupId = getProviderGroup(provider, deviceId);
+        devices.forEach(deviceId -> {
+            GroupId groupId = install ? getProviderGroup(provider, deviceId) :
+                    getGroupId(provider.id(), deviceId);
             providerGroups.put(deviceId, groupId);
 
-            Set<PortNumber> ports = getInstances(subscriber.id())
+            Set<PortNumber> ports = getInstances(subscriber.id(), deviceId)
                     .stream()
-                    .filter(instance -> instance.deviceId().equals(deviceId))
                     .map(Instance::portNumber)
                     .collect(Collectors.toSet());
             subscriberPorts.put(deviceId, ports);
@@ -303,7 +501,6 @@ public class DependencyHandler extends AbstractInstanceHandler {
         IpPrefix pSubnet = provider.subnet().getIp4Prefix();
 
         long vniSubs = subscriber.segmentId().id();
-        long vniProd = provider.segmentId().id();
         populateInPortRule(subscriberPorts, providerGroups, install);
         populateIndirectAccessRule(
                 vniSubs,
@@ -311,12 +508,131 @@ public class DependencyHandler extends AbstractInstanceHandler {
                 provider.serviceIp().getIp4Address(),
                 providerGroups,
                 install);
-        populateDirectAccessRule(vniSubs, sSubnet, pSubnet, install);
-        if (type == BIDIRECTIONAL) {
-            populateDirectAccessRule(vniProd, pSubnet, sSubnet, install);
+        if (!aggregateAccessRules) {
+            populateDirectAccessRule(vniSubs, sSubnet, pSubnet, devices, install);
         }
     }
 
+    /**
+     * Returns the subnets the given network can access directly, that is, the
+     * subnets of its providers and its bidirectional subscribers.
+     *
+     * @param snet service network
+     * @return set of ip prefixes
+     */
+    private Set<IpPrefix> getAccessPrefixes(ServiceNetwork snet) {
+        Set<IpPrefix> prefixes = Sets.newHashSet();
+        snet.providers().keySet().stream()
+                .map(snetService::serviceNetwork)
+                .filter(Objects::nonNull)
+                .forEach(provider -> prefixes.add(provider.subnet().getIp4Prefix()));
+        snetService.subscribers(snet.id()).entrySet().stream()
+                .filter(subscriber -> subscriber.getValue() == BIDIRECTIONAL)
+                .map(subscriber -> snetService.serviceNetwork(subscriber.getKey()))
+                .filter(Objects::nonNull)
+                .forEach(subscriber -> prefixes.add(subscriber.subnet().getIp4Prefix()));
+        return prefixes;
+    }
+
+    /**
+     * Updates the aggregated access rules of the given network after the
+     * supplied subnet is added to or removed from its accessible subnets.
+     *
+     * @param snet     service network
+     * @param subnet   added or removed subnet
+     * @param devices  devices to update
+     * @param install  true if the subnet is added
+     */
+    private void updateAccessRules(ServiceNetwork snet, IpPrefix subnet,
+                                   Set<DeviceId> devices, boolean install) {
+        Set<IpPrefix> withSubnet = Sets.newHashSet(getAccessPrefixes(snet));
+        withSubnet.add(subnet.getIp4Prefix());
+        Set<IpPrefix> withoutSubnet = Sets.newHashSet(withSubnet);
+        withoutSubnet.remove(subnet.getIp4Prefix());
+
+        Set<IpPrefix> withRules = aggregate(withSubnet);
+        Set<IpPrefix> withoutRules = aggregate(withoutSubnet);
+        populateAccessRules(snet,
+                            install ? withoutRules : withRules,
+                            install ? withRules : withoutRules,
+                            devices);
+    }
+
+    private void populateAccessRules(ServiceNetwork snet, Set<IpPrefix> oldPrefixes,
+                                     Set<IpPrefix> newPrefixes, Set<DeviceId> devices) {
+        long vni = snet.segmentId().id();
+        IpPrefix srcSubnet = snet.subnet().getIp4Prefix();
+        Sets.difference(oldPrefixes, newPrefixes).forEach(prefix ->
+                populateDirectAccessRule(vni, srcSubnet, prefix, devices, false));
+        // the new rules are only for the devices hosting the network instances
+        Set<DeviceId> hosting = ImmutableSet.copyOf(
+                Sets.intersection(devices, getHostingDevices(snet.id())));
+        Sets.difference(newPrefixes, oldPrefixes).forEach(prefix ->
+                populateDirectAccessRule(vni, srcSubnet, prefix, hosting, true));
+    }
+
+    /**
+     * Reinstalls the direct access rules of all networks after the access
+     * rule aggregation is enabled or disabled.
+     *
+     * @param wasAggregated true if the existing rules are aggregated ones
+     */
+    private void refreshAccessRules(boolean wasAggregated) {
+        if (!Objects.equals(localNodeId, leadershipService.getLeader(appId.name()))) {
+            // do not allow to proceed without leadership
+            return;
+        }
+        Set<DeviceId> devices = nodeService.completeNodes().stream()
+                .map(CordVtnNode::integrationBridgeId)
+                .collect(Collectors.toSet());
+        snetService.serviceNetworks().forEach(snet -> {
+            Set<DeviceId> hosting = Sets.intersection(devices, getHostingDevices(snet.id()));
+            if (hosting.isEmpty()) {
+                return;
+            }
+            Set<IpPrefix> prefixes = getAccessPrefixes(snet);
+            populateAccessRules(snet,
+                                wasAggregated ? aggregate(prefixes) : prefixes,
+                                aggregateAccessRules ? aggregate(prefixes) : prefixes,
+                                ImmutableSet.copyOf(hosting));
+        });
+    }
+
+    /**
+     * Returns the smallest set of prefixes covering exactly the same addresses
+     * with the given prefixes, by dropping the covered prefixes and merging
+     * the sibling prefixes into their parent.
+     *
+     * @param prefixes set of ip prefixes
+     * @return set of aggregated ip prefixes
+     */
+    private static Set<IpPrefix> aggregate(Set<IpPrefix> prefixes) {
+        // TODO support IPv6
+        Set<IpPrefix> result = prefixes.stream()
+                .filter(prefix -> prefixes.stream().noneMatch(
+                        other -> !other.equals(prefix) && other.contains(prefix)))
+                .collect(Collectors.toCollection(Sets::newHashSet));
+        boolean merged = true;
+        while (merged) {
+            merged = false;
+            for (IpPrefix prefix : ImmutableSet.copyOf(result)) {
+                int length = prefix.prefixLength();
+                if (length == 0 || !result.contains(prefix)) {
+                    continue;
+                }
+                int address = prefix.address().getIp4Address().toInt();
+                IpPrefix sibling = IpPrefix.valueOf(address ^ (1 << (32 - length)), length);
+                if (result.contains(sibling)) {
+                    result.remove(prefix);
+                    result.remove(sibling);
+                    result.add(IpPrefix.valueOf(address, length - 1));
+                    merged = true;
+                }
+            }
+        }
+        return ImmutableSet.copyOf(result);
+    }
+
     private void populateIndirectAccessRule(long vniSubs, IpPrefix srcSubnet, IpAddress serviceIp,
                                             Map<DeviceId, GroupId> outGroups,
                                             boolean install) {
@@ -328,6 +644,7 @@ public class DependencyHandler extends AbstractInstanceHandler {
                 .matchIPDst(serviceIp.toIpPrefix())
                 .build();
 
+        List<FlowRule> rules = Lists.newArrayList();
         for (Map.Entry<DeviceId, GroupId> outGroup : outGroups.entrySet()) {
             TrafficTreatment treatment = DefaultTrafficTreatment.builder()
                     .group(outGroup.getValue())
@@ -343,11 +660,13 @@ public class DependencyHandler extends AbstractInstanceHandler {
                     .makePermanent()
                     .build();
 
-            pipeline.processFlowRule(install, flowRule);
+            rules.add(flowRule);
         }
+        pipeline.processFlowRules(install, rules);
     }
 
-    private void populateDirectAccessRule(long vniSubs, IpPrefix srcIp, IpPrefix dstIp, boolean install) {
+    private void populateDirectAccessRule(long vniSubs, IpPrefix srcIp, IpPrefix dstIp,
+                                          Set<DeviceId> devices, boolean install) {
         // TODO support IPv6
         TrafficSelector selector = DefaultTrafficSelector.builder()
                 .matchEthType(Ethernet.TYPE_IPV4)
@@ -360,8 +679,8 @@ public class DependencyHandler extends AbstractInstanceHandler {
                 .transition(TABLE_DST)
                 .build();
 
-        nodeService.completeNodes().forEach(node -> {
-            DeviceId deviceId = node.integrationBridgeId();
+        List<FlowRule> rules = Lists.newArrayList();
+        devices.forEach(deviceId -> {
             FlowRule flowRuleDirect = DefaultFlowRule.builder()
                     .fromApp(appId)
                     .withSelector(selector)
@@ -372,13 +691,15 @@ public class DependencyHandler extends AbstractInstanceHandler {
                     .makePermanent()
                     .build();
 
-            pipeline.processFlowRule(install, flowRuleDirect);
+            rules.add(flowRuleDirect);
         });
+        pipeline.processFlowRules(install, rules);
     }
 
     private void populateInPortRule(Map<DeviceId, Set<PortNumber>> subscriberPorts,
                                     Map<DeviceId, GroupId> providerGroups,
                                     boolean install) {
+        List<FlowRule> rules = Lists.newArrayList();
         for (Map.Entry<DeviceId, Set<PortNumber>> entry : subscriberPorts.entrySet()) {
             Set<PortNumber> ports = entry.getValue();
             DeviceId deviceId = entry.getKey();
@@ -405,37 +726,124 @@ public class DependencyHandler extends AbstractInstanceHandler {
                         .makePermanent()
                         .build();
 
-                pipeline.processFlowRule(install, flowRule);
+                rules.add(flowRule);
             });
         }
+        pipeline.processFlowRules(install, rules);
     }
 
     private GroupBuckets getProviderGroupBuckets(DeviceId deviceId, long tunnelId,
                                                  Set<Instance> instances) {
-        List<GroupBucket> buckets = Lists.newArrayList();
-        instances.forEach(instance -> {
-            Ip4Address tunnelIp = dataIp(instance.deviceId()).getIp4Address();
-
-            if (deviceId.equals(instance.deviceId())) {
-                TrafficTreatment treatment = DefaultTrafficTreatment.builder()
-                        .setEthDst(instance.mac())
-                        .setOutput(instance.portNumber())
-                        .build();
-                buckets.add(createSelectGroupBucket(treatment));
-            } else {
-                ExtensionTreatment tunnelDst = tunnelDstTreatment(deviceId, tunnelIp);
-                TrafficTreatment treatment = DefaultTrafficTreatment.builder()
-                        .setEthDst(instance.mac())
-                        .extension(tunnelDst, deviceId)
-                        .setTunnelId(tunnelId)
-                        .setOutput(tunnelPort(instance.deviceId()))
-                        .build();
-                buckets.add(createSelectGroupBucket(treatment));
-            }
-        });
+        // keep the bucket order stable, local instances first and then by MAC
+        List<GroupBucket> buckets = instances.stream()
+                .sorted(Comparator.comparing((Instance instance) ->
+                                !instance.deviceId().equals(deviceId))
+                                .thenComparing(instance -> instance.mac().toLong()))
+                .map(instance -> getProviderGroupBucket(deviceId, tunnelId, instance))
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
         return new GroupBuckets(buckets);
     }
 
+    /**
+     * Rebuilds the buckets of all provider groups, for instance, after the
+     * bucket weight is changed.
+     */
+    private void refreshProviderGroups() {
+        if (!Objects.equals(localNodeId, leadershipService.getLeader(appId.name()))) {
+            // do not allow to proceed without leadership
+            return;
+        }
+        snetService.serviceNetworks().stream()
+                .flatMap(net -> net.providers().keySet().stream())
+                .distinct()
+                .map(snetService::serviceNetwork)
+                .filter(Objects::nonNull)
+                .forEach(provider -> {
+                    GroupKey groupKey = getGroupKey(provider.id());
+                    Set<Instance> instances = getInstances(provider.id());
+                    nodeService.completeNodes().forEach(node -> {
+                        DeviceId deviceId = node.integrationBridgeId();
+                        if (groupService.getGroup(deviceId, groupKey) == null) {
+                            return;
+                        }
+                        groupService.setBucketsForGroup(
+                                deviceId,
+                                groupKey,
+                                getProviderGroupBuckets(deviceId,
+                                                        provider.segmentId().id(),
+                                                        instances),
+                                groupKey, appId);
+                    });
+                });
+    }
+
+    private GroupBucket getProviderGroupBucket(DeviceId deviceId, long tunnelId,
+                                               Instance instance) {
+        Port port = deviceService.getPort(instance.deviceId(), instance.portNumber());
+        if (port == null || !port.isEnabled()) {
+            // do not send the traffic to the instance with the port down
+            return null;
+        }
+        if (deviceId.equals(instance.deviceId())) {
+            TrafficTreatment treatment = DefaultTrafficTreatment.builder()
+                    .setEthDst(instance.mac())
+                    .setOutput(instance.portNumber())
+                    .build();
+            return createSelectGroupBucket(treatment, (short) localProviderWeight);
+        }
+
+        IpAddress tunnelIp = dataIp(instance.deviceId());
+        PortNumber tunnelPort = tunnelPort(deviceId);
+        ExtensionTreatment tunnelDst = tunnelIp == null ? null :
+                tunnelDstTreatment(deviceId, tunnelIp.getIp4Address());
+        if (tunnelDst == null || tunnelPort == null) {
+            log.debug("Failed to get tunnel to {} on {}", instance, deviceId);
+            return null;
+        }
+        TrafficTreatment treatment = DefaultTrafficTreatment.builder()
+                .setEthDst(instance.mac())
+                .extension(tunnelDst, deviceId)
+                .setTunnelId(tunnelId)
+                .setOutput(tunnelPort)
+                .build();
+        return createSelectGroupBucket(treatment, (short) REMOTE_PROVIDER_WEIGHT);
+    }
+
+    private class InternalDeviceListener implements DeviceListener {
+
+        @Override
+        public boolean isRelevant(DeviceEvent event) {
+            return (event.type() == PORT_UPDATED || event.type() == PORT_REMOVED) &&
+                    mastershipService.isLocalMaster(event.subject().id());
+        }
+
+        @Override
+        public void event(DeviceEvent event) {
+            eventExecutor.execute(() -> handle(event));
+        }
+
+        private void handle(DeviceEvent event) {
+            // update the provider buckets right away rather than waiting for
+            // the instance to be removed
+            boolean isEnabled = event.type() == PORT_UPDATED && event.port().isEnabled();
+            ConnectPoint connectPoint = new ConnectPoint(
+                    event.subject().id(), event.port().number());
+            instanceService.instances(connectPoint.deviceId()).stream()
+                    .filter(instance -> instance.portNumber().equals(connectPoint.port()))
+                    .filter(instance -> netTypes.contains(instance.netType()))
+                    .forEach(instance -> {
+                        ServiceNetwork snet = snetService.serviceNetwork(instance.netId());
+                        if (snet == null || !isProviderInUse(snet.id())) {
+                            return;
+                        }
+                        log.debug("Port of provider instance {} is {}", instance,
+                                  isEnabled ? "enabled" : "disabled");
+                        updateProviderInstance(snet, instance, isEnabled);
+                    });
+        }
+    }
+
     private class InternalServiceNetworkListener implements ServiceNetworkListener {
 
         @Override
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2017-present Open Networking Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opencord.cordvtn.impl.handler;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import org.onosproject.net.DeviceId;
+import org.onosproject.net.HostId;
+import org.opencord.cordvtn.api.core.Instance;
+import org.opencord.cordvtn.api.net.NetworkId;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Tracks the original instances of each service network by the device hosting them.
+ */
+final class NetworkMembership {
+
+    private final Map<NetworkId, Map<DeviceId, Set<HostId>>> members = Maps.newHashMap();
+
+    /**
+     * Adds the given instance to the members of its network.
+     *
+     * @param instance instance
+     */
+    synchronized void add(Instance instance) {
+        members.computeIfAbsent(instance.netId(), id -> Maps.newHashMap())
+                .computeIfAbsent(instance.deviceId(), id -> Sets.newHashSet())
+                .add(instance.host().id());
+    }
+
+    /**
+     * Removes the given instance from the members of its network.
+     *
+     * @param instance instance
+     * @return true if the network has no member instance anymore
+     */
+    synchronized boolean remove(Instance instance) {
+        Map<DeviceId, Set<HostId>> devices = members.get(instance.netId());
+        if (devices == null) {
+            return false;
+        }
+        Set<HostId> hosts = devices.get(instance.deviceId());
+        if (hosts == null) {
+            return false;
+        }
+        hosts.remove(instance.host().id());
+        if (hosts.isEmpty()) {
+            devices.remove(instance.deviceId());
+        }
+        if (devices.isEmpty()) {
+            members.remove(instance.netId());
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Returns the member instances of the given network on all devices.
+     *
+     * @param netId network identifier
+     * @return set of host identifiers; empty set if no instance presents
+     */
+    synchronized Set<HostId> members(NetworkId netId) {
+        Map<DeviceId, Set<HostId>> devices = members.get(netId);
+        if (devices == null) {
+            return ImmutableSet.of();
+        }
+        return devices.values().stream()
+                .flatMap(Set::stream)
+                .collect(Collectors.collectingAndThen(
+                        Collectors.toSet(), ImmutableSet::copyOf));
+    }
+
+    /**
+     * Returns the member instances of the given network on the supplied device.
+     *
+     * @param netId    network identifier
+     * @param deviceId device identifier
+     * @return set of host identifiers; empty set if no instance presents
+     */
+    synchronized Set<HostId> members(NetworkId netId, DeviceId deviceId) {
+        Map<DeviceId, Set<HostId>> devices = members.get(netId);
+        if (devices == null || !devices.containsKey(deviceId)) {
+            return ImmutableSet.of();
+        }
+        return ImmutableSet.copyOf(devices.get(deviceId));
+    }
+
+    /**
+     * Returns the devices hosting the member instances of the given network.
+     *
+     * @param netId network identifier
+     * @return set of device identifiers; empty set if no instance presents
+     */
+    synchronized Set<DeviceId> devices(NetworkId netId) {
+        Map<DeviceId, Set<HostId>> devices = members.get(netId);
+        return devices == null ? ImmutableSet.of() : ImmutableSet.copyOf(devices.keySet());
+    }
+
+    /**
+     * Returns the networks having the member instances.
+     *
+     * @return set of network identifiers; empty set if no instance presents
+     */
+    synchronized Set<NetworkId> networks() {
+        return ImmutableSet.copyOf(members.keySet());
+    }
+}
@@ -28,6 +28,8 @@ public class CordVtnWebApplication extends AbstractWebApplication {
     public Set<Class<?>> getClasses() {
         return getClasses(ServiceNetworkWebResource.class,
                           ServicePortWebResource.class,
+                          ServiceNetworkSyncWebResource.class,
+                          ServiceNetworkChangesWebResource.class,
                           NeutronMl2NetworksWebResource.class,
                           NeutronMl2SubnetsWebResource.class,
                           NeutronMl2PortsWebResource.class,
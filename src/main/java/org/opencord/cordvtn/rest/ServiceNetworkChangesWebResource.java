@@ -0,0 +1,131 @@
+/*
+ * Copyright 2017-present Open Networking Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opencord.cordvtn.rest;
+
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.onlab.osgi.DefaultServiceDirectory;
+import org.onosproject.rest.AbstractWebResource;
+import org.opencord.cordvtn.api.core.ServiceNetworkChanges;
+import org.opencord.cordvtn.api.core.ServiceNetworkEvent;
+import org.opencord.cordvtn.api.core.ServiceNetworkService;
+import org.opencord.cordvtn.api.net.ServiceNetwork;
+import org.opencord.cordvtn.api.net.ServicePort;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.ws.rs.DefaultValue;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import java.util.concurrent.TimeUnit;
+
+import static javax.ws.rs.core.Response.Status.SERVICE_UNAVAILABLE;
+import static javax.ws.rs.core.Response.ok;
+import static javax.ws.rs.core.Response.status;
+import static org.opencord.cordvtn.api.net.ServiceNetwork.DependencyType.BIDIRECTIONAL;
+
+/**
+ * Query the service network and port changes incrementally.
+ */
+@Path("changes")
+public class ServiceNetworkChangesWebResource extends AbstractWebResource {
+    protected final Logger log = LoggerFactory.getLogger(getClass());
+
+    private static final String MESSAGE = "Received service network changes ";
+    private static final String VERSION = "version";
+    private static final String RESYNC_REQUIRED = "resyncRequired";
+    private static final String CHANGES = "changes";
+    private static final String TYPE = "type";
+    private static final String CHANGED = "changed";
+    private static final String SERVICE_NETWORK = "ServiceNetwork";
+    private static final String SERVICE_PORT = "ServicePort";
+    private static final String PROVIDER = "provider";
+    private static final String ID = "id";
+    private static final String DEP_TYPE = "bidirectional";
+    private static final int MAX_TIMEOUT = 20;
+
+    private final ServiceNetworkService snetService =
+            DefaultServiceDirectory.getService(ServiceNetworkService.class);
+
+    /**
+     * Returns the service network and port changes after the given version.
+     * If there is no change yet, the request is held until a change happens
+     * or the timeout expires, unless a few other requests are already held,
+     * so that the held requests do not take up the REST threads. A client starts with the version returned
+     * with a resync required answer, reads the full states with the service
+     * network and port APIs, and then requests the changes with the version
+     * returned last. The versions are valid only with the same controller
+     * instance and run; the others get a resync required answer.
+     *
+     * @param since   version the client has seen; -1 to get the current version
+     * @param timeout seconds to wait for a change, up to 20
+     * @return 200 OK with the version, resync required flag and the list of
+     * changes, 503 SERVICE_UNAVAILABLE if interrupted while waiting
+     */
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response getChanges(@DefaultValue("-1") @QueryParam("since") long since,
+                               @DefaultValue("10") @QueryParam("timeout") int timeout) {
+        log.trace(MESSAGE + "GET since " + since);
+
+        long timeoutMillis = TimeUnit.SECONDS.toMillis(
+                Math.max(0, Math.min(timeout, MAX_TIMEOUT)));
+        ServiceNetworkChanges changes;
+        try {
+            changes = snetService.changes(since, timeoutMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.trace("Returned SERVICE_UNAVAILABLE");
+            return status(SERVICE_UNAVAILABLE).build();
+        }
+
+        ObjectNode result = mapper().createObjectNode()
+                .put(VERSION, changes.version())
+                .put(RESYNC_REQUIRED, changes.isResyncRequired());
+        ArrayNode changesJson = result.putArray(CHANGES);
+        changes.events().forEach(event -> changesJson.add(encodeEvent(event)));
+
+        log.trace("Returned OK {}", changes);
+        return ok(result).build();
+    }
+
+    private ObjectNode encodeEvent(ServiceNetworkEvent event) {
+        ObjectNode eventJson = mapper().createObjectNode()
+                .put(TYPE, event.type().name());
+        if (!event.changes().isEmpty()) {
+            ArrayNode changed = eventJson.putArray(CHANGED);
+            event.changes().forEach(change -> changed.add(change.name()));
+        }
+        if (event.subject() != null) {
+            eventJson.set(SERVICE_NETWORK,
+                          codec(ServiceNetwork.class).encode(event.subject(), this));
+        }
+        if (event.servicePort() != null) {
+            eventJson.set(SERVICE_PORT,
+                          codec(ServicePort.class).encode(event.servicePort(), this));
+        }
+        if (event.provider() != null) {
+            eventJson.set(PROVIDER, mapper().createObjectNode()
+                    .put(ID, event.provider().provider().id().id())
+                    .put(DEP_TYPE, event.provider().type() == BIDIRECTIONAL));
+        }
+        return eventJson;
+    }
+}
@@ -0,0 +1,222 @@
+/*
+ * Copyright 2017-present Open Networking Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opencord.cordvtn.rest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.collect.Lists;
+import org.opencord.cordvtn.api.core.ServiceNetworkAdminService;
+import org.opencord.cordvtn.api.core.ServiceNetworkBatch;
+import org.opencord.cordvtn.api.net.NetworkId;
+import org.opencord.cordvtn.api.net.PortId;
+import org.opencord.cordvtn.api.net.ServiceNetwork;
+import org.opencord.cordvtn.api.net.ServicePort;
+import org.opencord.cordvtn.impl.DefaultServiceNetwork;
+import org.opencord.cordvtn.impl.DefaultServicePort;
+import org.slf4j.Logger;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Applies the desired state of the service networks and ports, and
+ * summarizes the changes made.
+ */
+final class ServiceNetworkSync {
+
+    private final Logger log = getLogger(getClass());
+
+    static final String SERVICE_NETWORKS = "ServiceNetworks";
+    static final String SERVICE_PORTS = "ServicePorts";
+    static final String CREATED = "created";
+    static final String UPDATED = "updated";
+    static final String UNCHANGED = "unchanged";
+    static final String REMOVED = "removed";
+    static final String SKIPPED = "skipped";
+    static final String REJECTED = "rejected";
+
+    private final ServiceNetworkAdminService adminService;
+    private final ObjectMapper mapper;
+
+    /**
+     * Creates a new service network sync.
+     *
+     * @param adminService service network admin service
+     * @param mapper       object mapper for the summary
+     */
+    ServiceNetworkSync(ServiceNetworkAdminService adminService, ObjectMapper mapper) {
+        this.adminService = checkNotNull(adminService);
+        this.mapper = checkNotNull(mapper);
+    }
+
+    /**
+     * Creates or updates the given service networks and ports, and removes
+     * the existing ones not given if prune is set. The changes are applied
+     * all together if possible. Otherwise, they are applied one by one and
+     * the ones failed to apply are rejected, so that an invalid network or
+     * port does not hold the others back.
+     *
+     * @param snets  service networks
+     * @param sports service ports
+     * @param prune  true if the given ones are the complete set
+     * @return summary with the number of created, updated, unchanged and
+     * removed networks and ports, and the identifiers of the skipped ones
+     * lacking the information to create and the rejected ones
+     */
+    ObjectNode sync(Collection<ServiceNetwork> snets, Collection<ServicePort> sports,
+                    boolean prune) {
+        ObjectNode netSummary = mapper.createObjectNode()
+                .put(CREATED, 0).put(UPDATED, 0).put(UNCHANGED, 0).put(REMOVED, 0);
+        netSummary.putArray(SKIPPED);
+        netSummary.putArray(REJECTED);
+        ObjectNode portSummary = netSummary.deepCopy();
+
+        // the networks go first, and the removals last, in the order to apply
+        List<Change> changes = Lists.newArrayList();
+        snets.forEach(snet -> {
+            ServiceNetwork existing = adminService.serviceNetwork(snet.id());
+            if (existing == null && snet.type() == null) {
+                // not enough information to create the network
+                netSummary.withArray(SKIPPED).add(snet.id().id());
+            } else if (existing == null) {
+                changes.add(new Change(netSummary, CREATED, snet.id().id(),
+                                       batch -> batch.updateNetwork(snet)));
+            } else if (existing.equals(DefaultServiceNetwork.builder(existing, snet).build())) {
+                increase(netSummary, UNCHANGED);
+            } else {
+                changes.add(new Change(netSummary, UPDATED, snet.id().id(),
+                                       batch -> batch.updateNetwork(snet)));
+            }
+        });
+
+        sports.forEach(sport -> {
+            ServicePort existing = adminService.servicePort(sport.id());
+            if (existing == null && sport.networkId() == null) {
+                // not enough information to create the port
+                portSummary.withArray(SKIPPED).add(sport.id().id());
+            } else if (existing == null) {
+                changes.add(new Change(portSummary, CREATED, sport.id().id(),
+                                       batch -> batch.updatePort(sport)));
+            } else if (existing.equals(DefaultServicePort.builder(existing, sport).build())) {
+                increase(portSummary, UNCHANGED);
+            } else {
+                changes.add(new Change(portSummary, UPDATED, sport.id().id(),
+                                       batch -> batch.updatePort(sport)));
+            }
+        });
+
+        if (prune) {
+            Set<PortId> portIds = sports.stream()
+                    .map(ServicePort::id)
+                    .collect(Collectors.toSet());
+            adminService.servicePorts().stream()
+                    .filter(sport -> !portIds.contains(sport.id()))
+                    .forEach(sport -> changes.add(new Change(
+                            portSummary, REMOVED, sport.id().id(),
+                            batch -> batch.removePort(sport.id()))));
+
+            Set<NetworkId> netIds = snets.stream()
+                    .map(ServiceNetwork::id)
+                    .collect(Collectors.toSet());
+            adminService.serviceNetworks().stream()
+                    .filter(snet -> !netIds.contains(snet.id()))
+                    .forEach(snet -> changes.add(new Change(
+                            netSummary, REMOVED, snet.id().id(),
+                            batch -> batch.removeNetwork(snet.id()))));
+        }
+
+        List<Change> rejected = apply(changes);
+        changes.stream()
+                .filter(change -> !rejected.contains(change))
+                .forEach(change -> increase(change.summary, change.field));
+        rejected.forEach(change -> change.summary.withArray(REJECTED).add(change.id));
+
+        ObjectNode result = mapper.createObjectNode();
+        result.set(SERVICE_NETWORKS, netSummary);
+        result.set(SERVICE_PORTS, portSummary);
+        return result;
+    }
+
+    /**
+     * Applies the given changes as a batch, or one by one if the batch fails.
+     * The failed ones are retried while any other succeeds, since they may
+     * depend on the ones later in the list.
+     *
+     * @param changes changes to apply
+     * @return list of the changes failed to apply
+     */
+    private List<Change> apply(List<Change> changes) {
+        if (changes.isEmpty()) {
+            return Lists.newArrayList();
+        }
+        try {
+            ServiceNetworkBatch.Builder batch = ServiceNetworkBatch.builder();
+            changes.forEach(change -> change.action.accept(batch));
+            adminService.applyBatch(batch.build());
+            return Lists.newArrayList();
+        } catch (RuntimeException e) {
+            // invalid input may fail with any runtime exception
+            log.warn("Failed to apply the changes all together, applying one by one: {}",
+                     e.getMessage());
+        }
+
+        List<Change> pending = changes;
+        boolean progress = true;
+        while (progress && !pending.isEmpty()) {
+            progress = false;
+            List<Change> failed = Lists.newArrayList();
+            for (Change change : pending) {
+                try {
+                    ServiceNetworkBatch.Builder batch = ServiceNetworkBatch.builder();
+                    change.action.accept(batch);
+                    adminService.applyBatch(batch.build());
+                    progress = true;
+                } catch (RuntimeException e) {
+                    log.debug("Failed to apply {}: {}", change.id, e.getMessage());
+                    failed.add(change);
+                }
+            }
+            pending = failed;
+        }
+        pending.forEach(change -> log.warn("Rejected {}", change.id));
+        return pending;
+    }
+
+    private void increase(ObjectNode summary, String field) {
+        summary.put(field, summary.get(field).asInt() + 1);
+    }
+
+    private static final class Change {
+        private final ObjectNode summary;
+        private final String field;
+        private final String id;
+        private final Consumer<ServiceNetworkBatch.Builder> action;
+
+        private Change(ObjectNode summary, String field, String id,
+                       Consumer<ServiceNetworkBatch.Builder> action) {
+            this.summary = summary;
+            this.field = field;
+            this.id = id;
+            this.action = action;
+        }
+    }
+}
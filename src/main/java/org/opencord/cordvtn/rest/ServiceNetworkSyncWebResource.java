@@ -0,0 +1,112 @@
+/*
+ * Copyright 2017-present Open Networking Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opencord.cordvtn.rest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.collect.Maps;
+import org.onlab.osgi.DefaultServiceDirectory;
+import org.onosproject.rest.AbstractWebResource;
+import org.opencord.cordvtn.api.core.ServiceNetworkAdminService;
+import org.opencord.cordvtn.api.net.NetworkId;
+import org.opencord.cordvtn.api.net.PortId;
+import org.opencord.cordvtn.api.net.ServiceNetwork;
+import org.opencord.cordvtn.api.net.ServicePort;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.ws.rs.Consumes;
+import javax.ws.rs.DefaultValue;
+import javax.ws.rs.POST;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+
+import static com.fasterxml.jackson.databind.SerializationFeature.INDENT_OUTPUT;
+import static javax.ws.rs.core.Response.ok;
+import static org.opencord.cordvtn.rest.ServiceNetworkSync.SERVICE_NETWORKS;
+import static org.opencord.cordvtn.rest.ServiceNetworkSync.SERVICE_PORTS;
+
+/**
+ * Synchronizes service networks and ports with the desired state.
+ */
+@Path("sync")
+public class ServiceNetworkSyncWebResource extends AbstractWebResource {
+    protected final Logger log = LoggerFactory.getLogger(getClass());
+
+    private static final String MESSAGE = "Received service network sync ";
+
+    private final ServiceNetworkAdminService adminService =
+            DefaultServiceDirectory.getService(ServiceNetworkAdminService.class);
+
+    /**
+     * Creates or updates the service networks and ports from the JSON input
+     * stream, and removes the existing ones not in the input if prune is set.
+     * Only the networks and ports different from the existing ones are
+     * applied, all together if possible, or one by one otherwise.
+     *
+     * @param prune true if the input is the complete set of the networks and
+     *              ports, false if the input is a part of it
+     * @param input JSON stream with ServiceNetworks and ServicePorts arrays
+     * @return 200 OK with the number of created, updated, unchanged and
+     * removed networks and ports and the identifiers of the skipped ones
+     * lacking the information to create and the rejected ones failed to apply,
+     * 400 BAD_REQUEST if the JSON is invalid
+     */
+    @POST
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response syncServiceNetworks(@DefaultValue("false") @QueryParam("prune") boolean prune,
+                                        InputStream input) {
+        JsonNode jsonTree;
+        try {
+            jsonTree = mapper().enable(INDENT_OUTPUT).readTree(input);
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e);
+        }
+        log.trace(MESSAGE + "prune: " + prune);
+
+        Map<NetworkId, ServiceNetwork> snets = Maps.newLinkedHashMap();
+        JsonNode snetsJson = jsonTree.get(SERVICE_NETWORKS);
+        if (snetsJson != null) {
+            snetsJson.forEach(snetJson -> {
+                ServiceNetwork snet = codec(ServiceNetwork.class)
+                        .decode((ObjectNode) snetJson, this);
+                snets.put(snet.id(), snet);
+            });
+        }
+
+        Map<PortId, ServicePort> sports = Maps.newLinkedHashMap();
+        JsonNode sportsJson = jsonTree.get(SERVICE_PORTS);
+        if (sportsJson != null) {
+            sportsJson.forEach(sportJson -> {
+                ServicePort sport = codec(ServicePort.class)
+                        .decode((ObjectNode) sportJson, this);
+                sports.put(sport.id(), sport);
+            });
+        }
+
+        ObjectNode result = new ServiceNetworkSync(adminService, mapper())
+                .sync(snets.values(), sports.values(), prune);
+        log.trace("Returned OK {}", result);
+        return ok(result).build();
+    }
+}
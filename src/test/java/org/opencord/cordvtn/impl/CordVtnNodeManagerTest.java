@@ -76,7 +76,8 @@ public class CordVtnNodeManagerTest extends CordVtnNodeTest {
         nodeStore = new DistributedCordVtnNodeStore();
         TestUtils.setField(nodeStore, "coreService", new TestCoreService());
         TestUtils.setField(nodeStore, "storageService", new TestStorageService());
-        TestUtils.setField(nodeStore, "eventExecutor", MoreExecutors.newDirectExecutorService());
+        TestUtils.setField(nodeStore, "eventExecutor",
+                           PartitionedExecutor.of(MoreExecutors.newDirectExecutorService()));
         nodeStore.activate();
 
         nodeStore.createNode(NODE_2);
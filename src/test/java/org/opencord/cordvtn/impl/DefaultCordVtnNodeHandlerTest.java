@@ -28,6 +28,8 @@ import org.junit.runner.RunWith;
 import org.onlab.junit.TestUtils;
 import org.onlab.packet.ChassisId;
 import org.onlab.packet.IpAddress;
+import org.onlab.packet.MacAddress;
+import org.onlab.util.Identifier;
 import org.onosproject.cluster.ClusterServiceAdapter;
 import org.onosproject.cluster.ControllerNode;
 import org.onosproject.cluster.DefaultControllerNode;
@@ -64,7 +66,10 @@ import org.onosproject.net.provider.ProviderId;
 import org.onosproject.ovsdb.controller.OvsdbClientService;
 import org.onosproject.ovsdb.controller.OvsdbController;
 import org.opencord.cordvtn.api.core.CordVtnPipeline;
+import org.opencord.cordvtn.api.core.Instance;
 import org.opencord.cordvtn.api.core.InstanceService;
+import org.opencord.cordvtn.api.net.AddressPair;
+import org.opencord.cordvtn.api.net.NetworkId;
 import org.opencord.cordvtn.api.node.CordVtnNode;
 import org.opencord.cordvtn.api.node.CordVtnNodeAdminService;
 import org.opencord.cordvtn.api.node.CordVtnNodeEvent;
@@ -74,6 +79,7 @@ import org.powermock.api.easymock.PowerMock;
 import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.PowerMockRunner;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -192,7 +198,8 @@ public class DefaultCordVtnNodeHandlerTest extends CordVtnNodeTest {
         target.nodeAdminService = this.nodeManager;
         target.instanceService = new TestInstanceService();
         target.pipelineService = new TestCordVtnPipeline();
-        TestUtils.setField(target, "eventExecutor", MoreExecutors.newDirectExecutorService());
+        TestUtils.setField(target, "eventExecutor",
+                           PartitionedExecutor.of(MoreExecutors.newDirectExecutorService()));
         injectEventDispatcher(target, new TestEventDispatcher());
         target.activate();
     }
@@ -521,6 +528,51 @@ public class DefaultCordVtnNodeHandlerTest extends CordVtnNodeTest {
 
     private static class TestInstanceService implements InstanceService {
 
+        @Override
+        public Instance instance(HostId hostId) {
+            return null;
+        }
+
+        @Override
+        public Instance instance(ConnectPoint connectPoint) {
+            return null;
+        }
+
+        @Override
+        public Set<Instance> instances() {
+            return ImmutableSet.of();
+        }
+
+        @Override
+        public Set<Instance> instances(NetworkId netId) {
+            return ImmutableSet.of();
+        }
+
+        @Override
+        public Set<Instance> instances(DeviceId deviceId) {
+            return ImmutableSet.of();
+        }
+
+        @Override
+        public Set<Instance> instances(IpAddress ipAddress) {
+            return ImmutableSet.of();
+        }
+
+        @Override
+        public Instance addressPairOwner(IpAddress ipAddress) {
+            return null;
+        }
+
+        @Override
+        public AddressPair addressPair(IpAddress ipAddress) {
+            return null;
+        }
+
+        @Override
+        public Set<AddressPair> addressPairs(MacAddress mac) {
+            return ImmutableSet.of();
+        }
+
         @Override
         public void addInstance(ConnectPoint connectPoint) {
 
@@ -558,6 +610,27 @@ public class DefaultCordVtnNodeHandlerTest extends CordVtnNodeTest {
         public void processFlowRule(boolean install, FlowRule rule) {
 
         }
+
+        @Override
+        public void processFlowRules(boolean install, Collection<FlowRule> rules) {
+
+        }
+
+        @Override
+        public void processFlowRules(boolean install, Collection<FlowRule> rules,
+                                     Identifier<?> owner) {
+
+        }
+
+        @Override
+        public Set<FlowRule> flowRules(Identifier<?> owner) {
+            return ImmutableSet.of();
+        }
+
+        @Override
+        public void removeFlowRules(Identifier<?> owner) {
+
+        }
     }
 
     public class TestEventDispatcher extends DefaultEventSinkRegistry
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2017-present Open Networking Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opencord.cordvtn.impl;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ForwardingExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Unit test of {@link PartitionedExecutor}.
+ */
+public class PartitionedExecutorTest {
+
+    private static final String KEY_1 = "net-1";
+
+    private final List<String> executed = Lists.newArrayList();
+    private final List<Integer> lanes = Lists.newArrayList();
+
+    private PartitionedExecutor target;
+
+    @Before
+    public void setUp() {
+        target = PartitionedExecutor.of(new TestLane(0), new TestLane(1), new TestLane(2));
+    }
+
+    /**
+     * Checks if the tasks with the same key run on the same lane in order.
+     */
+    @Test
+    public void testSameKey() {
+        target.execute(KEY_1, () -> executed.add("first"));
+        target.execute(KEY_1, () -> executed.add("second"));
+        target.execute(KEY_1, () -> executed.add("third"));
+
+        assertEquals(ImmutableList.of("first", "second", "third"), executed);
+        assertEquals(1, lanes.stream().distinct().count());
+    }
+
+    /**
+     * Checks if the tasks without key run on the first lane.
+     */
+    @Test
+    public void testNoKey() {
+        target.execute(() -> executed.add("first"));
+        target.execute(null, () -> executed.add("second"));
+
+        assertEquals(ImmutableList.of("first", "second"), executed);
+        assertEquals(ImmutableList.of(0, 0), lanes);
+    }
+
+    private class TestLane extends ForwardingExecutorService {
+
+        private final int index;
+        private final ExecutorService delegate = MoreExecutors.newDirectExecutorService();
+
+        TestLane(int index) {
+            this.index = index;
+        }
+
+        @Override
+        protected ExecutorService delegate() {
+            return delegate;
+        }
+
+        @Override
+        public void execute(Runnable command) {
+            lanes.add(index);
+            super.execute(command);
+        }
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2017-present Open Networking Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opencord.cordvtn.impl;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import org.junit.Before;
+import org.junit.Test;
+import org.opencord.cordvtn.api.net.NetworkId;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.opencord.cordvtn.api.net.ServiceNetwork.DependencyType.BIDIRECTIONAL;
+import static org.opencord.cordvtn.api.net.ServiceNetwork.DependencyType.UNIDIRECTIONAL;
+
+/**
+ * Unit test of {@link ServiceDependencyGraph}.
+ */
+public class ServiceDependencyGraphTest {
+
+    private static final NetworkId NET_1 = NetworkId.of("net-1");
+    private static final NetworkId NET_2 = NetworkId.of("net-2");
+    private static final NetworkId NET_3 = NetworkId.of("net-3");
+
+    private ServiceDependencyGraph graph;
+
+    @Before
+    public void setUp() {
+        // net-1 -> net-2 -> net-3
+        graph = new ServiceDependencyGraph();
+        graph.setProviders(NET_1, ImmutableMap.of(NET_2, BIDIRECTIONAL));
+        graph.setProviders(NET_2, ImmutableMap.of(NET_3, UNIDIRECTIONAL));
+    }
+
+    /**
+     * Checks if the subscribers are indexed by the provider.
+     */
+    @Test
+    public void testSubscribers() {
+        assertEquals(ImmutableMap.of(NET_1, BIDIRECTIONAL), graph.subscribers(NET_2));
+        assertEquals(ImmutableMap.of(NET_2, UNIDIRECTIONAL), graph.subscribers(NET_3));
+        assertTrue(graph.subscribers(NET_1).isEmpty());
+
+        graph.setProviders(NET_1, ImmutableMap.of());
+        assertTrue(graph.subscribers(NET_2).isEmpty());
+    }
+
+    /**
+     * Checks if the transitive providers are updated with the dependencies.
+     */
+    @Test
+    public void testTransitiveProviders() {
+        assertEquals(ImmutableSet.of(NET_2, NET_3), graph.transitiveProviders(NET_1));
+
+        graph.setProviders(NET_2, ImmutableMap.of());
+        assertEquals(ImmutableSet.of(NET_2), graph.transitiveProviders(NET_1));
+    }
+
+    /**
+     * Checks if the circular dependencies are detected.
+     */
+    @Test
+    public void testCycle() {
+        assertTrue(graph.isCyclic(NET_3, ImmutableSet.of(NET_1)));
+        assertTrue(graph.isCyclic(NET_1, ImmutableSet.of(NET_1)));
+        assertFalse(graph.isCyclic(NET_1, ImmutableSet.of(NET_3)));
+    }
+
+    /**
+     * Checks if the dependencies to the removed network are removed.
+     */
+    @Test
+    public void testRemove() {
+        graph.remove(NET_2);
+        assertTrue(graph.providers(NET_1).isEmpty());
+        assertTrue(graph.subscribers(NET_3).isEmpty());
+        assertTrue(graph.transitiveProviders(NET_1).isEmpty());
+    }
+}
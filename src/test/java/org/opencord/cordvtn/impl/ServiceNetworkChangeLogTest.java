@@ -0,0 +1,138 @@
+/*
+ * Copyright 2017-present Open Networking Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opencord.cordvtn.impl;
+
+import com.google.common.collect.ImmutableList;
+import org.junit.Before;
+import org.junit.Test;
+import org.opencord.cordvtn.api.core.ServiceNetworkChanges;
+import org.opencord.cordvtn.api.core.ServiceNetworkEvent;
+import org.opencord.cordvtn.api.net.NetworkId;
+import org.opencord.cordvtn.api.net.ServiceNetwork;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.opencord.cordvtn.api.core.ServiceNetworkEvent.Type.SERVICE_NETWORK_CREATED;
+import static org.opencord.cordvtn.api.core.ServiceNetworkEvent.Type.SERVICE_NETWORK_UPDATED;
+
+/**
+ * Unit test of {@link ServiceNetworkChangeLog}.
+ */
+public class ServiceNetworkChangeLogTest {
+
+    private static final ServiceNetwork NET_1 = DefaultServiceNetwork.builder()
+            .id(NetworkId.of("net-1"))
+            .build();
+    private static final ServiceNetworkEvent EVENT_1 =
+            new ServiceNetworkEvent(SERVICE_NETWORK_CREATED, NET_1);
+    private static final ServiceNetworkEvent EVENT_2 =
+            new ServiceNetworkEvent(SERVICE_NETWORK_UPDATED, NET_1);
+    private static final ServiceNetworkEvent EVENT_3 =
+            new ServiceNetworkEvent(SERVICE_NETWORK_UPDATED, NET_1);
+
+    private ServiceNetworkChangeLog changeLog;
+
+    @Before
+    public void setUp() {
+        changeLog = new ServiceNetworkChangeLog(2, 1);
+    }
+
+    /**
+     * Checks if the events after the given version are returned in order.
+     */
+    @Test
+    public void testChanges() throws InterruptedException {
+        long since = changeLog.version();
+        changeLog.append(EVENT_1);
+        changeLog.append(EVENT_2);
+
+        ServiceNetworkChanges changes = changeLog.changes(since, 0);
+        assertFalse(changes.isResyncRequired());
+        assertEquals(ImmutableList.of(EVENT_1, EVENT_2), changes.events());
+        assertEquals(since + 2, changes.version());
+
+        changes = changeLog.changes(since + 1, 0);
+        assertEquals(ImmutableList.of(EVENT_2), changes.events());
+    }
+
+    /**
+     * Checks if no event is returned after the timeout.
+     */
+    @Test
+    public void testTimeout() throws InterruptedException {
+        long since = changeLog.version();
+        ServiceNetworkChanges changes = changeLog.changes(since, 10);
+        assertFalse(changes.isResyncRequired());
+        assertTrue(changes.events().isEmpty());
+        assertEquals(since, changes.version());
+    }
+
+    /**
+     * Checks if resync is required for the evicted or unknown versions.
+     */
+    @Test
+    public void testResyncRequired() throws InterruptedException {
+        long since = changeLog.version();
+        changeLog.append(EVENT_1);
+        changeLog.append(EVENT_2);
+        changeLog.append(EVENT_3);
+
+        assertTrue(changeLog.changes(since, 0).isResyncRequired());
+        assertFalse(changeLog.changes(since + 1, 0).isResyncRequired());
+        assertTrue(changeLog.changes(since + 4, 0).isResyncRequired());
+    }
+
+    /**
+     * Checks if resync is required for a version of another change log, as
+     * the one of the previous run.
+     */
+    @Test
+    public void testResyncRequiredForOtherEpoch() throws InterruptedException {
+        ServiceNetworkChangeLog previous = new ServiceNetworkChangeLog(2, 1);
+        previous.append(EVENT_1);
+
+        assertTrue(changeLog.changes(previous.version(), 0).isResyncRequired());
+        assertTrue(changeLog.changes(0, 0).isResyncRequired());
+        assertFalse(changeLog.changes(changeLog.version(), 0).isResyncRequired());
+    }
+
+    /**
+     * Checks if a reader returns without waiting when the other readers
+     * already wait as many as allowed.
+     */
+    @Test(timeout = 5000)
+    public void testMaxWaiters() throws InterruptedException {
+        long since = changeLog.version();
+        Thread waiter = new Thread(() -> {
+            try {
+                changeLog.changes(since, 10000);
+            } catch (InterruptedException ignore) {
+            }
+        });
+        waiter.start();
+        while (waiter.getState() != Thread.State.TIMED_WAITING) {
+            Thread.sleep(10);
+        }
+
+        ServiceNetworkChanges changes = changeLog.changes(since, 10000);
+        assertFalse(changes.isResyncRequired());
+        assertTrue(changes.events().isEmpty());
+
+        changeLog.append(EVENT_1);
+        waiter.join();
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright 2017-present Open Networking Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opencord.cordvtn.impl;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.MoreExecutors;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.onlab.junit.TestUtils;
+import org.onosproject.cfg.ComponentConfigAdapter;
+import org.onosproject.core.ApplicationId;
+import org.onosproject.core.CoreServiceAdapter;
+import org.onosproject.core.DefaultApplicationId;
+import org.onosproject.net.config.NetworkConfigRegistryAdapter;
+import org.onosproject.net.host.HostServiceAdapter;
+import org.onosproject.store.service.ConsistentMap;
+import org.onosproject.store.service.MapEventListener;
+import org.onosproject.store.service.TestStorageService;
+import org.opencord.cordvtn.api.net.NetworkId;
+import org.opencord.cordvtn.api.net.PortId;
+import org.opencord.cordvtn.api.net.ServiceNetwork;
+import org.opencord.cordvtn.api.net.ServicePort;
+
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.opencord.cordvtn.api.net.ServiceNetwork.DependencyType.BIDIRECTIONAL;
+import static org.opencord.cordvtn.api.net.ServiceNetwork.NetworkType.PRIVATE;
+
+/**
+ * Unit tests for {@link ServiceNetworkManager}.
+ */
+public class ServiceNetworkManagerTest {
+
+    private static final ApplicationId TEST_APP_ID = new DefaultApplicationId(1, "test");
+
+    private static final NetworkId NET_ID_1 = NetworkId.of("net-1");
+    private static final NetworkId NET_ID_2 = NetworkId.of("net-2");
+    private static final PortId PORT_ID_1 = PortId.of("port-1");
+
+    private static final ServiceNetwork NET_1 = DefaultServiceNetwork.builder()
+            .id(NET_ID_1)
+            .name("net-1")
+            .type(PRIVATE)
+            .build();
+    private static final ServicePort PORT_1 = DefaultServicePort.builder()
+            .id(PORT_ID_1)
+            .name("tap-1")
+            .networkId(NET_ID_1)
+            .build();
+
+    private static final ServiceNetwork NET_2 = DefaultServiceNetwork.builder()
+            .id(NET_ID_2)
+            .name("net-2")
+            .type(PRIVATE)
+            .providers(ImmutableMap.of(NET_ID_1, BIDIRECTIONAL))
+            .build();
+
+    private ServiceNetworkManager target;
+    private DistributedServiceNetworkStore snetStore;
+
+    @Before
+    public void setUp() throws Exception {
+        snetStore = new DistributedServiceNetworkStore();
+        TestUtils.setField(snetStore, "coreService", new TestCoreService());
+        TestUtils.setField(snetStore, "storageService", new TestStorageService());
+        TestUtils.setField(snetStore, "compConfigService", new ComponentConfigAdapter());
+        TestUtils.setField(snetStore, "eventExecutor",
+                           PartitionedExecutor.of(MoreExecutors.newDirectExecutorService()));
+        snetStore.activate();
+        detachMapListeners();
+
+        target = new ServiceNetworkManager();
+        target.configRegistry = new NetworkConfigRegistryAdapter();
+        target.coreService = new TestCoreService();
+        target.hostService = new HostServiceAdapter();
+        target.compConfigService = new ComponentConfigAdapter();
+        target.snetStore = snetStore;
+        target.activate();
+    }
+
+    @After
+    public void tearDown() {
+        target.deactivate();
+        snetStore.deactivate();
+        target = null;
+        snetStore = null;
+    }
+
+    /**
+     * Checks if removing a network fails right after a port is created on
+     * it, before the map events of the port arrive.
+     */
+    @Test(expected = IllegalStateException.class)
+    public void testRemoveNetworkInUse() {
+        target.createServiceNetwork(NET_1);
+        target.createServicePort(PORT_1);
+        target.removeServiceNetwork(NET_ID_1);
+    }
+
+    /**
+     * Checks if removing a network succeeds right after its last port is
+     * removed, before the map events of the port arrive.
+     */
+    @Test
+    public void testRemoveNetworkAfterPort() {
+        target.createServiceNetwork(NET_1);
+        target.createServicePort(PORT_1);
+        target.removeServicePort(PORT_ID_1);
+        target.removeServiceNetwork(NET_ID_1);
+        assertNull(target.serviceNetwork(NET_ID_1));
+    }
+
+    /**
+     * Checks if a circular dependency is allowed and reported by default.
+     */
+    @Test
+    public void testCyclicDependency() {
+        target.createServiceNetwork(NET_1);
+        target.createServiceNetwork(NET_2);
+        target.updateServiceNetwork(DefaultServiceNetwork.builder(NET_1)
+                .providers(ImmutableMap.of(NET_ID_2, BIDIRECTIONAL))
+                .build());
+        assertTrue(target.isCyclic(NET_ID_1));
+        assertTrue(target.isCyclic(NET_ID_2));
+    }
+
+    /**
+     * Stops delivering the map events to the store, so that only its own
+     * writes update the local state as in the window before the events.
+     */
+    private void detachMapListeners() throws Exception {
+        ConsistentMap<NetworkId, ServiceNetwork> networkMap =
+                TestUtils.getField(snetStore, "serviceNetworkStore");
+        ConsistentMap<PortId, ServicePort> portMap =
+                TestUtils.getField(snetStore, "servicePortStore");
+        MapEventListener<NetworkId, ServiceNetwork> networkListener =
+                TestUtils.getField(snetStore, "serviceNetworkListener");
+        MapEventListener<PortId, ServicePort> portListener =
+                TestUtils.getField(snetStore, "servicePortListener");
+        networkMap.removeListener(networkListener);
+        portMap.removeListener(portListener);
+    }
+
+    private static class TestCoreService extends CoreServiceAdapter {
+
+        @Override
+        public ApplicationId registerApplication(String name) {
+            return TEST_APP_ID;
+        }
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2017-present Open Networking Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opencord.cordvtn.impl;
+
+import com.google.common.collect.ImmutableSet;
+import org.junit.Before;
+import org.junit.Test;
+import org.onosproject.store.service.Versioned;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit test of {@link VersionedMirror}.
+ */
+public class VersionedMirrorTest {
+
+    private static final String KEY_1 = "key-1";
+    private static final String KEY_2 = "key-2";
+
+    private VersionedMirror<String, String> target;
+
+    @Before
+    public void setUp() {
+        target = new VersionedMirror<>();
+    }
+
+    /**
+     * Checks if an older version does not replace a newer one.
+     */
+    @Test
+    public void testPutOlderVersion() {
+        assertTrue(target.put(KEY_1, new Versioned<>("v2", 2)));
+        assertFalse(target.put(KEY_1, new Versioned<>("v1", 1)));
+        assertEquals("v2", target.get(KEY_1));
+    }
+
+    /**
+     * Checks if a late update of a locally removed value is ignored until
+     * the removal event, and a newer value is still applied.
+     */
+    @Test
+    public void testLateUpdateAfterRemove() {
+        target.put(KEY_1, new Versioned<>("v1", 1));
+        target.remove(KEY_1, new Versioned<>("v2", 2));
+        assertNull(target.get(KEY_1));
+
+        assertFalse(target.put(KEY_1, new Versioned<>("v2", 2)));
+        assertNull(target.get(KEY_1));
+
+        target.removed(KEY_1, new Versioned<>("v2", 2));
+        assertTrue(target.put(KEY_1, new Versioned<>("v3", 3)));
+        assertEquals("v3", target.get(KEY_1));
+    }
+
+    /**
+     * Checks if the values reflect every change.
+     */
+    @Test
+    public void testValues() {
+        target.put(KEY_1, new Versioned<>("v1", 1));
+        assertEquals(ImmutableSet.of("v1"), target.values());
+
+        target.put(KEY_2, new Versioned<>("v2", 2));
+        assertEquals(ImmutableSet.of("v1", "v2"), target.values());
+
+        target.remove(KEY_1, new Versioned<>("v1", 1));
+        assertEquals(ImmutableSet.of("v2"), target.values());
+    }
+}
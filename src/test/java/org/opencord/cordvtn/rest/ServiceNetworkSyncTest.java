@@ -0,0 +1,359 @@
+/*
+ * Copyright 2017-present Open Networking Laboratory
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.opencord.cordvtn.rest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import org.junit.Before;
+import org.junit.Test;
+import org.onlab.packet.IpAddress;
+import org.onlab.packet.MacAddress;
+import org.opencord.cordvtn.api.core.ServiceNetworkAdminService;
+import org.opencord.cordvtn.api.core.ServiceNetworkBatch;
+import org.opencord.cordvtn.api.core.ServiceNetworkChanges;
+import org.opencord.cordvtn.api.core.ServiceNetworkListener;
+import org.opencord.cordvtn.api.net.NetworkId;
+import org.opencord.cordvtn.api.net.PortId;
+import org.opencord.cordvtn.api.net.ServiceNetwork;
+import org.opencord.cordvtn.api.net.ServicePort;
+import org.opencord.cordvtn.impl.DefaultServiceNetwork;
+import org.opencord.cordvtn.impl.DefaultServicePort;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.opencord.cordvtn.api.net.ServiceNetwork.DependencyType.BIDIRECTIONAL;
+import static org.opencord.cordvtn.api.net.ServiceNetwork.NetworkType.PRIVATE;
+import static org.opencord.cordvtn.rest.ServiceNetworkSync.CREATED;
+import static org.opencord.cordvtn.rest.ServiceNetworkSync.REJECTED;
+import static org.opencord.cordvtn.rest.ServiceNetworkSync.REMOVED;
+import static org.opencord.cordvtn.rest.ServiceNetworkSync.SERVICE_NETWORKS;
+import static org.opencord.cordvtn.rest.ServiceNetworkSync.SERVICE_PORTS;
+import static org.opencord.cordvtn.rest.ServiceNetworkSync.SKIPPED;
+import static org.opencord.cordvtn.rest.ServiceNetworkSync.UNCHANGED;
+import static org.opencord.cordvtn.rest.ServiceNetworkSync.UPDATED;
+
+/**
+ * Unit test of {@link ServiceNetworkSync}.
+ */
+public class ServiceNetworkSyncTest {
+
+    private static final NetworkId NET_ID_1 = NetworkId.of("net-1");
+    private static final NetworkId NET_ID_2 = NetworkId.of("net-2");
+    private static final NetworkId NET_ID_3 = NetworkId.of("net-3");
+    private static final NetworkId NET_ID_4 = NetworkId.of("net-4");
+    private static final NetworkId NET_ID_MISSING = NetworkId.of("net-missing");
+    private static final String BAD_NAME = "bad";
+    private static final PortId PORT_ID_1 = PortId.of("port-1");
+    private static final PortId PORT_ID_2 = PortId.of("port-2");
+
+    private static final ServiceNetwork NET_1 = DefaultServiceNetwork.builder()
+            .id(NET_ID_1)
+            .name("net-1")
+            .type(PRIVATE)
+            .build();
+    private static final ServiceNetwork NET_2 = DefaultServiceNetwork.builder()
+            .id(NET_ID_2)
+            .name("net-2")
+            .type(PRIVATE)
+            .build();
+
+    private TestServiceNetworkAdminService adminService;
+    private ServiceNetworkSync sync;
+
+    @Before
+    public void setUp() {
+        adminService = new TestServiceNetworkAdminService();
+        sync = new ServiceNetworkSync(adminService, new ObjectMapper());
+    }
+
+    /**
+     * Checks if only the changed networks and ports are applied and counted,
+     * and the new ones lacking the information to create are skipped.
+     */
+    @Test
+    public void testDiff() {
+        adminService.networks.put(NET_ID_1, NET_1);
+        adminService.networks.put(NET_ID_2, NET_2);
+
+        ServiceNetwork renamed = DefaultServiceNetwork.builder(NET_2).name("renamed").build();
+        ServiceNetwork created = DefaultServiceNetwork.builder()
+                .id(NET_ID_3).type(PRIVATE).build();
+        ServiceNetwork untyped = DefaultServiceNetwork.builder().id(NET_ID_4).build();
+        ServicePort noNetwork = DefaultServicePort.builder().id(PORT_ID_1).build();
+        ServicePort port = DefaultServicePort.builder()
+                .id(PORT_ID_2).networkId(NET_ID_3).build();
+
+        ObjectNode result = sync.sync(
+                ImmutableList.of(NET_1, renamed, created, untyped),
+                ImmutableList.of(noNetwork, port), false);
+
+        JsonNode nets = result.get(SERVICE_NETWORKS);
+        assertEquals(1, nets.get(CREATED).asInt());
+        assertEquals(1, nets.get(UPDATED).asInt());
+        assertEquals(1, nets.get(UNCHANGED).asInt());
+        assertEquals(0, nets.get(REMOVED).asInt());
+        assertEquals(ImmutableSet.of(NET_ID_4.id()), ids(nets, SKIPPED));
+        assertEquals(ImmutableSet.of(), ids(nets, REJECTED));
+
+        JsonNode ports = result.get(SERVICE_PORTS);
+        assertEquals(1, ports.get(CREATED).asInt());
+        assertEquals(ImmutableSet.of(PORT_ID_1.id()), ids(ports, SKIPPED));
+
+        assertEquals("renamed", adminService.serviceNetwork(NET_ID_2).name());
+        assertNotNull(adminService.serviceNetwork(NET_ID_3));
+        assertNull(adminService.serviceNetwork(NET_ID_4));
+        assertNotNull(adminService.servicePort(PORT_ID_2));
+        assertNull(adminService.servicePort(PORT_ID_1));
+        assertEquals(1, adminService.batches);
+    }
+
+    /**
+     * Checks if the existing networks and ports not given are removed only
+     * when prune is set.
+     */
+    @Test
+    public void testPrune() {
+        adminService.networks.put(NET_ID_1, NET_1);
+        adminService.networks.put(NET_ID_2, NET_2);
+        adminService.ports.put(PORT_ID_1, DefaultServicePort.builder()
+                .id(PORT_ID_1).networkId(NET_ID_2).build());
+
+        ObjectNode result = sync.sync(ImmutableList.of(NET_1), ImmutableList.of(), false);
+        assertEquals(0, result.get(SERVICE_NETWORKS).get(REMOVED).asInt());
+        assertNotNull(adminService.serviceNetwork(NET_ID_2));
+
+        result = sync.sync(ImmutableList.of(NET_1), ImmutableList.of(), true);
+        assertEquals(1, result.get(SERVICE_NETWORKS).get(REMOVED).asInt());
+        assertEquals(1, result.get(SERVICE_NETWORKS).get(UNCHANGED).asInt());
+        assertEquals(1, result.get(SERVICE_PORTS).get(REMOVED).asInt());
+        assertNull(adminService.serviceNetwork(NET_ID_2));
+        assertNull(adminService.servicePort(PORT_ID_1));
+    }
+
+    /**
+     * Checks if an invalid network and the port on it are rejected without
+     * holding back the valid ones.
+     */
+    @Test
+    public void testReject() {
+        ServiceNetwork invalid = DefaultServiceNetwork.builder()
+                .id(NET_ID_3)
+                .type(PRIVATE)
+                .providers(ImmutableMap.of(NET_ID_MISSING, BIDIRECTIONAL))
+                .build();
+        ServicePort orphan = DefaultServicePort.builder()
+                .id(PORT_ID_1).networkId(NET_ID_3).build();
+        ServicePort port = DefaultServicePort.builder()
+                .id(PORT_ID_2).networkId(NET_ID_1).build();
+
+        ObjectNode result = sync.sync(
+                ImmutableList.of(invalid, NET_1),
+                ImmutableList.of(orphan, port), false);
+
+        JsonNode nets = result.get(SERVICE_NETWORKS);
+        assertEquals(1, nets.get(CREATED).asInt());
+        assertEquals(ImmutableSet.of(NET_ID_3.id()), ids(nets, REJECTED));
+
+        JsonNode ports = result.get(SERVICE_PORTS);
+        assertEquals(1, ports.get(CREATED).asInt());
+        assertEquals(ImmutableSet.of(PORT_ID_1.id()), ids(ports, REJECTED));
+
+        assertNotNull(adminService.serviceNetwork(NET_ID_1));
+        assertNotNull(adminService.servicePort(PORT_ID_2));
+        assertNull(adminService.serviceNetwork(NET_ID_3));
+        assertNull(adminService.servicePort(PORT_ID_1));
+    }
+
+    /**
+     * Checks if a network failing with an exception other than
+     * IllegalStateException is rejected as well.
+     */
+    @Test
+    public void testRejectOtherException() {
+        ServiceNetwork bad = DefaultServiceNetwork.builder()
+                .id(NET_ID_3)
+                .name(BAD_NAME)
+                .type(PRIVATE)
+                .build();
+
+        ObjectNode result = sync.sync(ImmutableList.of(bad, NET_1), ImmutableList.of(), false);
+
+        JsonNode nets = result.get(SERVICE_NETWORKS);
+        assertEquals(1, nets.get(CREATED).asInt());
+        assertEquals(ImmutableSet.of(NET_ID_3.id()), ids(nets, REJECTED));
+        assertNotNull(adminService.serviceNetwork(NET_ID_1));
+        assertNull(adminService.serviceNetwork(NET_ID_3));
+    }
+
+    private static Set<String> ids(JsonNode summary, String field) {
+        Set<String> ids = Sets.newHashSet();
+        summary.get(field).forEach(id -> ids.add(id.asText()));
+        return ids;
+    }
+
+    /**
+     * Service network admin service keeping the networks and ports in memory,
+     * and rejecting a batch referring to a missing network as a whole.
+     */
+    private static class TestServiceNetworkAdminService implements ServiceNetworkAdminService {
+
+        private final Map<NetworkId, ServiceNetwork> networks = Maps.newHashMap();
+        private final Map<PortId, ServicePort> ports = Maps.newHashMap();
+        private int batches = 0;
+
+        @Override
+        public void applyBatch(ServiceNetworkBatch batch) {
+            Map<NetworkId, ServiceNetwork> newNetworks = Maps.newHashMap(networks);
+            Map<PortId, ServicePort> newPorts = Maps.newHashMap(ports);
+            batch.networks().forEach(snet -> newNetworks.put(snet.id(),
+                    newNetworks.containsKey(snet.id()) ? DefaultServiceNetwork.builder(
+                            newNetworks.get(snet.id()), snet).build() : snet));
+            batch.ports().forEach(sport -> newPorts.put(sport.id(),
+                    newPorts.containsKey(sport.id()) ? DefaultServicePort.builder(
+                            newPorts.get(sport.id()), sport).build() : sport));
+            newNetworks.keySet().removeAll(batch.removedNetworks());
+            newPorts.keySet().removeAll(batch.removedPorts());
+
+            newNetworks.values().forEach(snet -> {
+                checkArgument(!BAD_NAME.equals(snet.name()), snet.id() + " bad name");
+                if (!newNetworks.keySet().containsAll(snet.providers().keySet())) {
+                    throw new IllegalStateException(snet.id() + " provider not found");
+                }
+            });
+            newPorts.values().forEach(sport -> {
+                if (!newNetworks.containsKey(sport.networkId())) {
+                    throw new IllegalStateException(sport.id() + " network not found");
+                }
+            });
+            networks.clear();
+            networks.putAll(newNetworks);
+            ports.clear();
+            ports.putAll(newPorts);
+            batches++;
+        }
+
+        @Override
+        public ServiceNetwork serviceNetwork(NetworkId networkId) {
+            return networks.get(networkId);
+        }
+
+        @Override
+        public Set<ServiceNetwork> serviceNetworks() {
+            return ImmutableSet.copyOf(networks.values());
+        }
+
+        @Override
+        public ServicePort servicePort(PortId portId) {
+            return ports.get(portId);
+        }
+
+        @Override
+        public Set<ServicePort> servicePorts() {
+            return ImmutableSet.copyOf(ports.values());
+        }
+
+        @Override
+        public Set<ServicePort> servicePorts(NetworkId networkId) {
+            return ports.values().stream()
+                    .filter(sport -> Objects.equals(sport.networkId(), networkId))
+                    .collect(Collectors.toSet());
+        }
+
+        @Override
+        public Map<NetworkId, ServiceNetwork.DependencyType> subscribers(NetworkId networkId) {
+            return ImmutableMap.of();
+        }
+
+        @Override
+        public Set<NetworkId> transitiveProviders(NetworkId networkId) {
+            return ImmutableSet.of();
+        }
+
+        @Override
+        public boolean isCyclic(NetworkId networkId) {
+            return false;
+        }
+
+        @Override
+        public ServicePort servicePortByName(String portName) {
+            return null;
+        }
+
+        @Override
+        public ServicePort servicePortByMac(MacAddress mac) {
+            return null;
+        }
+
+        @Override
+        public Set<ServicePort> servicePortsByIp(IpAddress ip) {
+            return ImmutableSet.of();
+        }
+
+        @Override
+        public ServiceNetworkChanges changes(long since, long timeoutMillis) {
+            return null;
+        }
+
+        @Override
+        public void purgeStates() {
+        }
+
+        @Override
+        public void createServiceNetwork(ServiceNetwork serviceNetwork) {
+        }
+
+        @Override
+        public void updateServiceNetwork(ServiceNetwork serviceNetwork) {
+        }
+
+        @Override
+        public void removeServiceNetwork(NetworkId networkId) {
+        }
+
+        @Override
+        public void createServicePort(ServicePort servicePort) {
+        }
+
+        @Override
+        public void updateServicePort(ServicePort servicePort) {
+        }
+
+        @Override
+        public void removeServicePort(PortId portId) {
+        }
+
+        @Override
+        public void addListener(ServiceNetworkListener listener) {
+        }
+
+        @Override
+        public void removeListener(ServiceNetworkListener listener) {
+        }
+    }
+}
@@ -117,8 +117,28 @@ class SyncVTNService(SyncStep):
             exists=False
         return (exists, url, method, req_func)
 
+    def post_sync(self, data):
+        # creates or updates all the changed objects with a single request
+        url = "http://" + self.get_vtn_addr() +  ":" + str(self.get_vtn_port()) + "/onos/cordvtn/sync"
+
+        logger.info("POSTing VTN API for %s" % ", ".join("%d %s" % (len(v), k) for (k, v) in data.items()))
+        logger.info("URL: %s" % url)
+
+        r = requests.post(url, json=data, auth=self.get_vtn_auth() )
+        if (r.status_code == 200):
+            summary = r.json()
+            for (k, v) in summary.items():
+                logger.info("Synchronized %s: %d created, %d updated, %d unchanged, %d removed, %d skipped, %d rejected" %
+                            (k, v["created"], v["updated"], v["unchanged"], v["removed"],
+                             len(v["skipped"]), len(v["rejected"])))
+            return summary
+        logger.error("Received error from vtn service (%d)" % r.status_code)
+        return None
+
     def sync_service_networks(self):
         valid_ids = []
+        changed = []
+        changed_dicts = {}
         for network in Network.objects.all():
             network = VTNNetwork(network)
 
@@ -132,26 +152,22 @@ class SyncVTNService(SyncStep):
             valid_ids.append(network.id)
 
             if (glo_saved_networks.get(network.id, None) != network.to_dict()):
-                (exists, url, method, req_func) = self.get_method("http://" + self.get_vtn_addr() +  ":" + str(self.get_vtn_port()) + "/onos/cordvtn/serviceNetworks", network.id)
-
-                logger.info("%sing VTN API for network %s" % (method, network.id))
-
-                logger.info("URL: %s" % url)
-
                 # clean the providerNetworks list
                 providerNetworks = [{"id": x["id"], "bidirectional": x["bidirectional"]} for x in network.providerNetworks]
 
-                data = {"ServiceNetwork": {"id": network.id,
-                        "type": network.type,
-                        "providerNetworks": providerNetworks} }
-                logger.info("DATA: %s" % str(data))
-
-                r=req_func(url, json=data, auth=self.get_vtn_auth() )
-                if (r.status_code in [200,201]):
-                    glo_saved_networks[network.id] = network.to_dict()
-                else:
-                    logger.error("Received error from vtn service (%d)" % r.status_code)
+                changed.append({"id": network.id,
+                                "type": network.type,
+                                "providerNetworks": providerNetworks})
+                changed_dicts[network.id] = network.to_dict()
 
+        if changed:
+            summary = self.post_sync({"ServiceNetworks": changed})
+            if summary:
+                # retry the skipped and rejected ones in the next round,
+                # the others are applied regardless of them
+                for network_id in summary["ServiceNetworks"]["skipped"] + summary["ServiceNetworks"]["rejected"]:
+                    changed_dicts.pop(network_id, None)
+                glo_saved_networks.update(changed_dicts)
 
         for network_id in glo_saved_networks.keys():
             if network_id not in valid_ids:
@@ -168,6 +184,8 @@ class SyncVTNService(SyncStep):
 
     def sync_service_ports(self):
         valid_ids = []
+        changed = []
+        changed_dicts = {}
         for port in Port.objects.all():
             port = VTNPort(port)
 
@@ -181,22 +199,19 @@ class SyncVTNService(SyncStep):
             valid_ids.append(port.id)
 
             if (glo_saved_ports.get(port.id, None) != port.to_dict()):
-                (exists, url, method, req_func) = self.get_method("http://" + self.get_vtn_addr() +  ":" + str(self.get_vtn_port()) + "/onos/cordvtn/servicePorts", port.id)
-
-                logger.info("%sing VTN API for port %s" % (method, port.id))
-
-                logger.info("URL: %s" % url)
-
-                data = {"ServicePort": {"id": port.id,
-                        "vlan_id": port.vlan_id,
-                        "floating_address_pairs": port.floating_address_pairs} }
-                logger.info("DATA: %s" % str(data))
-
-                r=req_func(url, json=data, auth=self.get_vtn_auth() )
-                if (r.status_code in [200,201]):
-                    glo_saved_ports[port.id] = port.to_dict()
-                else:
-                    logger.error("Received error from vtn service (%d)" % r.status_code)
+                changed.append({"id": port.id,
+                                "vlan_id": port.vlan_id,
+                                "floating_address_pairs": port.floating_address_pairs})
+                changed_dicts[port.id] = port.to_dict()
+
+        if changed:
+            summary = self.post_sync({"ServicePorts": changed})
+            if summary:
+                # retry the skipped and rejected ones in the next round,
+                # the others are applied regardless of them
+                for port_id in summary["ServicePorts"]["skipped"] + summary["ServicePorts"]["rejected"]:
+                    changed_dicts.pop(port_id, None)
+                glo_saved_ports.update(changed_dicts)
 
         for port_id in glo_saved_ports.keys():
             if port_id not in valid_ids: